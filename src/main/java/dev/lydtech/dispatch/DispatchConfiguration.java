@@ -1,75 +1,519 @@
 package dev.lydtech.dispatch;
+import dev.lydtech.dispatch.backpressure.BackpressureController;
+import dev.lydtech.dispatch.client.StockServiceGuard;
+import dev.lydtech.dispatch.client.StockServiceGuardBackOff;
+import dev.lydtech.dispatch.client.StockSnapshot;
 import dev.lydtech.dispatch.client.exception.NotRetryableException;
 import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.codec.DispatchBinarySerializer;
+import dev.lydtech.dispatch.codec.MigratingDispatchDeserializer;
+import dev.lydtech.dispatch.consumer.ConsumerProfile;
+import dev.lydtech.dispatch.consumer.ListenerConcurrencyScaler;
+import dev.lydtech.dispatch.dedup.ProcessedOrderStore;
+import dev.lydtech.dispatch.lanes.KeyedLaneExecutor;
+import dev.lydtech.dispatch.lanes.OrderPriorityClassifier;
+import dev.lydtech.dispatch.lanes.PriorityLanePartitionPauser;
+import dev.lydtech.dispatch.lanes.PriorityLaneScheduler;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.outbox.OutboxLog;
+import dev.lydtech.dispatch.outbox.OutboxRelay;
+import dev.lydtech.dispatch.prefilter.OrderCreatedPreFilter;
+import dev.lydtech.dispatch.prefilter.PreFiltered;
+import dev.lydtech.dispatch.prefilter.PreFilteringDeserializer;
+import dev.lydtech.dispatch.producer.ProducerProfile;
+import dev.lydtech.dispatch.service.DispatchEvents;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import dev.lydtech.dispatch.message.OrderCreated;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultAfterRollbackProcessor;
 import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.support.serializer.DelegatingByTopicSerialization;
+import org.springframework.kafka.support.serializer.DelegatingByTopicSerializer;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.backoff.BackOff;
 import org.springframework.util.backoff.FixedBackOff;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @ComponentScan(basePackages = {"dev.lydtech"})
 @Configuration
 public class DispatchConfiguration {
 
     private static final String TRUSTED_PACKAGES = "dev.lydtech.dispatch.message";
+    public static final String LISTENER_MODE_RECORD = "record";
+    public static final String LISTENER_MODE_BATCH = "batch";
+    public static final String LISTENER_MODE_KEYED = "keyed";
+    public static final String LISTENER_MODE_PRIORITY = "priority";
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(ConsumerFactory<String, Object> consumerFactory,
-                                                                                                 KafkaTemplate<String, Object> kafkaTemplate) {
+                                                                                                 DeadLetterPublishingRecoverer deadLetterPublishingRecoverer,
+                                                                                                 BackOff dispatchRetryBackOff,
+                                                                                                 ObjectProvider<VirtualThreadTaskExecutor> dispatchVirtualThreadExecutor,
+                                                                                                 ObjectProvider<KafkaTransactionManager<String, Object>> kafkaTransactionManager,
+                                                                                                 KafkaTemplate<String, Object> kafkaTemplate,
+                                                                                                 DispatchMetrics dispatchMetrics,
+                                                                                                 ObjectProvider<ListenerConcurrencyScaler> listenerConcurrencyScaler,
+                                                                                                 ObjectProvider<OrderCreatedPreFilter> orderCreatedPreFilter,
+                                                                                                 @Value("${dispatch.consumer.concurrency:1}") int concurrency,
+                                                                                                 @Value("${dispatch.listener.mode:record}") String listenerMode,
+                                                                                                 @Value("${dispatch.backpressure.enabled:false}") boolean backpressureEnabled) {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
-        DefaultErrorHandler errorHandler = new DefaultErrorHandler(new DeadLetterPublishingRecoverer(kafkaTemplate),new FixedBackOff(100L, 3L));
+        // one consumer (and listener thread) per unit of concurrency, never more than there are partitions to share
+        ListenerConcurrencyScaler scaler = listenerConcurrencyScaler.getIfAvailable();
+        factory.setConcurrency(scaler != null ? scaler.targetConcurrency() : concurrency);
+        // each child container still polls and processes its partitions on one thread, only that thread becomes virtual
+        dispatchVirtualThreadExecutor.ifAvailable(executor -> factory.getContainerProperties().setListenerTaskExecutor(executor));
+        // batch mode hands the whole poll to OrderCreatedBatchHandler, failures are reported per record with BatchListenerFailedException
+        factory.setBatchListener(LISTENER_MODE_BATCH.equals(listenerMode));
+        if (LISTENER_MODE_KEYED.equals(listenerMode) || LISTENER_MODE_PRIORITY.equals(listenerMode)) {
+            // lanes acknowledge out of order, the container only commits up to the first offset still in flight
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            factory.getContainerProperties().setAsyncAcks(true);
+        }
+        if (orderCreatedPreFilter.getIfAvailable() != null && !LISTENER_MODE_BATCH.equals(listenerMode)) {
+            // records the pre-filter rejected never reach the listener, their offsets are acknowledged as they are dropped.
+            // Batch mode drops them in OrderCreatedBatchHandler, failure indexes have to stay those of the poll
+            factory.setRecordFilterStrategy(record -> record.value() instanceof PreFiltered);
+            factory.setAckDiscarded(true);
+        }
+        if (backpressureEnabled) {
+            // a BackpressureController pause stops the listener after the record in hand, not after the rest of the poll
+            factory.getContainerProperties().setPauseImmediate(true);
+        }
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(deadLetterPublishingRecoverer, dispatchRetryBackOff);
         errorHandler.addRetryableExceptions(RetryableException.class);
         errorHandler.addNotRetryableExceptions(NotRetryableException.class);
+        errorHandler.setRetryListeners(dispatchMetrics);
         factory.setCommonErrorHandler(errorHandler);
+        kafkaTransactionManager.ifAvailable(transactionManager -> {
+            if (LISTENER_MODE_KEYED.equals(listenerMode) || LISTENER_MODE_PRIORITY.equals(listenerMode)) {
+                throw new IllegalStateException("dispatch.producer.transactional is not supported with the " + listenerMode + " listener mode, lanes send outside the container transaction");
+            }
+            // the dispatch events and the consumed offsets commit together, one transaction per record or per poll in batch mode
+            factory.getContainerProperties().setTransactionManager(transactionManager);
+            DefaultAfterRollbackProcessor<String, Object> afterRollbackProcessor =
+                    new DefaultAfterRollbackProcessor<>(deadLetterPublishingRecoverer, dispatchRetryBackOff, kafkaTemplate, true);
+            afterRollbackProcessor.addRetryableExceptions(RetryableException.class);
+            afterRollbackProcessor.addNotRetryableExceptions(NotRetryableException.class);
+            afterRollbackProcessor.setRetryListeners(dispatchMetrics);
+            factory.setAfterRollbackProcessor(afterRollbackProcessor);
+        });
         return factory;
     }
 
     @Bean
-    public ConsumerFactory<String, Object> consumerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers) {
-        Map<String, Object> config = new HashMap<>();
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, Object> kafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(kafkaTemplate);
+    }
+
+    /**
+     * Three retries 100ms apart. With the stock service guard a record turned away by it waits for the guard
+     * instead, those waits are not counted as retries, see StockServiceGuardBackOff.
+     **/
+    @Bean
+    public BackOff dispatchRetryBackOff(ObjectProvider<StockServiceGuard> stockServiceGuard) {
+        BackOff backOff = new FixedBackOff(100L, 3L);
+        StockServiceGuard guard = stockServiceGuard.getIfAvailable();
+        return guard != null ? new StockServiceGuardBackOff(backOff, guard) : backOff;
+    }
+
+    /**
+     * Non-blocking retries for the record listener (dispatch.retry.nonBlocking=true). A RetryableException sends the
+     * record on to the next retry topic (order.created.retry-<delay>, delays growing exponentially), whose container
+     * pauses that partition until the record is due; the main topic keeps being consumed meanwhile. Anything else,
+     * and the last attempt, goes straight to order.created.DLT. Replaces dispatchRetryBackOff for these endpoints.
+     *
+     * Retry topics are created with dispatch.retry.topicPartitions partitions, the broker default if unset. Keep it
+     * at the partition count of order.created so retries are spread the same way.
+     **/
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.retry.nonBlocking", havingValue = "true")
+    public RetryTopicConfiguration orderCreatedRetryTopics(KafkaTemplate<String, Object> kafkaTemplate,
+                                                           @Value("${dispatch.listener.mode:record}") String listenerMode,
+                                                           @Value("${dispatch.producer.transactional:false}") boolean transactional,
+                                                           @Value("${dispatch.retry.maxAttempts:4}") int maxAttempts,
+                                                           @Value("${dispatch.retry.initialDelayMs:1000}") long initialDelayMs,
+                                                           @Value("${dispatch.retry.multiplier:2.0}") double multiplier,
+                                                           @Value("${dispatch.retry.maxDelayMs:30000}") long maxDelayMs,
+                                                           @Value("${dispatch.retry.topicPartitions:#{null}}") Integer topicPartitions) {
+        if (!LISTENER_MODE_RECORD.equals(listenerMode) || transactional) {
+            throw new IllegalStateException("dispatch.retry.nonBlocking needs dispatch.listener.mode=record and a non transactional producer");
+        }
+        return RetryTopicConfigurationBuilder.newInstance()
+                .includeTopic("order.created")
+                .maxAttempts(maxAttempts)
+                .exponentialBackoff(initialDelayMs, multiplier, maxDelayMs)
+                .retryOn(RetryableException.class)
+                .traversingCauses()
+                .retryTopicSuffix(".retry")
+                .dltSuffix(".DLT")
+                .autoCreateTopicsWith(topicPartitions, null)
+                .listenerFactory("kafkaListenerContainerFactory")
+                .create(kafkaTemplate);
+    }
+
+    /**
+     * Runs the listener containers (and so the blocking stock service calls and send acks made from them) on
+     * virtual threads. Needs a Java 21 runtime, build with -Pjava21.
+     **/
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.threads.virtual", havingValue = "true")
+    public VirtualThreadTaskExecutor dispatchVirtualThreadExecutor() {
+        try {
+            return new VirtualThreadTaskExecutor("dispatch-virtual-");
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException("dispatch.threads.virtual requires a Java 21 runtime", e);
+        }
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "dispatch.listener.mode", havingValue = LISTENER_MODE_KEYED)
+    public KeyedLaneExecutor keyedLaneExecutor(ObjectProvider<VirtualThreadTaskExecutor> dispatchVirtualThreadExecutor,
+                                               @Value("${dispatch.lanes.count:16}") int laneCount,
+                                               @Value("${dispatch.lanes.maxInFlight:500}") int maxInFlight) {
+        VirtualThreadTaskExecutor virtualThreads = dispatchVirtualThreadExecutor.getIfAvailable();
+        ThreadFactory threadFactory = virtualThreads != null ? virtualThreads.getVirtualThreadFactory() : new CustomizableThreadFactory("dispatch-lane-");
+        return new KeyedLaneExecutor(laneCount, maxInFlight, threadFactory);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.listener.mode", havingValue = LISTENER_MODE_KEYED)
+    public MeterBinder keyedLaneMetrics(KeyedLaneExecutor keyedLaneExecutor) {
+        return registry -> Gauge.builder("dispatch.lanes.in.flight", keyedLaneExecutor, KeyedLaneExecutor::inFlight)
+                .description("Records handed to a lane and not yet acknowledged")
+                .register(registry);
+    }
+
+    /**
+     * Priority listener mode: order.created records are queued on weighted lanes (dispatch.priority.lanes) served by
+     * dispatch.priority.workers threads, see PriorityLaneScheduler. A full lane pauses the partitions of the
+     * listener until the lanes drain, rather than blocking it.
+     **/
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "dispatch.listener.mode", havingValue = LISTENER_MODE_PRIORITY)
+    public PriorityLaneScheduler priorityLaneScheduler(ObjectProvider<VirtualThreadTaskExecutor> dispatchVirtualThreadExecutor,
+                                                       MeterRegistry meterRegistry,
+                                                       KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                                       @Value("${dispatch.priority.lanes:express:8,standard:3,bulk:1}") String lanes,
+                                                       @Value("${dispatch.priority.laneCapacity:1000}") int laneCapacity,
+                                                       @Value("${dispatch.priority.workers:16}") int workers) {
+        VirtualThreadTaskExecutor virtualThreads = dispatchVirtualThreadExecutor.getIfAvailable();
+        ThreadFactory threadFactory = virtualThreads != null ? virtualThreads.getVirtualThreadFactory() : new CustomizableThreadFactory("dispatch-priority-");
+        PriorityLaneScheduler scheduler = new PriorityLaneScheduler(PriorityLaneScheduler.parse(lanes, laneCapacity), workers, threadFactory, meterRegistry);
+        scheduler.setSaturationListener(new PriorityLanePartitionPauser(kafkaListenerEndpointRegistry, BackpressureController.LISTENER_ID));
+        return scheduler;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.listener.mode", havingValue = LISTENER_MODE_PRIORITY)
+    public OrderPriorityClassifier orderPriorityClassifier(PriorityLaneScheduler priorityLaneScheduler,
+                                                           @Value("${dispatch.priority.defaultLane:standard}") String defaultLane,
+                                                           @Value("${dispatch.priority.header:dispatch-priority}") String header,
+                                                           @Value("${dispatch.priority.itemClasses:}") String itemClasses) {
+        return new OrderPriorityClassifier(priorityLaneScheduler.laneNames(), defaultLane, header, itemClasses);
+    }
+
+    /**
+     * Present in exactly-once mode only, the listener containers start a transaction for each record (or each poll
+     * in batch mode) and commit the dispatch events and the consumed offsets in it.
+     **/
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.producer.transactional", havingValue = "true")
+    public KafkaTransactionManager<String, Object> kafkaTransactionManager(ProducerFactory<String, Object> producerFactory) {
+        return new KafkaTransactionManager<>(producerFactory);
+    }
+
+    /**
+     * Remembers dispatched order ids so redeliveries skip the stock check and the sends, optionally persisted
+     * to dispatch.dedup.file so that survives a restart.
+     **/
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "dispatch.dedup.enabled", havingValue = "true")
+    public ProcessedOrderStore processedOrderStore(@Value("${dispatch.dedup.maxSize:100000}") int maxSize,
+                                                   @Value("${dispatch.dedup.file:}") String file) {
+        return new ProcessedOrderStore(maxSize, file.isEmpty() ? null : Path.of(file));
+    }
+
+    /**
+     * Present with dispatch.prefilter.enabled, order.created values are scanned for orderId and item before they are
+     * deserialized and records the ProcessedOrderStore or the StockSnapshot already answer for are dropped unbound,
+     * see PreFilteringDeserializer. Only useful with dispatch.dedup.enabled or dispatch.stock.snapshot.enabled.
+     **/
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.prefilter.enabled", havingValue = "true")
+    public OrderCreatedPreFilter orderCreatedPreFilter(ObjectProvider<ProcessedOrderStore> processedOrderStore,
+                                                       ObjectProvider<StockSnapshot> stockSnapshot) {
+        return new OrderCreatedPreFilter(processedOrderStore.getIfAvailable(), stockSnapshot.getIfAvailable());
+    }
+
+    /**
+     * Present with dispatch.consumer.autoConcurrency=true, sizes the listener concurrency to the partition count
+     * of order.created and follows it when partitions are added.
+     **/
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "dispatch.consumer.autoConcurrency", havingValue = "true")
+    public ListenerConcurrencyScaler listenerConcurrencyScaler(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                                               @Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                                                               @Value("${dispatch.consumer.concurrency:1}") int concurrency,
+                                                               @Value("${dispatch.consumer.maxConcurrency:8}") int maxConcurrency,
+                                                               @Value("${dispatch.consumer.autoConcurrencyCheckMs:60000}") long checkIntervalMs) {
+        return new ListenerConcurrencyScaler(kafkaListenerEndpointRegistry, bootstrapServers, concurrency, maxConcurrency, checkIntervalMs);
+    }
+
+    /**
+     * Circuit breaker and adaptive concurrency limit in front of every stock service request, see StockServiceGuard.
+     **/
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.stock.guard.enabled", havingValue = "true")
+    public StockServiceGuard stockServiceGuard(@Value("${dispatch.stock.guard.circuit.windowSize:50}") int windowSize,
+                                               @Value("${dispatch.stock.guard.circuit.minimumCalls:20}") int minimumCalls,
+                                               @Value("${dispatch.stock.guard.circuit.failureRateThreshold:0.5}") double failureRateThreshold,
+                                               @Value("${dispatch.stock.guard.circuit.openMs:5000}") long openMs,
+                                               @Value("${dispatch.stock.guard.circuit.halfOpenProbes:3}") int halfOpenProbes,
+                                               @Value("${dispatch.stock.guard.limit.initial:20}") int initialLimit,
+                                               @Value("${dispatch.stock.guard.limit.min:1}") int minLimit,
+                                               @Value("${dispatch.stock.guard.limit.max:200}") int maxLimit,
+                                               @Value("${dispatch.stock.guard.limit.latencyThresholdMs:500}") long latencyThresholdMs,
+                                               @Value("${dispatch.stock.guard.limit.backoffRatio:0.9}") double backoffRatio,
+                                               @Value("${dispatch.stock.guard.limit.acquireTimeoutMs:100}") long acquireTimeoutMs) {
+        return new StockServiceGuard(windowSize, minimumCalls, failureRateThreshold, openMs, halfOpenProbes,
+                initialLimit, minLimit, maxLimit, latencyThresholdMs, backoffRatio, acquireTimeoutMs);
+    }
+
+    /**
+     * Item availability replicated from a compacted topic, consulted before the stock service. Loaded before the
+     * listener containers start, from dispatch.stock.snapshot.checkpoint.file plus the records after it when there
+     * is one, see StockSnapshot.
+     **/
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.stock.snapshot.enabled", havingValue = "true")
+    public StockSnapshot stockSnapshot(@Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                                       @Value("${dispatch.stock.snapshot.topic:stock.events}") String topic,
+                                       @Value("${dispatch.stock.snapshot.bootstrapThreads:4}") int bootstrapThreads,
+                                       @Value("${dispatch.stock.snapshot.warmupTimeoutMs:30000}") long warmupTimeoutMs,
+                                       @Value("${dispatch.stock.snapshot.checkpoint.file:}") String checkpointFile,
+                                       @Value("${dispatch.stock.snapshot.checkpoint.intervalMs:60000}") long checkpointIntervalMs,
+                                       @Value("${dispatch.stock.snapshot.checkpoint.maxAgeMs:43200000}") long checkpointMaxAgeMs) {
+        return new StockSnapshot(bootstrapServers, topic, bootstrapThreads, warmupTimeoutMs,
+                checkpointFile.isEmpty() ? null : Path.of(checkpointFile), checkpointIntervalMs, checkpointMaxAgeMs);
+    }
+
+    /**
+     * Pauses the order.created listener while the stock service or the producer is overloaded, see
+     * BackpressureController for the signals.
+     **/
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "dispatch.backpressure.enabled", havingValue = "true")
+    public BackpressureController backpressureController(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                                         MeterRegistry meterRegistry,
+                                                         ObjectProvider<StockServiceGuard> stockServiceGuard,
+                                                         @Value("${dispatch.backpressure.stockLatencyMs:1000}") long stockLatencyMs,
+                                                         @Value("${dispatch.backpressure.producerBufferUsage:0.8}") double producerBufferUsage,
+                                                         @Value("${dispatch.backpressure.producerInFlight:50}") int producerInFlight,
+                                                         @Value("${dispatch.backpressure.errorRate:0.5}") double errorRate,
+                                                         @Value("${dispatch.backpressure.minimumDeliveries:20}") int minimumDeliveries,
+                                                         @Value("${dispatch.backpressure.resumeRatio:0.7}") double resumeRatio,
+                                                         @Value("${dispatch.backpressure.minPauseMs:2000}") long minPauseMs,
+                                                         @Value("${dispatch.backpressure.sampleMs:1000}") long sampleMs) {
+        return new BackpressureController(kafkaListenerEndpointRegistry, meterRegistry, stockServiceGuard.getIfAvailable(),
+                stockLatencyMs, producerBufferUsage, producerInFlight, errorRate, minimumDeliveries, resumeRatio, minPauseMs, sampleMs);
+    }
+
+    /**
+     * Present with dispatch.outbox.enabled, DispatchService then appends the dispatch events to this local log
+     * instead of sending them and OutboxRelay publishes them. Not with dispatch.producer.transactional, the events
+     * would leave the Kafka transaction.
+     **/
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "dispatch.outbox.enabled", havingValue = "true")
+    public OutboxLog outboxLog(@Value("${dispatch.outbox.directory}") String directory,
+                               @Value("${dispatch.outbox.segmentBytes:67108864}") long segmentBytes,
+                               @Value("${dispatch.outbox.maxBytes:1073741824}") long maxBytes,
+                               @Value("${dispatch.outbox.fsync:true}") boolean fsync,
+                               @Value("${dispatch.producer.transactional:false}") boolean transactional) {
+        if (transactional) {
+            throw new IllegalStateException("dispatch.outbox.enabled is not supported with dispatch.producer.transactional, the events must be sent in the transaction");
+        }
+        return new OutboxLog(Path.of(directory), segmentBytes, maxBytes, fsync);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "dispatch.outbox.enabled", havingValue = "true")
+    public OutboxRelay outboxRelay(OutboxLog outboxLog,
+                                   KafkaTemplate<String, Object> kafkaTemplate,
+                                   @Qualifier("trackingKafkaTemplate") KafkaTemplate<String, Object> trackingKafkaTemplate,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${dispatch.outbox.relay.batchSize:5000}") int batchSize,
+                                   @Value("${dispatch.outbox.relay.sendTimeoutMs:30000}") long sendTimeoutMs,
+                                   @Value("${dispatch.outbox.relay.retryBackoffMs:1000}") long retryBackoffMs) {
+        return new OutboxRelay(outboxLog, kafkaTemplate, trackingKafkaTemplate, meterRegistry, batchSize, sendTimeoutMs, retryBackoffMs);
+    }
+
+    @Bean
+    public ConsumerFactory<String, Object> consumerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                                                           @Value("${dispatch.producer.transactional:false}") boolean transactional,
+                                                           @Value("${dispatch.consumer.profile:balanced}") String profile,
+                                                           @Value("${dispatch.consumer.cooperativeRebalancing:true}") boolean cooperativeRebalancing,
+                                                           ObjectProvider<OrderCreatedPreFilter> orderCreatedPreFilter) {
+        Map<String, Object> config = new HashMap<>(ConsumerProfile.of(profile).config());
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        if (cooperativeRebalancing) {
+            // a rebalance only revokes the partitions that move, the others keep being consumed throughout
+            config.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        }
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class); // message value
-        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
+        // JSON with type headers or DispatchBinaryCodec, told apart by the first byte
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, MigratingDispatchDeserializer.class);
         config.put(JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName()); //payload value
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class); // for now message key
         config.put(JsonDeserializer.TRUSTED_PACKAGES, TRUSTED_PACKAGES);
+        if (transactional) {
+            // never see events from aborted dispatch transactions
+            config.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        }
+        OrderCreatedPreFilter preFilter = orderCreatedPreFilter.getIfAvailable();
+        if (preFilter != null) {
+            // same chain as configured above with the pre-filter ahead of the binding, a fresh one per consumer
+            return new DefaultKafkaConsumerFactory<>(config, null,
+                    () -> new ErrorHandlingDeserializer<>(new PreFilteringDeserializer(new MigratingDispatchDeserializer(), preFilter)));
+        }
         return new DefaultKafkaConsumerFactory<>(config);
     }
 
+    /**
+     * Sends order.dispatched, and dead letters.
+     **/
     @Bean
+    @Primary
     public KafkaTemplate<String, Object> kafkaTemplate(ProducerFactory<String, Object> producerFactory) {
-        return new KafkaTemplate<>(producerFactory);
+        return template(producerFactory);
+    }
+
+    /**
+     * Sends dispatch.tracking. Without dispatch.producer.tracking.profile it shares the producer of kafkaTemplate,
+     * with it the tracking events get their own producer, e.g. high-throughput while order.dispatched stays
+     * low-latency.
+     **/
+    @Bean
+    public KafkaTemplate<String, Object> trackingKafkaTemplate(ProducerFactory<String, Object> producerFactory,
+                                                               @Qualifier("trackingProducerFactory") ObjectProvider<ProducerFactory<String, Object>> trackingProducerFactory) {
+        return template(trackingProducerFactory.getIfAvailable(() -> producerFactory));
+    }
+
+    private static KafkaTemplate<String, Object> template(ProducerFactory<String, Object> producerFactory) {
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        // spring.kafka.template send-to-ack timers, split by topic
+        kafkaTemplate.setMicrometerTagsProvider(record -> Map.of("topic", record.topic()));
+        return kafkaTemplate;
+    }
+
+    /**
+     * Kafka client metrics of every producer and consumer the factories create: buffer, batch and request stats
+     * (kafka.producer.*) and fetch lag per partition (kafka.consumer.fetch.manager.records.lag).
+     **/
+    @Bean
+    public MeterBinder kafkaClientMetrics(List<ProducerFactory<String, Object>> producerFactories, ConsumerFactory<String, Object> consumerFactory) {
+        return registry -> {
+            producerFactories.forEach(producerFactory -> producerFactory.addListener(new MicrometerProducerListener<>(registry)));
+            consumerFactory.addListener(new MicrometerConsumerListener<>(registry));
+        };
     }
 
     @Bean
-    public ProducerFactory<String, Object> producerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers) {
-        Map<String, Object> config = new HashMap<>();
+    @Primary
+    public ProducerFactory<String, Object> producerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                                                           @Value("${dispatch.producer.transactional:false}") boolean transactional,
+                                                           @Value("${dispatch.producer.transactionIdPrefix:}") String transactionIdPrefix,
+                                                           @Value("${dispatch.codec.binaryTopics:}") List<String> binaryTopics,
+                                                           @Value("${dispatch.producer.profile:low-latency}") String profile,
+                                                           @Value("${dispatch.producer.compression:}") String compression) {
+        ProducerProfile producerProfile = ProducerProfile.of(profile);
+        if (producerProfile == ProducerProfile.EXACTLY_ONCE && !transactional) {
+            throw new IllegalStateException("dispatch.producer.profile=exactly-once requires dispatch.producer.transactional=true");
+        }
+        DefaultKafkaProducerFactory<String, Object> producerFactory =
+                new DefaultKafkaProducerFactory<>(producerConfig(bootstrapServers, binaryTopics, producerProfile, compression));
+        if (transactional) {
+            // must be unique per running instance, zombie instances are fenced through the consumer group generation
+            producerFactory.setTransactionIdPrefix(transactionIdPrefix.isEmpty() ? "dispatch-" + DispatchEvents.APPLICATION_ID + "-tx-" : transactionIdPrefix);
+        }
+        return producerFactory;
+    }
+
+    /**
+     * Only when dispatch.producer.tracking.profile is set. Not available in transactional mode, the tracking events
+     * have to be sent by the transactional producer to commit with the rest of the dispatch.
+     **/
+    @Bean
+    @ConditionalOnExpression("'${dispatch.producer.tracking.profile:}' != ''")
+    public ProducerFactory<String, Object> trackingProducerFactory(@Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                                                                   @Value("${dispatch.producer.transactional:false}") boolean transactional,
+                                                                   @Value("${dispatch.codec.binaryTopics:}") List<String> binaryTopics,
+                                                                   @Value("${dispatch.producer.tracking.profile}") String profile,
+                                                                   @Value("${dispatch.producer.tracking.compression:}") String compression) {
+        if (transactional) {
+            throw new IllegalStateException("dispatch.producer.tracking.profile is not supported with dispatch.producer.transactional, tracking events must share the transactional producer");
+        }
+        return new DefaultKafkaProducerFactory<>(producerConfig(bootstrapServers, binaryTopics, ProducerProfile.of(profile), compression));
+    }
+
+    private static Map<String, Object> producerConfig(String bootstrapServers, List<String> binaryTopics, ProducerProfile profile, String compression) {
+        Map<String, Object> config = new HashMap<>(profile.config(compression));
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        if (binaryTopics.isEmpty()) {
+            config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        } else {
+            // kept in the config (not as serializer instances) so the reactive engine's sender picks it up too
+            config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, DelegatingByTopicSerializer.class);
+            config.put(DelegatingByTopicSerialization.VALUE_SERIALIZATION_TOPIC_CONFIG, binaryTopics.stream()
+                    .map(topic -> Pattern.quote(topic) + ":" + DispatchBinarySerializer.class.getName())
+                    .collect(Collectors.joining(",")));
+            config.put(DelegatingByTopicSerialization.VALUE_SERIALIZATION_TOPIC_DEFAULT, JsonSerializer.class.getName());
+        }
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         config.put(JsonDeserializer.TRUSTED_PACKAGES, TRUSTED_PACKAGES);
-        return new DefaultKafkaProducerFactory<>(config);
+        return config;
     }
 
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(ClientHttpRequestFactory stockServiceRequestFactory) {
+        return new RestTemplate(stockServiceRequestFactory);
     }
 }
@@ -0,0 +1,200 @@
+package dev.lydtech.dispatch.backpressure;
+
+import dev.lydtech.dispatch.client.StockServiceGuard;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pauses the orderConsumerClient container while a downstream dependency is overloaded and resumes it once every
+ * signal has recovered, so the backlog waits in Kafka rather than in retry loops on the listener threads. A paused
+ * container keeps polling (without fetching) and so stays in the group, there is no max.poll.interval.ms rebalance.
+ * The container factory sets pauseImmediate while backpressure is enabled, so a pause takes effect after the record
+ * being dispatched, the rest of the poll is redelivered on resume.
+ *
+ * Every sampleMs each signal is turned into a pressure, 1.0 being its limit:
+ * - stock: mean dispatch.stock.requests latency since the last sample / stockLatencyMs; 1.0 while the
+ *   StockServiceGuard circuit rejects requests or every slot of its concurrency limit is taken
+ * - producer buffer: used share of kafka.producer.buffer.total.bytes / producerBufferUsage
+ * - producer in flight: kafka.producer.requests.in.flight / producerInFlight
+ * - errors: share of failed deliveries among the deliveries since the last sample / errorRate, once there were
+ *   at least minimumDeliveries of them
+ * The container is paused when the highest pressure reaches 1.0 and resumed when it is back below resumeRatio,
+ * after at least minPauseMs. A paused listener makes no stock calls, so resuming is also how the stock service
+ * is probed again; if it is still slow the next sample pauses once more.
+ **/
+@Slf4j
+public class BackpressureController implements AutoCloseable {
+
+    public static final String LISTENER_ID = "orderConsumerClient";
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final MeterRegistry meterRegistry;
+    private final StockServiceGuard stockServiceGuard;
+    private final double stockLatencyMs;
+    private final double producerBufferUsage;
+    private final double producerInFlight;
+    private final double errorRate;
+    private final int minimumDeliveries;
+    private final double resumeRatio;
+    private final long minPauseNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Counter pauses;
+
+    private double lastStockCount;
+    private double lastStockTotalMs;
+    private double lastFailures;
+    private double lastProcessed;
+    private volatile double pressure;
+    private volatile boolean paused;
+    private long pausedAt;
+
+    public BackpressureController(KafkaListenerEndpointRegistry registry, MeterRegistry meterRegistry, StockServiceGuard stockServiceGuard,
+                                  long stockLatencyMs, double producerBufferUsage, int producerInFlight, double errorRate,
+                                  int minimumDeliveries, double resumeRatio, long minPauseMs, long sampleMs) {
+        this.registry = registry;
+        this.meterRegistry = meterRegistry;
+        this.stockServiceGuard = stockServiceGuard;
+        this.stockLatencyMs = stockLatencyMs;
+        this.producerBufferUsage = producerBufferUsage;
+        this.producerInFlight = producerInFlight;
+        this.errorRate = errorRate;
+        this.minimumDeliveries = minimumDeliveries;
+        this.resumeRatio = resumeRatio;
+        this.minPauseNanos = TimeUnit.MILLISECONDS.toNanos(minPauseMs);
+        this.pauses = Counter.builder("dispatch.backpressure.pauses")
+                .description("Times the order.created listener was paused for downstream overload")
+                .register(meterRegistry);
+        Gauge.builder("dispatch.backpressure.paused", this, controller -> controller.paused ? 1 : 0)
+                .description("1 while the order.created listener is paused for backpressure")
+                .register(meterRegistry);
+        Gauge.builder("dispatch.backpressure.pressure", this, BackpressureController::pressure)
+                .description("Highest downstream pressure at the last sample, 1.0 pauses the listener")
+                .register(meterRegistry);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads());
+        if (sampleMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::sample, sampleMs, sampleMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public double pressure() {
+        return pressure;
+    }
+
+    public boolean paused() {
+        return paused;
+    }
+
+    void sample() {
+        try {
+            MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+            if (container == null || !container.isRunning()) {
+                return;
+            }
+            double stock = stockPressure();
+            double buffer = producerBufferPressure();
+            double inFlight = producerInFlightPressure();
+            double errors = errorPressure();
+            pressure = Math.max(Math.max(stock, buffer), Math.max(inFlight, errors));
+            if (!paused && pressure >= 1.0) {
+                log.warn("Pausing {}: stock {} - producer buffer {} - producer in flight {} - errors {}",
+                        LISTENER_ID, format(stock), format(buffer), format(inFlight), format(errors));
+                container.pause();
+                paused = true;
+                pausedAt = System.nanoTime();
+                pauses.increment();
+            } else if (paused && pressure < resumeRatio && System.nanoTime() - pausedAt >= minPauseNanos) {
+                log.info("Resuming {}: pressure {}", LISTENER_ID, format(pressure));
+                container.resume();
+                paused = false;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Backpressure sample failed", e);
+        }
+    }
+
+    private double stockPressure() {
+        double count = 0;
+        double totalMs = 0;
+        for (Timer timer : meterRegistry.find("dispatch.stock.requests").timers()) {
+            count += timer.count();
+            totalMs += timer.totalTime(TimeUnit.MILLISECONDS);
+        }
+        double calls = count - lastStockCount;
+        double latency = calls > 0 ? (totalMs - lastStockTotalMs) / calls : 0;
+        lastStockCount = count;
+        lastStockTotalMs = totalMs;
+        double pressure = latency / stockLatencyMs;
+        if (stockServiceGuard != null && (stockServiceGuard.rejecting() || stockServiceGuard.inFlight() >= stockServiceGuard.limit())) {
+            pressure = Math.max(pressure, 1.0);
+        }
+        return pressure;
+    }
+
+    private double producerBufferPressure() {
+        double total = sumGauges("kafka.producer.buffer.total.bytes");
+        if (total <= 0) {
+            return 0;
+        }
+        double used = 1 - sumGauges("kafka.producer.buffer.available.bytes") / total;
+        return used / producerBufferUsage;
+    }
+
+    private double producerInFlightPressure() {
+        return sumGauges("kafka.producer.requests.in.flight") / producerInFlight;
+    }
+
+    private double errorPressure() {
+        double failures = sumCounters("dispatch.delivery.failures");
+        double processed = 0;
+        for (Timer timer : meterRegistry.find("dispatch.order.end.to.end").timers()) {
+            processed += timer.count();
+        }
+        double newFailures = failures - lastFailures;
+        double deliveries = newFailures + processed - lastProcessed;
+        if (deliveries < minimumDeliveries) {
+            // too few to judge, keep accumulating until the next sample
+            return 0;
+        }
+        lastFailures = failures;
+        lastProcessed = processed;
+        return newFailures / deliveries / errorRate;
+    }
+
+    private double sumGauges(String name) {
+        return meterRegistry.find(name).gauges().stream()
+                .mapToDouble(Gauge::value)
+                .filter(value -> !Double.isNaN(value))
+                .sum();
+    }
+
+    private double sumCounters(String name) {
+        double sum = meterRegistry.find(name).counters().stream().mapToDouble(Counter::count).sum();
+        return sum + meterRegistry.find(name).functionCounters().stream().mapToDouble(FunctionCounter::count).sum();
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static CustomizableThreadFactory daemonThreads() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dispatch-backpressure-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
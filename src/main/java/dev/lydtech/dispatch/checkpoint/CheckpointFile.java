@@ -0,0 +1,164 @@
+package dev.lydtech.dispatch.checkpoint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * A checkpoint of in-memory state on local disk, written and read through memory mapped regions.
+ *
+ * Layout: magic and version (8 bytes), then frames of [int length][int crc32c][payload], closed by an end marker
+ * [int 0][int frame count]. Frames are appended as the state is walked, nothing is buffered in full. A checkpoint is
+ * written to a .tmp sibling, forced and moved over the previous one, so a crash while writing leaves the previous
+ * checkpoint in place. A file that is truncated or damaged anyway (a torn or corrupt frame, a missing or wrong end
+ * marker, trailing bytes) is rejected as a whole, the caller then rebuilds its state from scratch.
+ **/
+public final class CheckpointFile {
+
+    public static final int MAGIC = 0x44435031; // DCP1
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int REGION_BYTES = 1 << 20;
+
+    private CheckpointFile() {
+    }
+
+    public static Writer create(Path file) throws IOException {
+        return new Writer(file);
+    }
+
+    /**
+     * The frame payloads of the checkpoint, in write order, or null if there is none or it isn't complete and intact.
+     * The payloads are views of a read only mapping of the file.
+     **/
+    public static List<ByteBuffer> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + FRAME_HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // the mapping stays valid once the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+                return null;
+            }
+            List<ByteBuffer> frames = new ArrayList<>();
+            CRC32C crc = new CRC32C();
+            while (mapped.remaining() >= FRAME_HEADER_BYTES) {
+                int length = mapped.getInt();
+                int checksum = mapped.getInt();
+                if (length == 0) {
+                    // the end marker, valid only as the very last bytes and for the frames read
+                    return checksum == frames.size() && !mapped.hasRemaining() ? frames : null;
+                }
+                if (length < 0 || length > mapped.remaining()) {
+                    return null;
+                }
+                ByteBuffer payload = mapped.slice(mapped.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    return null;
+                }
+                frames.add(payload);
+                mapped.position(mapped.position() + length);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Appends frames to the .tmp sibling of the checkpoint, commit() makes them the checkpoint. Closing without
+     * committing discards them.
+     **/
+    public static final class Writer implements AutoCloseable {
+
+        private final Path file;
+        private final Path tmp;
+        private final FileChannel channel;
+        private final CRC32C crc = new CRC32C();
+        private MappedByteBuffer region;
+        private long regionStart;
+        private int frames;
+        private boolean committed;
+
+        private Writer(Path file) throws IOException {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ensure(HEADER_BYTES);
+            region.putInt(MAGIC).putInt(VERSION);
+        }
+
+        /**
+         * Appends the remaining bytes of the payload as one frame.
+         **/
+        public void append(ByteBuffer payload) throws IOException {
+            int length = payload.remaining();
+            if (length == 0) {
+                throw new IllegalArgumentException("Empty checkpoint frame");
+            }
+            crc.reset();
+            crc.update(payload.duplicate());
+            ensure(FRAME_HEADER_BYTES + length);
+            region.putInt(length).putInt((int) crc.getValue()).put(payload);
+            frames++;
+        }
+
+        public void commit() throws IOException {
+            ensure(FRAME_HEADER_BYTES);
+            region.putInt(0).putInt(frames);
+            long size = position();
+            region.force();
+            region = null;
+            // the last region was mapped past the data
+            channel.truncate(size);
+            channel.force(true);
+            channel.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                region = null;
+                channel.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private long position() {
+            return regionStart + region.position();
+        }
+
+        /**
+         * Maps the next region of the file once the current one is too short for the next write.
+         **/
+        private void ensure(int bytes) throws IOException {
+            if (region != null && region.remaining() >= bytes) {
+                return;
+            }
+            long start = region == null ? 0 : position();
+            if (region != null) {
+                region.force();
+            }
+            region = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(REGION_BYTES, bytes));
+            regionStart = start;
+        }
+    }
+}
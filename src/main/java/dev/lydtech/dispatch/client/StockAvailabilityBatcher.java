@@ -0,0 +1,122 @@
+package dev.lydtech.dispatch.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Merges single-item availability checks issued concurrently by different listener threads into bulk requests.
+ * The first item of a batch opens a window; the batch is sent when the window elapses or when it reaches the
+ * maximum size, whichever comes first. Callers asking for an item that is already pending share its result.
+ * A failed bulk request fails every caller waiting on it with the same Retryable/NotRetryable exception.
+ **/
+@Slf4j
+class StockAvailabilityBatcher implements AutoCloseable {
+
+    private final Function<Collection<String>, Map<String, Boolean>> bulkLookup;
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService lookupExecutor;
+    private final Object lock = new Object();
+    private Map<String, CompletableFuture<Boolean>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    StockAvailabilityBatcher(Function<Collection<String>, Map<String, Boolean>> bulkLookup, long windowMs, int maxBatchSize) {
+        this.bulkLookup = bulkLookup;
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("stock-batcher-timer"));
+        this.lookupExecutor = Executors.newCachedThreadPool(daemonThreads("stock-batcher-lookup"));
+    }
+
+    boolean checkAvailability(String item) {
+        try {
+            return submit(item).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    CompletableFuture<Boolean> submit(String item) {
+        Map<String, CompletableFuture<Boolean>> full = null;
+        CompletableFuture<Boolean> result;
+        synchronized (lock) {
+            result = pending.get(item);
+            if (result == null) {
+                result = new CompletableFuture<>();
+                pending.put(item, result);
+                if (pending.size() >= maxBatchSize) {
+                    full = drain();
+                } else if (pending.size() == 1) {
+                    scheduledFlush = scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        if (full != null) {
+            // the caller that filled the batch sends it, it has to wait for the answer anyway
+            lookup(full);
+        }
+        return result;
+    }
+
+    private void flush() {
+        Map<String, CompletableFuture<Boolean>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = drain();
+        }
+        lookupExecutor.execute(() -> lookup(batch));
+    }
+
+    private Map<String, CompletableFuture<Boolean>> drain() {
+        Map<String, CompletableFuture<Boolean>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void lookup(Map<String, CompletableFuture<Boolean>> batch) {
+        try {
+            Map<String, Boolean> availability = bulkLookup.apply(batch.keySet());
+            batch.forEach((item, result) -> result.complete(Boolean.TRUE.equals(availability.get(item))));
+        } catch (RuntimeException e) {
+            batch.values().forEach(result -> result.completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        lookupExecutor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,161 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, expire-after-write cache of item availability in front of the stock service.
+ * Unavailable answers (and NotRetryableException failures, which will not change on a retry) live for a shorter
+ * time than available ones. RetryableException failures are never cached, so the next record asks again.
+ * Concurrent misses for the same item share a single load: the first caller fetches, the others wait for it.
+ * Once the size limit is reached entries are evicted in the order they were first inserted.
+ **/
+class StockAvailabilityCache {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> writeOrder = new ConcurrentLinkedQueue<>();
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier nanoClock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    StockAvailabilityCache(int maximumSize, long ttlMs, long negativeTtlMs) {
+        this(maximumSize, ttlMs, negativeTtlMs, System::nanoTime);
+    }
+
+    StockAvailabilityCache(int maximumSize, long ttlMs, long negativeTtlMs, LongSupplier nanoClock) {
+        this.maximumSize = maximumSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMs);
+        this.nanoClock = nanoClock;
+    }
+
+    boolean get(String item, Function<String, Boolean> loader) {
+        Entry entry = liveEntry(item);
+        if (entry != null) {
+            hits.increment();
+            return entry.value();
+        }
+        CompletableFuture<Boolean> load = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlight.putIfAbsent(item, load);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+        try {
+            // another caller may have finished loading between the lookup and claiming the load
+            entry = liveEntry(item);
+            if (entry != null) {
+                hits.increment();
+                load.complete(entry.available);
+                return entry.value();
+            }
+            misses.increment();
+            boolean available = loader.apply(item);
+            put(item, available);
+            load.complete(available);
+            return available;
+        } catch (NotRetryableException e) {
+            put(item, new Entry(false, e, nanoClock.getAsLong() + negativeTtlNanos));
+            load.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(item, load);
+        }
+    }
+
+    Boolean getIfPresent(String item) {
+        Entry entry = liveEntry(item);
+        if (entry == null || entry.failure() != null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.available();
+    }
+
+    void put(String item, boolean available) {
+        put(item, new Entry(available, null, nanoClock.getAsLong() + (available ? ttlNanos : negativeTtlNanos)));
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long coalesced() {
+        return coalesced.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private Entry liveEntry(String item) {
+        Entry entry = entries.get(item);
+        if (entry == null) {
+            return null;
+        }
+        // expired entries stay in place until they are reloaded or evicted, so every key is queued exactly once
+        return entry.expiresAt - nanoClock.getAsLong() > 0 ? entry : null;
+    }
+
+    private void put(String item, Entry entry) {
+        if (entries.put(item, entry) == null) {
+            writeOrder.add(item);
+        }
+        while (entries.size() > maximumSize) {
+            String eldest = writeOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            if (entries.remove(eldest) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static boolean await(CompletableFuture<Boolean> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry(boolean available, NotRetryableException failure, long expiresAt) {
+        boolean value() {
+            if (failure != null) {
+                throw failure;
+            }
+            return available;
+        }
+    }
+}
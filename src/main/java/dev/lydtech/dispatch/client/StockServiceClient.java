@@ -2,44 +2,258 @@ package dev.lydtech.dispatch.client;
 
 import dev.lydtech.dispatch.client.exception.NotRetryableException;
 import dev.lydtech.dispatch.client.exception.RetryableException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
 @Slf4j
 @Component
-public class StockServiceClient {
+public class StockServiceClient implements MeterBinder {
+
+    private static final ParameterizedTypeReference<Map<String, Boolean>> AVAILABILITY_MAP = new ParameterizedTypeReference<>() {};
 
     private final RestTemplate restTemplate;
-    private final String stockServiceEndpoint;
+    private final String availabilityQuery;
+    private final String bulkAvailabilityQuery;
+    private final StockAvailabilityBatcher batcher;
+    private final StockAvailabilityCache cache;
+    private final StockServiceGuard guard;
+    private final StockSnapshot snapshot;
+    // indexed by Outcome, bound once a registry is available
+    private volatile Timer[] singleRequestTimers;
+    private volatile Timer[] bulkRequestTimers;
+
+    private enum Outcome {
+        AVAILABLE, UNAVAILABLE, SUCCESS, RETRYABLE, NOT_RETRYABLE;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    public StockServiceClient(RestTemplate restTemplate, String stockServiceEndpoint) {
+        this(restTemplate, stockServiceEndpoint, stockServiceEndpoint + "/bulk", false, 0L, 0, false, 0, 0L, 0L, null, null);
+    }
 
-    public StockServiceClient(@Autowired RestTemplate restTemplate,
-                              @Value("${dispatch.stockServiceEndpoint}") String stockServiceEndpoint) {
+    public StockServiceClient(RestTemplate restTemplate, String stockServiceEndpoint, String stockServiceBulkEndpoint,
+                              boolean batchingEnabled, long batchWindowMs, int maxBatchSize) {
+        this(restTemplate, stockServiceEndpoint, stockServiceBulkEndpoint, batchingEnabled, batchWindowMs, maxBatchSize, false, 0, 0L, 0L, null, null);
+    }
+
+    @Autowired
+    public StockServiceClient(RestTemplate restTemplate,
+                              @Value("${dispatch.stockServiceEndpoint}") String stockServiceEndpoint,
+                              @Value("${dispatch.stock.bulkEndpoint:${dispatch.stockServiceEndpoint}/bulk}") String stockServiceBulkEndpoint,
+                              @Value("${dispatch.stock.batching.enabled:false}") boolean batchingEnabled,
+                              @Value("${dispatch.stock.batching.windowMs:5}") long batchWindowMs,
+                              @Value("${dispatch.stock.batching.maxSize:50}") int maxBatchSize,
+                              @Value("${dispatch.stock.cache.enabled:false}") boolean cacheEnabled,
+                              @Value("${dispatch.stock.cache.maxSize:10000}") int cacheMaxSize,
+                              @Value("${dispatch.stock.cache.ttlMs:1000}") long cacheTtlMs,
+                              @Value("${dispatch.stock.cache.negativeTtlMs:200}") long cacheNegativeTtlMs,
+                              @Nullable StockServiceGuard guard,
+                              @Nullable StockSnapshot snapshot) {
         this.restTemplate = restTemplate;
-        this.stockServiceEndpoint = stockServiceEndpoint;
+        // the endpoints never change, so the query prefixes are built once rather than per call
+        this.availabilityQuery = stockServiceEndpoint + "?item=";
+        this.bulkAvailabilityQuery = stockServiceBulkEndpoint + "?item=";
+        this.batcher = batchingEnabled ? new StockAvailabilityBatcher(this::fetchBulkAvailability, batchWindowMs, maxBatchSize) : null;
+        this.cache = cacheEnabled ? new StockAvailabilityCache(cacheMaxSize, cacheTtlMs, cacheNegativeTtlMs) : null;
+        this.guard = guard;
+        this.snapshot = snapshot;
     }
 
     /**
      * Stock service return true if a product is available, otherwise false;
+     * When the stock snapshot is enabled items it knows are answered from it without a request.
+     * When the cache is enabled recent answers are served locally and concurrent misses for one item share a call.
+     * When micro-batching is enabled, concurrent calls from different listener threads are merged into bulk requests.
      * **/
     public String checkAvailability(String item) {
-        try {
-            ResponseEntity<String> response = restTemplate.getForEntity(stockServiceEndpoint + "?item=" + item, String.class);
+        if (snapshot != null) {
+            Boolean available = snapshot.availability(item);
+            if (available != null) {
+                return String.valueOf(available);
+            }
+        }
+        if (cache != null) {
+            return String.valueOf(cache.get(item, missed -> Boolean.parseBoolean(fetchAvailability(missed))));
+        }
+        return fetchAvailability(item);
+    }
+
+    private String fetchAvailability(String item) {
+        if (batcher != null) {
+            return String.valueOf(batcher.checkAvailability(item));
+        }
+        return call(false, () -> {
+            ResponseEntity<String> response = restTemplate.getForEntity(availabilityQuery + item, String.class);
             if (response.getStatusCode().value() != 200) {
                 throw new RuntimeException("Error: " + response.getStatusCode().value());
             }
             return response.getBody();
+        }, body -> Boolean.parseBoolean(body) ? Outcome.AVAILABLE : Outcome.UNAVAILABLE);
+    }
+
+    /**
+     * Checks many items with a single request to the bulk endpoint, which answers with a JSON object of item to availability.
+     * Items missing from the response are reported as unavailable. Items in the snapshot or the cache are not requested.
+     * **/
+    public Map<String, Boolean> checkAvailability(Collection<String> items) {
+        if (cache == null && snapshot == null) {
+            return fetchBulkAvailability(items);
+        }
+        Map<String, Boolean> availability = new HashMap<>(items.size() * 2);
+        List<String> missing = new ArrayList<>();
+        for (String item : items) {
+            Boolean known = snapshot != null ? snapshot.availability(item) : null;
+            if (known == null && cache != null) {
+                known = cache.getIfPresent(item);
+            }
+            if (known != null) {
+                availability.put(item, known);
+            } else {
+                missing.add(item);
+            }
+        }
+        Map<String, Boolean> fetched = fetchBulkAvailability(missing);
+        if (cache != null) {
+            fetched.forEach(cache::put);
+        }
+        availability.putAll(fetched);
+        return availability;
+    }
+
+    private Map<String, Boolean> fetchBulkAvailability(Collection<String> items) {
+        if (items.isEmpty()) {
+            return Map.of();
+        }
+        StringBuilder query = new StringBuilder(bulkAvailabilityQuery.length() + items.size() * 24).append(bulkAvailabilityQuery);
+        boolean first = true;
+        for (String item : items) {
+            if (!first) {
+                query.append("&item=");
+            }
+            query.append(URLEncoder.encode(item, StandardCharsets.UTF_8));
+            first = false;
+        }
+        URI uri = URI.create(query.toString());
+        return call(true, () -> {
+            ResponseEntity<Map<String, Boolean>> response = restTemplate.exchange(uri, HttpMethod.GET, null, AVAILABILITY_MAP);
+            if (response.getStatusCode().value() != 200) {
+                throw new RuntimeException("Error: " + response.getStatusCode().value());
+            }
+            Map<String, Boolean> body = response.getBody() == null ? Map.of() : response.getBody();
+            Map<String, Boolean> availability = new HashMap<>(items.size() * 2);
+            for (String item : items) {
+                availability.put(item, Boolean.TRUE.equals(body.get(item)));
+            }
+            return availability;
+        }, availability -> Outcome.SUCCESS);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        singleRequestTimers = requestTimers(registry, "single", Outcome.AVAILABLE, Outcome.UNAVAILABLE, Outcome.RETRYABLE, Outcome.NOT_RETRYABLE);
+        bulkRequestTimers = requestTimers(registry, "bulk", Outcome.SUCCESS, Outcome.RETRYABLE, Outcome.NOT_RETRYABLE);
+        if (cache == null) {
+            return;
+        }
+        bindCacheCounter(registry, "hit", StockAvailabilityCache::hits);
+        bindCacheCounter(registry, "miss", StockAvailabilityCache::misses);
+        bindCacheCounter(registry, "coalesced", StockAvailabilityCache::coalesced);
+        bindCacheCounter(registry, "eviction", StockAvailabilityCache::evictions);
+        Gauge.builder("dispatch.stock.cache.size", cache, StockAvailabilityCache::size)
+                .description("Items currently held in the stock availability cache")
+                .register(registry);
+    }
+
+    private static Timer[] requestTimers(MeterRegistry registry, String type, Outcome... outcomes) {
+        Timer[] timers = new Timer[Outcome.values().length];
+        for (Outcome outcome : outcomes) {
+            timers[outcome.ordinal()] = Timer.builder("dispatch.stock.requests")
+                    .tag("type", type)
+                    .tag("outcome", outcome.tag)
+                    .description("Stock service request latency by outcome")
+                    .register(registry);
+        }
+        return timers;
+    }
+
+    private void record(boolean bulk, Outcome outcome, long startNanos) {
+        Timer[] timers = bulk ? bulkRequestTimers : singleRequestTimers;
+        if (timers != null) {
+            timers[outcome.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void bindCacheCounter(MeterRegistry registry, String result, ToDoubleFunction<StockAvailabilityCache> count) {
+        FunctionCounter.builder("dispatch.stock.cache.requests", cache, count)
+                .tag("result", result)
+                .description("Stock availability cache lookups by result")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+
+    /**
+     * Every request passes the guard first when one is configured, a rejection surfaces as RetryableException
+     * without a request being sent.
+     **/
+    private <T> T call(boolean bulk, Supplier<T> request, Function<T, Outcome> outcome) {
+        StockServiceGuard.Permit permit = guard != null ? guard.acquire() : null;
+        long start = System.nanoTime();
+        try {
+            T result = request.get();
+            release(permit, false);
+            record(bulk, outcome.apply(result), start);
+            return result;
         } catch (HttpServerErrorException | ResourceAccessException e) {
+            release(permit, true);
+            record(bulk, Outcome.RETRYABLE, start);
             log.warn("Failure calling external service", e);
             throw new RetryableException(e);
         } catch (Exception e) {
+            release(permit, false);
+            record(bulk, Outcome.NOT_RETRYABLE, start);
             log.error("Exception thrown: {}", e.getClass().getName(), e);
             throw new NotRetryableException(e);
         }
     }
+
+    private void release(StockServiceGuard.Permit permit, boolean failed) {
+        if (permit != null) {
+            guard.release(permit, failed);
+        }
+    }
 }
@@ -0,0 +1,292 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.client.exception.StockServiceRejectedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control in front of every stock service request, so a degraded service gets less traffic rather than
+ * the retries of every listener thread on top of the usual load.
+ *
+ * Circuit breaker: the outcomes of the last windowSize requests are kept; once at least minimumCalls are recorded
+ * and the share of retryable failures (5xx, timeouts, connection errors) reaches failureRateThreshold the circuit
+ * opens. While open every request fails at once with a StockServiceRejectedException. After openMs the circuit is half open
+ * and lets halfOpenProbes requests through, it closes once all of them succeed and opens again on any failure.
+ * 4xx answers count as successes, the service answered.
+ *
+ * Concurrency limit (AIMD): at most limit requests are in flight, a request waits up to acquireTimeoutMs for a
+ * slot and otherwise fails with a StockServiceRejectedException. Every request completing within latencyThresholdMs raises
+ * the limit by 1/limit (about one per limit's worth of requests), a failure or a slower answer multiplies it by
+ * backoffRatio, so the limit settles where the service still answers in time. Waiting is done on a
+ * ReentrantLock condition rather than a monitor, so a virtual thread waiting for a slot doesn't pin its carrier.
+ **/
+@Slf4j
+public class StockServiceGuard implements MeterBinder {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN;
+
+        private final String tag = name().toLowerCase();
+    }
+
+    /**
+     * Handed out by acquire() and given back to release() once the request completed.
+     **/
+    public record Permit(long startNanos, boolean probe) {
+    }
+
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final long acquireTimeoutNanos;
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    // ring of the last outcomes while closed, true for a failure
+    private final boolean[] outcomes;
+    private int outcomeIndex;
+    private int outcomeCount;
+    private int failureCount;
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+    private volatile double limit;
+    private volatile int inFlight;
+
+    private final LongAdder rejectedOpen = new LongAdder();
+    private final LongAdder rejectedLimit = new LongAdder();
+
+    public StockServiceGuard(int windowSize, int minimumCalls, double failureRateThreshold, long openMs, int halfOpenProbes,
+                             int initialLimit, int minLimit, int maxLimit, long latencyThresholdMs, double backoffRatio, long acquireTimeoutMs) {
+        this(windowSize, minimumCalls, failureRateThreshold, openMs, halfOpenProbes, initialLimit, minLimit, maxLimit,
+                latencyThresholdMs, backoffRatio, acquireTimeoutMs, System::nanoTime);
+    }
+
+    StockServiceGuard(int windowSize, int minimumCalls, double failureRateThreshold, long openMs, int halfOpenProbes,
+                      int initialLimit, int minLimit, int maxLimit, long latencyThresholdMs, double backoffRatio, long acquireTimeoutMs,
+                      LongSupplier nanoClock) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize || halfOpenProbes < 1) {
+            throw new IllegalArgumentException("Need 1 <= minimumCalls <= windowSize and at least one half open probe");
+        }
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Need 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.outcomes = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+        this.halfOpenProbes = halfOpenProbes;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.backoffRatio = backoffRatio;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Admits a request or fails fast with a StockServiceRejectedException, the circuit being open or no slot freeing
+     * up in time.
+     **/
+    public Permit acquire() {
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            if (state == State.OPEN && now - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+                log.info("Stock service circuit half open, probing with {} requests", halfOpenProbes);
+            }
+            if (state == State.OPEN || (state == State.HALF_OPEN && probesInFlight + probeSuccesses >= halfOpenProbes)) {
+                rejectedOpen.increment();
+                throw new StockServiceRejectedException("Stock service circuit is open");
+            }
+            boolean probe = state == State.HALF_OPEN;
+            if (probe) {
+                // reserved before waiting for a slot, so waiting probes can't exceed halfOpenProbes
+                probesInFlight++;
+            }
+            long deadline = now + acquireTimeoutNanos;
+            while (inFlight >= (int) limit) {
+                long remaining = deadline - nanoClock.getAsLong();
+                if (remaining <= 0) {
+                    unreserve(probe);
+                    rejectedLimit.increment();
+                    throw new StockServiceRejectedException("Stock service concurrency limit of " + (int) limit + " reached");
+                }
+                try {
+                    slotFreed.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    unreserve(probe);
+                    Thread.currentThread().interrupt();
+                    throw new RetryableException(e);
+                }
+            }
+            inFlight++;
+            // latency is measured from here, time spent waiting for a slot says nothing about the service
+            return new Permit(nanoClock.getAsLong(), probe);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports the outcome of an admitted request, failed meaning it would be retried.
+     **/
+    public void release(Permit permit, boolean failed) {
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            inFlight--;
+            if (failed || now - permit.startNanos() > latencyThresholdNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            if (permit.probe()) {
+                probesInFlight--;
+                if (state == State.HALF_OPEN) {
+                    if (failed) {
+                        open(now);
+                    } else if (++probeSuccesses >= halfOpenProbes) {
+                        close();
+                    }
+                }
+            } else if (state == State.CLOSED) {
+                recordOutcome(failed);
+                if (outcomeCount >= minimumCalls && failureCount >= failureRateThreshold * outcomeCount) {
+                    open(now);
+                }
+            }
+            slotFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * True while the circuit is open and still within openMs, i.e. until requests may probe the service again.
+     **/
+    public boolean rejecting() {
+        lock.lock();
+        try {
+            return state == State.OPEN && nanoClock.getAsLong() - openedAt < openNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * How long a request would still be turned away without reaching the service: the rest of openMs while open,
+     * latencyThresholdMs (about the time for a slot or a probe answer) while every half open probe or every slot of
+     * the limit is taken, 0 once a request would be admitted.
+     **/
+    public long rejectingForMs() {
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            if (state == State.OPEN && now - openedAt < openNanos) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(openNanos - (now - openedAt)));
+            }
+            boolean probesTaken = state == State.HALF_OPEN && probesInFlight + probeSuccesses >= halfOpenProbes;
+            if (probesTaken || inFlight >= (int) limit) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(latencyThresholdNanos));
+            }
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (State candidate : State.values()) {
+            Gauge.builder("dispatch.stock.circuit.state", this, guard -> guard.state == candidate ? 1 : 0)
+                    .tag("state", candidate.tag)
+                    .description("1 for the current state of the stock service circuit breaker")
+                    .register(registry);
+        }
+        Gauge.builder("dispatch.stock.concurrency.limit", this, StockServiceGuard::limit)
+                .description("Adaptive limit of concurrent stock service requests")
+                .register(registry);
+        Gauge.builder("dispatch.stock.concurrency.in.flight", this, StockServiceGuard::inFlight)
+                .description("Stock service requests currently in flight")
+                .register(registry);
+        FunctionCounter.builder("dispatch.stock.requests.rejected", rejectedOpen, LongAdder::sum)
+                .tag("reason", "circuit_open")
+                .description("Stock service requests failed fast without being sent")
+                .register(registry);
+        FunctionCounter.builder("dispatch.stock.requests.rejected", rejectedLimit, LongAdder::sum)
+                .tag("reason", "limit")
+                .description("Stock service requests failed fast without being sent")
+                .register(registry);
+    }
+
+    private void unreserve(boolean probe) {
+        if (probe) {
+            probesInFlight--;
+        }
+    }
+
+    private void recordOutcome(boolean failed) {
+        if (outcomeCount == outcomes.length) {
+            if (outcomes[outcomeIndex]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeIndex] = failed;
+        if (failed) {
+            failureCount++;
+        }
+        outcomeIndex = outcomeIndex + 1 == outcomes.length ? 0 : outcomeIndex + 1;
+    }
+
+    private void open(long now) {
+        if (state != State.OPEN) {
+            log.warn("Stock service circuit open for {}ms", TimeUnit.NANOSECONDS.toMillis(openNanos));
+        }
+        state = State.OPEN;
+        openedAt = now;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        outcomeIndex = 0;
+        outcomeCount = 0;
+        failureCount = 0;
+        log.info("Stock service circuit closed");
+    }
+}
@@ -0,0 +1,30 @@
+package dev.lydtech.dispatch.client;
+
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+
+/**
+ * The dispatch back off with the StockServiceGuard in front: while the guard turns requests away a failed record
+ * waits until it would be admitted again (the rest of the open circuit, or a probe or slot freeing up) and that
+ * wait doesn't use up one of the delegate's attempts. A record is only dead lettered after the delegate's retries
+ * of requests that actually reached the service, not because the circuit stayed open for a few hundred ms.
+ **/
+public class StockServiceGuardBackOff implements BackOff {
+
+    private final BackOff delegate;
+    private final StockServiceGuard guard;
+
+    public StockServiceGuardBackOff(BackOff delegate, StockServiceGuard guard) {
+        this.delegate = delegate;
+        this.guard = guard;
+    }
+
+    @Override
+    public BackOffExecution start() {
+        BackOffExecution attempts = delegate.start();
+        return () -> {
+            long rejectingForMs = guard.rejectingForMs();
+            return rejectingForMs > 0 ? rejectingForMs : attempts.nextBackOff();
+        };
+    }
+}
@@ -0,0 +1,102 @@
+package dev.lydtech.dispatch.client;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * HTTP transport used by the RestTemplate behind StockServiceClient, selected with dispatch.http.client:
+ * pooled - Apache HttpClient with a keep-alive connection pool, per-route limits and pool metrics (default)
+ * jdk    - JDK HttpClient, optionally negotiating HTTP/2
+ * simple - HttpURLConnection per request, only with timeouts
+ * Connect, read and pool-acquire timeouts all surface as ResourceAccessException, which StockServiceClient maps to RetryableException.
+ **/
+@Configuration
+public class StockServiceHttpConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.http.client", havingValue = "pooled", matchIfMissing = true)
+    public PoolingHttpClientConnectionManager stockServiceConnectionManager(@Value("${dispatch.http.pool.maxTotal:200}") int maxTotal,
+                                                                            @Value("${dispatch.http.pool.maxPerRoute:100}") int maxPerRoute,
+                                                                            @Value("${dispatch.http.pool.timeToLiveMs:60000}") long timeToLiveMs,
+                                                                            @Value("${dispatch.http.connectTimeoutMs:500}") long connectTimeoutMs,
+                                                                            @Value("${dispatch.http.readTimeoutMs:2000}") long readTimeoutMs) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setTimeToLive(TimeValue.ofMilliseconds(timeToLiveMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.http.client", havingValue = "pooled", matchIfMissing = true)
+    public ClientHttpRequestFactory pooledStockServiceRequestFactory(PoolingHttpClientConnectionManager stockServiceConnectionManager,
+                                                                     @Value("${dispatch.http.pool.acquireTimeoutMs:200}") long acquireTimeoutMs,
+                                                                     @Value("${dispatch.http.readTimeoutMs:2000}") long readTimeoutMs,
+                                                                     @Value("${dispatch.http.pool.idleEvictMs:30000}") long idleEvictMs) {
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(stockServiceConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(acquireTimeoutMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleEvictMs))
+                .build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.http.client", havingValue = "pooled", matchIfMissing = true)
+    public MeterBinder stockServiceConnectionPoolMetrics(PoolingHttpClientConnectionManager stockServiceConnectionManager) {
+        // httpcomponents.httpclient.pool.total.max / .total.connections{state=available|leased} / .route.max.default / .total.pending
+        return new PoolingHttpClientConnectionManagerMetricsBinder(stockServiceConnectionManager, "stock-service");
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.http.client", havingValue = "jdk")
+    public ClientHttpRequestFactory jdkStockServiceRequestFactory(@Value("${dispatch.http.jdk.http2:true}") boolean http2,
+                                                                  @Value("${dispatch.http.connectTimeoutMs:500}") long connectTimeoutMs,
+                                                                  @Value("${dispatch.http.readTimeoutMs:2000}") long readTimeoutMs) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        return requestFactory;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "dispatch.http.client", havingValue = "simple")
+    public ClientHttpRequestFactory simpleStockServiceRequestFactory(@Value("${dispatch.http.connectTimeoutMs:500}") int connectTimeoutMs,
+                                                                     @Value("${dispatch.http.readTimeoutMs:2000}") int readTimeoutMs) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        return requestFactory;
+    }
+}
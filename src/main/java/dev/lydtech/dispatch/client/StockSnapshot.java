@@ -0,0 +1,469 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.checkpoint.CheckpointFile;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Item availability replicated from a log compacted topic (dispatch.stock.snapshot.topic, stock.events by default):
+ * key the item, value "true" or "false", a tombstone forgets the item. StockServiceClient answers from here and
+ * only calls the stock service for items the snapshot doesn't know.
+ *
+ * On start the partitions are split across up to bootstrapThreads consumers, each replays its share from the
+ * beginning up to the end offsets seen at start and then keeps tailing it. start() blocks until every consumer has
+ * caught up, at most warmupTimeoutMs, and runs in a phase before the listener containers, so no order is processed
+ * against a half loaded snapshot. If the warm-up times out the listeners start anyway, unknown items fall back to
+ * the stock service. A consumer that fails is restarted a second later from the offsets it last applied, so its
+ * share keeps being tailed rather than served stale; one that fails before catching up holds the warm-up, which then
+ * reports not loaded unless the restarted consumer catches up in time. Partitions added to the topic later are only
+ * picked up on restart.
+ *
+ * With a checkpoint file the items and the offsets they were read up to are written to it every checkpointIntervalMs
+ * and on stop (see CheckpointFile), and start() restores them and only replays the records after those offsets. The
+ * offsets are taken before the items are copied, so the copy is at least as recent as the offsets and replaying from
+ * them converges to the topic. A checkpoint is ignored, and the topic replayed from the beginning, when it is damaged,
+ * older than checkpointMaxAgeMs (compaction may have dropped tombstones it never saw, keep it below the topic's
+ * delete.retention.ms), or its partitions or offsets no longer match the topic.
+ **/
+@Slf4j
+public class StockSnapshot implements SmartLifecycle, MeterBinder {
+
+    // before the listener containers (AbstractMessageListenerContainer.DEFAULT_PHASE)
+    public static final int PHASE = Integer.MAX_VALUE - 200;
+
+    // entries are written in frames of about this size
+    private static final int CHECKPOINT_FRAME_BYTES = 64 * 1024;
+
+    private static final long RESTART_DELAY_MS = 1000L;
+
+    private final Supplier<Consumer<String, String>> consumers;
+    private final String topic;
+    private final int bootstrapThreads;
+    private final long warmupTimeoutMs;
+    private final Path checkpointFile;
+    private final long checkpointIntervalMs;
+    private final long checkpointMaxAgeMs;
+    private final LongSupplier clock;
+    private final Map<String, Boolean> availability = new ConcurrentHashMap<>();
+    // next offset to read per partition, everything before it is applied
+    private final Map<TopicPartition, Long> positions = new ConcurrentHashMap<>();
+    private final List<Consumer<String, String>> activeConsumers = new CopyOnWriteArrayList<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAdder consumerFailures = new LongAdder();
+    private ExecutorService executor;
+    private ScheduledExecutorService checkpointScheduler;
+    private volatile boolean running;
+    private volatile boolean loaded;
+    private volatile int restored;
+
+    public StockSnapshot(String bootstrapServers, String topic, int bootstrapThreads, long warmupTimeoutMs) {
+        this(bootstrapServers, topic, bootstrapThreads, warmupTimeoutMs, null, 0L, 0L);
+    }
+
+    public StockSnapshot(String bootstrapServers, String topic, int bootstrapThreads, long warmupTimeoutMs,
+                         Path checkpointFile, long checkpointIntervalMs, long checkpointMaxAgeMs) {
+        this(() -> new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false,
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
+                ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 5000,
+                ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+                ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class)), topic, bootstrapThreads, warmupTimeoutMs,
+                checkpointFile, checkpointIntervalMs, checkpointMaxAgeMs, System::currentTimeMillis);
+    }
+
+    StockSnapshot(Supplier<Consumer<String, String>> consumers, String topic, int bootstrapThreads, long warmupTimeoutMs,
+                  Path checkpointFile, long checkpointIntervalMs, long checkpointMaxAgeMs, LongSupplier clock) {
+        this.consumers = consumers;
+        this.topic = topic;
+        this.bootstrapThreads = Math.max(1, bootstrapThreads);
+        this.warmupTimeoutMs = warmupTimeoutMs;
+        this.checkpointFile = checkpointFile;
+        this.checkpointIntervalMs = checkpointIntervalMs;
+        this.checkpointMaxAgeMs = checkpointMaxAgeMs;
+        this.clock = clock;
+    }
+
+    /**
+     * The availability of the item, null if the snapshot doesn't know it.
+     **/
+    public Boolean availability(String item) {
+        Boolean available = availability.get(item);
+        (available != null ? hits : misses).increment();
+        return available;
+    }
+
+    /**
+     * True only if the snapshot holds the item as unavailable. Not counted as a lookup, it is asked ahead of
+     * availability by the pre-filter.
+     **/
+    public boolean knownUnavailable(String item) {
+        return Boolean.FALSE.equals(availability.get(item));
+    }
+
+    public int size() {
+        return availability.size();
+    }
+
+    public boolean loaded() {
+        return loaded;
+    }
+
+    /**
+     * Items restored from the checkpoint at start, 0 if the topic was replayed from the beginning.
+     **/
+    public int restored() {
+        return restored;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        List<TopicPartition> partitions = new ArrayList<>();
+        Map<TopicPartition, Long> startOffsets;
+        try (Consumer<String, String> metadata = consumers.get()) {
+            List<PartitionInfo> infos = metadata.partitionsFor(topic);
+            if (infos != null) {
+                infos.forEach(info -> partitions.add(new TopicPartition(topic, info.partition())));
+            }
+            startOffsets = partitions.isEmpty() ? Map.of() : restore(metadata, partitions);
+        }
+        if (partitions.isEmpty()) {
+            log.warn("Stock snapshot topic {} has no partitions, every item falls back to the stock service", topic);
+            return;
+        }
+        int threads = Math.min(bootstrapThreads, partitions.size());
+        List<List<TopicPartition>> shares = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            shares.add(new ArrayList<>());
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            shares.get(i % threads).add(partitions.get(i));
+        }
+        CountDownLatch caughtUp = new CountDownLatch(threads);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("stock-snapshot-");
+        threadFactory.setDaemon(true);
+        executor = Executors.newFixedThreadPool(threads, threadFactory);
+        long start = System.nanoTime();
+        shares.forEach(share -> executor.execute(() -> replayAndTail(share, startOffsets, caughtUp)));
+        try {
+            loaded = caughtUp.await(warmupTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (loaded) {
+            log.info("Stock snapshot loaded {} items ({} from the checkpoint) from {} partitions of {} in {}ms", availability.size(),
+                    restored, partitions.size(), topic, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } else {
+            log.warn("Stock snapshot not loaded within {}ms ({} items so far, {} consumer failures), unknown items fall back to the stock service",
+                    warmupTimeoutMs, availability.size(), consumerFailures.sum());
+        }
+        if (checkpointFile != null && checkpointIntervalMs > 0) {
+            CustomizableThreadFactory checkpointThreads = new CustomizableThreadFactory("stock-snapshot-checkpoint-");
+            checkpointThreads.setDaemon(true);
+            checkpointScheduler = Executors.newSingleThreadScheduledExecutor(checkpointThreads);
+            checkpointScheduler.scheduleWithFixedDelay(this::checkpoint, checkpointIntervalMs, checkpointIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Replays and then tails the share until stop(), restarting the consumer from the last applied offsets whenever
+     * it fails. caughtUp is counted down once the share reaches the end offsets seen by its first consumer.
+     **/
+    private void replayAndTail(List<TopicPartition> share, Map<TopicPartition, Long> startOffsets, CountDownLatch caughtUp) {
+        Map<TopicPartition, Long> endOffsets = null;
+        boolean caughtUpCounted = false;
+        while (running) {
+            try (Consumer<String, String> consumer = consumers.get()) {
+                activeConsumers.add(consumer);
+                try {
+                    consumer.assign(share);
+                    seek(consumer, share, startOffsets);
+                    if (endOffsets == null) {
+                        endOffsets = consumer.endOffsets(share);
+                    }
+                    while (running) {
+                        if (!caughtUpCounted && reached(consumer, endOffsets)) {
+                            caughtUp.countDown();
+                            caughtUpCounted = true;
+                        }
+                        for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(200))) {
+                            apply(record);
+                        }
+                        for (TopicPartition partition : share) {
+                            positions.put(partition, consumer.position(partition));
+                        }
+                    }
+                } finally {
+                    activeConsumers.remove(consumer);
+                }
+            } catch (WakeupException e) {
+                // stop()
+                return;
+            } catch (Exception e) {
+                consumerFailures.increment();
+                log.error("Stock snapshot consumer for {} failed{}, restarting it in {}ms", share,
+                        caughtUpCounted ? "" : " before catching up", RESTART_DELAY_MS, e);
+                try {
+                    Thread.sleep(RESTART_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Positions the consumer at the next offset to apply: where a previous consumer of the share got to, else the
+     * checkpoint offsets, else the beginning.
+     **/
+    private void seek(Consumer<String, String> consumer, List<TopicPartition> share, Map<TopicPartition, Long> startOffsets) {
+        List<TopicPartition> fromBeginning = new ArrayList<>();
+        for (TopicPartition partition : share) {
+            Long offset = positions.getOrDefault(partition, startOffsets.get(partition));
+            if (offset != null) {
+                consumer.seek(partition, offset);
+            } else {
+                fromBeginning.add(partition);
+            }
+        }
+        if (!fromBeginning.isEmpty()) {
+            consumer.seekToBeginning(fromBeginning);
+        }
+    }
+
+    private static boolean reached(Consumer<String, String> consumer, Map<TopicPartition, Long> endOffsets) {
+        for (Map.Entry<TopicPartition, Long> end : endOffsets.entrySet()) {
+            if (consumer.position(end.getKey()) < end.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void apply(ConsumerRecord<String, String> record) {
+        if (record.key() == null) {
+            return;
+        }
+        if (record.value() == null) {
+            availability.remove(record.key());
+        } else {
+            availability.put(record.key(), Boolean.parseBoolean(record.value().trim()));
+        }
+    }
+
+    /**
+     * Restores the checkpoint if it is usable and returns the offsets to resume each partition from, empty to replay
+     * the topic from the beginning.
+     **/
+    private Map<TopicPartition, Long> restore(Consumer<String, String> metadata, List<TopicPartition> partitions) {
+        if (checkpointFile == null) {
+            return Map.of();
+        }
+        List<ByteBuffer> frames;
+        try {
+            frames = CheckpointFile.read(checkpointFile);
+        } catch (IOException e) {
+            log.warn("Failed to read stock snapshot checkpoint {}, replaying {} from the beginning", checkpointFile, topic, e);
+            return Map.of();
+        }
+        if (frames == null || frames.isEmpty()) {
+            log.info("No usable stock snapshot checkpoint at {}, replaying {} from the beginning", checkpointFile, topic);
+            return Map.of();
+        }
+        try {
+            return restore(metadata, partitions, frames);
+        } catch (RuntimeException e) {
+            // intact frames that don't hold what this version writes
+            log.warn("Unreadable stock snapshot checkpoint {}, replaying {} from the beginning", checkpointFile, topic, e);
+            availability.clear();
+            positions.clear();
+            restored = 0;
+            return Map.of();
+        }
+    }
+
+    private Map<TopicPartition, Long> restore(Consumer<String, String> metadata, List<TopicPartition> partitions, List<ByteBuffer> frames) {
+        ByteBuffer header = frames.get(0);
+        long writtenAt = header.getLong();
+        String checkpointTopic = readString(header);
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (int i = header.getInt(); i > 0; i--) {
+            offsets.put(new TopicPartition(topic, header.getInt()), header.getLong());
+        }
+        long age = clock.getAsLong() - writtenAt;
+        if (!topic.equals(checkpointTopic) || age > checkpointMaxAgeMs || !offsets.keySet().equals(new HashSet<>(partitions))) {
+            log.info("Stock snapshot checkpoint {} is {}ms old for {} partitions of {}, replaying {} from the beginning",
+                    checkpointFile, age, offsets.size(), checkpointTopic, topic);
+            return Map.of();
+        }
+        Map<TopicPartition, Long> beginning = metadata.beginningOffsets(partitions);
+        Map<TopicPartition, Long> end = metadata.endOffsets(partitions);
+        for (TopicPartition partition : partitions) {
+            long offset = offsets.get(partition);
+            if (offset < beginning.get(partition) || offset > end.get(partition)) {
+                // records after the checkpoint were deleted, or the topic was recreated
+                log.info("Stock snapshot checkpoint offset {} of {} is outside {}-{}, replaying {} from the beginning",
+                        offset, partition, beginning.get(partition), end.get(partition), topic);
+                return Map.of();
+            }
+        }
+        for (int f = 1; f < frames.size(); f++) {
+            ByteBuffer entries = frames.get(f);
+            while (entries.hasRemaining()) {
+                String item = readString(entries);
+                availability.put(item, entries.get() != 0);
+            }
+        }
+        positions.putAll(offsets);
+        restored = availability.size();
+        return offsets;
+    }
+
+    /**
+     * Writes the items and the offsets they were read up to to the checkpoint file.
+     **/
+    synchronized void checkpoint() {
+        if (checkpointFile == null || positions.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        // offsets first, the items copied after them may only be more recent
+        Map<TopicPartition, Long> offsets = new HashMap<>(positions);
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(Math.max(CHECKPOINT_FRAME_BYTES, 16 + topicBytes.length + offsets.size() * 12));
+        int items = 0;
+        try (CheckpointFile.Writer writer = CheckpointFile.create(checkpointFile)) {
+            frame.putLong(clock.getAsLong()).putInt(topicBytes.length).put(topicBytes).putInt(offsets.size());
+            offsets.forEach((partition, offset) -> frame.putInt(partition.partition()).putLong(offset));
+            writer.append(frame.flip());
+            frame.clear();
+            for (Map.Entry<String, Boolean> entry : availability.entrySet()) {
+                byte[] item = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                int bytes = 5 + item.length;
+                if (frame.remaining() < bytes && frame.position() > 0) {
+                    writer.append(frame.flip());
+                    frame.clear();
+                }
+                ByteBuffer target = frame.remaining() < bytes ? ByteBuffer.allocate(bytes) : frame;
+                target.putInt(item.length).put(item).put((byte) (entry.getValue() ? 1 : 0));
+                if (target != frame) {
+                    // an item too long for a frame of its own
+                    writer.append(target.flip());
+                }
+                items++;
+            }
+            if (frame.position() > 0) {
+                writer.append(frame.flip());
+            }
+            writer.commit();
+            checkpoints.increment();
+            log.info("Stock snapshot checkpoint of {} items written to {} in {}ms", items, checkpointFile,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write stock snapshot checkpoint {}", checkpointFile, e);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (checkpointScheduler != null) {
+            checkpointScheduler.shutdownNow();
+        }
+        activeConsumers.forEach(Consumer::wakeup);
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        activeConsumers.clear();
+        if (loaded) {
+            // the consumers are gone, so these are the final offsets
+            checkpoint();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("dispatch.stock.snapshot.size", this, StockSnapshot::size)
+                .description("Items held in the stock snapshot")
+                .register(registry);
+        Gauge.builder("dispatch.stock.snapshot.loaded", this, snapshot -> snapshot.loaded ? 1 : 0)
+                .description("1 once the stock snapshot caught up with its topic at startup")
+                .register(registry);
+        Gauge.builder("dispatch.stock.snapshot.restored", this, StockSnapshot::restored)
+                .description("Items restored from the checkpoint at startup rather than replayed from the topic")
+                .register(registry);
+        FunctionCounter.builder("dispatch.stock.snapshot.checkpoints", checkpoints, LongAdder::sum)
+                .description("Stock snapshot checkpoints written")
+                .register(registry);
+        FunctionCounter.builder("dispatch.stock.snapshot.consumer.failures", consumerFailures, LongAdder::sum)
+                .description("Stock snapshot consumers that failed and were restarted")
+                .register(registry);
+        FunctionCounter.builder("dispatch.stock.snapshot.lookups", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .description("Stock snapshot lookups by result, misses go to the stock service")
+                .register(registry);
+        FunctionCounter.builder("dispatch.stock.snapshot.lookups", misses, LongAdder::sum)
+                .tag("result", "miss")
+                .description("Stock snapshot lookups by result, misses go to the stock service")
+                .register(registry);
+    }
+}
@@ -0,0 +1,11 @@
+package dev.lydtech.dispatch.client.exception;
+
+/**
+ * A stock service request the StockServiceGuard turned away without sending it, the circuit being open or the
+ * concurrency limit taken. Retryable, but the dispatch back off waits for the guard rather than counting it.
+ **/
+public class StockServiceRejectedException extends RetryableException {
+    public StockServiceRejectedException(String message) {
+        super(message);
+    }
+}
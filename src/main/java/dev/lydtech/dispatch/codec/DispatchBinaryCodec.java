@@ -0,0 +1,232 @@
+package dev.lydtech.dispatch.codec;
+
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Compact encoding of the dispatch messages. Every payload starts with a three byte header, MAGIC, the schema
+ * version and a type tag, followed by the fields of that type in declaration order:
+ * - UUID: a presence byte then 16 raw bytes (most significant long first)
+ * - String: unsigned varint of the UTF-8 length + 1 (0 for null) then the UTF-8 bytes
+ *
+ * MAGIC can never start a JSON document, so a reader can tell both formats apart from the first byte. New fields
+ * are only ever appended under a new version, a reader stops after the fields it knows and ignores the rest.
+ * Each message is encoded straight into one exactly sized array.
+ **/
+public final class DispatchBinaryCodec {
+
+    public static final byte MAGIC = (byte) 0xD1;
+    public static final byte VERSION = 1;
+
+    static final byte ORDER_CREATED = 1;
+    static final byte DISPATCH_PREPARING = 2;
+    static final byte DISPATCH_COMPLETED = 3;
+    static final byte ORDER_DISPATCHED = 4;
+
+    private static final int HEADER_BYTES = 3;
+    private static final int UUID_BYTES = 17;
+
+    private DispatchBinaryCodec() {
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= HEADER_BYTES && data[0] == MAGIC;
+    }
+
+    public static byte[] encode(Object message) {
+        if (message instanceof OrderCreated orderCreated) {
+            Writer writer = new Writer(ORDER_CREATED, UUID_BYTES + stringSize(orderCreated.getItem()));
+            writer.uuid(orderCreated.getOrderId());
+            writer.string(orderCreated.getItem());
+            return writer.buffer;
+        }
+        if (message instanceof DispatchPreparing dispatchPreparing) {
+            Writer writer = new Writer(DISPATCH_PREPARING, UUID_BYTES);
+            writer.uuid(dispatchPreparing.getOrderId());
+            return writer.buffer;
+        }
+        if (message instanceof DispatchCompleted dispatchCompleted) {
+            Writer writer = new Writer(DISPATCH_COMPLETED, UUID_BYTES + stringSize(dispatchCompleted.getDate()));
+            writer.uuid(dispatchCompleted.getOrderId());
+            writer.string(dispatchCompleted.getDate());
+            return writer.buffer;
+        }
+        if (message instanceof OrderDispatched orderDispatched) {
+            Writer writer = new Writer(ORDER_DISPATCHED, 2 * UUID_BYTES + stringSize(orderDispatched.getNotes()));
+            writer.uuid(orderDispatched.getOrderId());
+            writer.uuid(orderDispatched.getProcessedById());
+            writer.string(orderDispatched.getNotes());
+            return writer.buffer;
+        }
+        throw new SerializationException("No binary encoding for " + message.getClass().getName());
+    }
+
+    public static Object decode(byte[] data) {
+        if (!isBinary(data)) {
+            throw new SerializationException("Not a binary dispatch message");
+        }
+        // a later version only appends fields, read the ones this version knows and ignore the rest
+        if (data[1] < 1) {
+            throw new SerializationException("Unsupported binary dispatch message version " + data[1]);
+        }
+        Reader reader = new Reader(data);
+        try {
+            return switch (data[2]) {
+                case ORDER_CREATED -> new OrderCreated(reader.uuid(), reader.string());
+                case DISPATCH_PREPARING -> new DispatchPreparing(reader.uuid());
+                case DISPATCH_COMPLETED -> new DispatchCompleted(reader.uuid(), reader.string());
+                case ORDER_DISPATCHED -> new OrderDispatched(reader.uuid(), reader.uuid(), reader.string());
+                default -> throw new SerializationException("Unknown binary dispatch message type " + data[2]);
+            };
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated binary dispatch message", e);
+        }
+    }
+
+    private static int stringSize(String value) {
+        if (value == null) {
+            return 1;
+        }
+        int length = utf8Length(value);
+        return varintSize(length + 1) + length;
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static final class Writer {
+        private final byte[] buffer;
+        private int position;
+
+        private Writer(byte type, int bodySize) {
+            buffer = new byte[HEADER_BYTES + bodySize];
+            buffer[0] = MAGIC;
+            buffer[1] = VERSION;
+            buffer[2] = type;
+            position = HEADER_BYTES;
+        }
+
+        private void uuid(UUID value) {
+            if (value == null) {
+                position += UUID_BYTES;
+                return;
+            }
+            buffer[position++] = 1;
+            putLong(value.getMostSignificantBits());
+            putLong(value.getLeastSignificantBits());
+        }
+
+        private void string(String value) {
+            if (value == null) {
+                buffer[position++] = 0;
+                return;
+            }
+            int length = utf8Length(value);
+            varint(length + 1);
+            if (length == value.length()) {
+                // ASCII, no intermediate array
+                for (int i = 0; i < length; i++) {
+                    buffer[position++] = (byte) value.charAt(i);
+                }
+            } else {
+                System.arraycopy(value.getBytes(StandardCharsets.UTF_8), 0, buffer, position, length);
+                position += length;
+            }
+        }
+
+        private void varint(int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        private void putLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position = HEADER_BYTES;
+
+        private Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private UUID uuid() {
+            if (buffer[position] == 0) {
+                position += UUID_BYTES;
+                return null;
+            }
+            position++;
+            return new UUID(getLong(), getLong());
+        }
+
+        private String string() {
+            int length = varint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (position + length > buffer.length) {
+                throw new SerializationException("Truncated binary dispatch message");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = buffer[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint in binary dispatch message");
+        }
+
+        private long getLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+    }
+}
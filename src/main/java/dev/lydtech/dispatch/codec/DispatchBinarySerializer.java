@@ -0,0 +1,14 @@
+package dev.lydtech.dispatch.codec;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Writes the dispatch messages with DispatchBinaryCodec. The type travels in the payload, so no type headers are added.
+ **/
+public class DispatchBinarySerializer implements Serializer<Object> {
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return data == null ? null : DispatchBinaryCodec.encode(data);
+    }
+}
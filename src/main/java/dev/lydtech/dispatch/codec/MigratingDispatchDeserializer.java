@@ -0,0 +1,36 @@
+package dev.lydtech.dispatch.codec;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * Reads both encodings while topics move from JSON to DispatchBinaryCodec: payloads starting with the codec's
+ * magic byte are decoded directly, anything else goes to a JsonDeserializer configured with the same properties.
+ **/
+public class MigratingDispatchDeserializer implements Deserializer<Object> {
+
+    private final JsonDeserializer<Object> jsonDeserializer = new JsonDeserializer<>();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return DispatchBinaryCodec.isBinary(data) ? DispatchBinaryCodec.decode(data) : jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        return DispatchBinaryCodec.isBinary(data) ? DispatchBinaryCodec.decode(data) : jsonDeserializer.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+}
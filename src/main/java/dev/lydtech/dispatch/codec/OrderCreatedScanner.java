@@ -0,0 +1,462 @@
+package dev.lydtech.dispatch.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds orderId and item in a raw OrderCreated payload, JSON or DispatchBinaryCodec, without binding it. The JSON
+ * scan walks the top level object once: the two fields are read in place, every other value is skipped over while
+ * checking it against the JSON grammar, nothing is allocated until item() is asked for.
+ *
+ * scan answers false whenever it can't be sure what Jackson would make of the payload: escapes in a key or in item,
+ * an orderId that isn't a canonical UUID string, an item that isn't a string, another encoding or anything
+ * malformed. Skipped values are held to what Jackson accepts by default: exact true, false and null, numbers without
+ * leading zeros, NaN or a plus sign, strings without control characters, with valid escapes and well formed UTF-8,
+ * no trailing commas. Values nested deeper than MAX_DEPTH or numbers longer than MAX_NUMBER_CHARS are left to
+ * Jackson as well. Keeps the state of the last scan, so an instance belongs to one thread.
+ **/
+public final class OrderCreatedScanner {
+
+    private static final byte[] ORDER_ID = "orderId".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ITEM = "item".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final int UUID_CHARS = 36;
+    private static final int MAX_DEPTH = 64;
+    private static final int MAX_NUMBER_CHARS = 100;
+
+    private byte[] data;
+    private int position;
+    private boolean escaped;
+    private boolean hasOrderId;
+    private long orderIdMsb;
+    private long orderIdLsb;
+    private int itemOffset;
+    private int itemLength;
+
+    public boolean scan(byte[] data) {
+        this.data = data;
+        hasOrderId = false;
+        itemLength = -1;
+        if (data == null || data.length == 0) {
+            return false;
+        }
+        try {
+            return DispatchBinaryCodec.isBinary(data) ? scanBinary() : scanJson();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the last scan found a non null orderId, its halves are then in orderIdMsb and orderIdLsb.
+     **/
+    public boolean hasOrderId() {
+        return hasOrderId;
+    }
+
+    public long orderIdMsb() {
+        return orderIdMsb;
+    }
+
+    public long orderIdLsb() {
+        return orderIdLsb;
+    }
+
+    public boolean hasItem() {
+        return itemLength >= 0;
+    }
+
+    /**
+     * The item of the last scan, decoded on each call, null if it was absent or null.
+     **/
+    public String item() {
+        return itemLength < 0 ? null : new String(data, itemOffset, itemLength, StandardCharsets.UTF_8);
+    }
+
+    private boolean scanBinary() {
+        if (data[1] < 1 || data[2] != DispatchBinaryCodec.ORDER_CREATED) {
+            return false;
+        }
+        // same layout as DispatchBinaryCodec.Reader: presence byte and 16 bytes of UUID, then varint length + 1 and UTF-8,
+        // fields appended by later versions are ignored
+        position = 3;
+        if (data[position] != 0) {
+            hasOrderId = true;
+            orderIdMsb = getLong(position + 1);
+            orderIdLsb = getLong(position + 9);
+        }
+        position += 17;
+        int length = varint() - 1;
+        if (length < -1) {
+            return false;
+        }
+        if (length >= 0) {
+            if (length > data.length - position) {
+                return false;
+            }
+            itemOffset = position;
+            itemLength = length;
+        }
+        return true;
+    }
+
+    private boolean scanJson() {
+        position = 0;
+        skipWhitespace();
+        if (next() != '{') {
+            return false;
+        }
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return atEnd();
+        }
+        while (true) {
+            skipWhitespace();
+            if (next() != '"') {
+                return false;
+            }
+            int keyStart = position;
+            if (!skipString() || escaped) {
+                return false;
+            }
+            int keyEnd = position - 1;
+            skipWhitespace();
+            if (next() != ':') {
+                return false;
+            }
+            skipWhitespace();
+            // a repeated key overwrites the earlier value, as it does in Jackson
+            boolean read = matches(keyStart, keyEnd, ORDER_ID) ? orderIdValue()
+                    : matches(keyStart, keyEnd, ITEM) ? itemValue()
+                    : skipValue(0);
+            if (!read) {
+                return false;
+            }
+            skipWhitespace();
+            int c = next();
+            if (c == '}') {
+                return atEnd();
+            }
+            if (c != ',') {
+                return false;
+            }
+        }
+    }
+
+    private boolean orderIdValue() {
+        if (skipNull()) {
+            hasOrderId = false;
+            return true;
+        }
+        if (next() != '"' || position + UUID_CHARS >= data.length || data[position + UUID_CHARS] != '"') {
+            return false;
+        }
+        long msb = 0;
+        long lsb = 0;
+        int digits = 0;
+        for (int i = 0; i < UUID_CHARS; i++) {
+            int c = data[position + i];
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return false;
+            }
+            if (digits++ < 16) {
+                msb = (msb << 4) | digit;
+            } else {
+                lsb = (lsb << 4) | digit;
+            }
+        }
+        position += UUID_CHARS + 1;
+        hasOrderId = true;
+        orderIdMsb = msb;
+        orderIdLsb = lsb;
+        return true;
+    }
+
+    private boolean itemValue() {
+        if (skipNull()) {
+            itemLength = -1;
+            return true;
+        }
+        if (next() != '"') {
+            return false;
+        }
+        int start = position;
+        if (!skipString() || escaped) {
+            return false;
+        }
+        itemOffset = start;
+        itemLength = position - 1 - start;
+        return true;
+    }
+
+    /**
+     * Moves past the rest of a string whose opening quote was read, noting any escape. False if it never closes or
+     * holds anything Jackson would reject.
+     **/
+    private boolean skipString() {
+        escaped = false;
+        while (position < data.length) {
+            int c = data[position++] & 0xFF;
+            if (c == '"') {
+                return true;
+            }
+            if (c < 0x20) {
+                return false;
+            }
+            if (c == '\\') {
+                escaped = true;
+                if (!skipEscape()) {
+                    return false;
+                }
+            } else if (c >= 0x80 && !skipUtf8(c)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean skipEscape() {
+        int c = next();
+        if (c == '"' || c == '\\' || c == '/' || c == 'b' || c == 'f' || c == 'n' || c == 'r' || c == 't') {
+            return true;
+        }
+        if (c != 'u' || position + 4 > data.length) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (Character.digit(data[position++], 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves past the continuation bytes of a multi byte UTF-8 sequence. Only well formed sequences pass (no overlong
+     * forms, surrogates or code points past U+10FFFF), so item() decodes to what Jackson would read.
+     **/
+    private boolean skipUtf8(int lead) {
+        int continuation;
+        int min = 0x80;
+        int max = 0xBF;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            continuation = 1;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            continuation = 2;
+            min = lead == 0xE0 ? 0xA0 : min;
+            max = lead == 0xED ? 0x9F : max;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            continuation = 3;
+            min = lead == 0xF0 ? 0x90 : min;
+            max = lead == 0xF4 ? 0x8F : max;
+        } else {
+            return false;
+        }
+        for (int i = 0; i < continuation; i++, min = 0x80, max = 0xBF) {
+            int c = position < data.length ? data[position] & 0xFF : -1;
+            if (c < min || c > max) {
+                return false;
+            }
+            position++;
+        }
+        return true;
+    }
+
+    private boolean skipValue(int depth) {
+        int c = peek();
+        if (c == '"') {
+            position++;
+            return skipString();
+        }
+        if (c == '{' || c == '[') {
+            if (depth >= MAX_DEPTH) {
+                return false;
+            }
+            position++;
+            return c == '{' ? skipObject(depth + 1) : skipArray(depth + 1);
+        }
+        if (c == 't') {
+            return skipLiteral(TRUE);
+        }
+        if (c == 'f') {
+            return skipLiteral(FALSE);
+        }
+        if (c == 'n') {
+            return skipNull();
+        }
+        return skipNumber();
+    }
+
+    private boolean skipObject(int depth) {
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return true;
+        }
+        while (true) {
+            skipWhitespace();
+            if (next() != '"' || !skipString()) {
+                return false;
+            }
+            skipWhitespace();
+            if (next() != ':') {
+                return false;
+            }
+            skipWhitespace();
+            if (!skipValue(depth)) {
+                return false;
+            }
+            skipWhitespace();
+            int c = next();
+            if (c == '}') {
+                return true;
+            }
+            if (c != ',') {
+                return false;
+            }
+        }
+    }
+
+    private boolean skipArray(int depth) {
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return true;
+        }
+        while (true) {
+            skipWhitespace();
+            if (!skipValue(depth)) {
+                return false;
+            }
+            skipWhitespace();
+            int c = next();
+            if (c == ']') {
+                return true;
+            }
+            if (c != ',') {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)? and at most MAX_NUMBER_CHARS long. What follows is checked by
+     * the caller, so 01 or 1x fail there.
+     **/
+    private boolean skipNumber() {
+        int start = position;
+        if (peek() == '-') {
+            position++;
+        }
+        if (peek() == '0') {
+            position++;
+        } else if (!skipDigits()) {
+            return false;
+        }
+        if (peek() == '.') {
+            position++;
+            if (!skipDigits()) {
+                return false;
+            }
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            position++;
+            if (peek() == '+' || peek() == '-') {
+                position++;
+            }
+            if (!skipDigits()) {
+                return false;
+            }
+        }
+        return position - start <= MAX_NUMBER_CHARS;
+    }
+
+    private boolean skipDigits() {
+        int start = position;
+        while (position < data.length && data[position] >= '0' && data[position] <= '9') {
+            position++;
+        }
+        return position > start;
+    }
+
+    private boolean skipNull() {
+        return skipLiteral(NULL);
+    }
+
+    private boolean skipLiteral(byte[] literal) {
+        if (position + literal.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < literal.length; i++) {
+            if (data[position + i] != literal[i]) {
+                return false;
+            }
+        }
+        position += literal.length;
+        return true;
+    }
+
+    private boolean matches(int start, int end, byte[] key) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (data[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean atEnd() {
+        skipWhitespace();
+        return position == data.length;
+    }
+
+    private void skipWhitespace() {
+        while (position < data.length && isWhitespace(data[position])) {
+            position++;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private int peek() {
+        return position < data.length ? data[position] : -1;
+    }
+
+    private int next() {
+        return position < data.length ? data[position++] : -1;
+    }
+
+    private int varint() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = data[position++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    private long getLong(int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,49 @@
+package dev.lydtech.dispatch.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fetch tuning applied as a unit, selected by name with dispatch.consumer.profile:
+ * - low-latency: the broker answers a fetch as soon as any record is there, small polls
+ * - balanced: the client defaults
+ * - high-throughput: the broker waits for 64KB (or 500ms) per fetch and polls return up to 1000 records,
+ *   fewer fetch requests and bigger batches for the batch listener mode
+ **/
+public enum ConsumerProfile {
+
+    LOW_LATENCY(1, 10, 100),
+    BALANCED(1, 500, 500),
+    HIGH_THROUGHPUT(64 * 1024, 500, 1000);
+
+    private final int fetchMinBytes;
+    private final int fetchMaxWaitMs;
+    private final int maxPollRecords;
+
+    ConsumerProfile(int fetchMinBytes, int fetchMaxWaitMs, int maxPollRecords) {
+        this.fetchMinBytes = fetchMinBytes;
+        this.fetchMaxWaitMs = fetchMaxWaitMs;
+        this.maxPollRecords = maxPollRecords;
+    }
+
+    /**
+     * Accepts the property form, e.g. high-throughput.
+     **/
+    public static ConsumerProfile of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown consumer profile '" + name + "', expected low-latency, balanced or high-throughput", e);
+        }
+    }
+
+    public Map<String, Object> config() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
+        config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        return config;
+    }
+}
@@ -0,0 +1,139 @@
+package dev.lydtech.dispatch.consumer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Sizes the listener concurrency (consumer threads of this instance) to the partition count of order.created,
+ * kept between dispatch.consumer.concurrency and dispatch.consumer.maxConcurrency. The container factory asks
+ * for the initial value, after that the partition count is checked every dispatch.consumer.autoConcurrencyCheckMs
+ * and the orderConsumerClient container is restarted with the new concurrency when it changed, so adding
+ * partitions scales the instance without a redeploy. A restart costs one rebalance, partitions are rarely added.
+ *
+ * If the partition count can't be read the current concurrency is kept.
+ **/
+@Slf4j
+public class ListenerConcurrencyScaler implements MeterBinder, AutoCloseable {
+
+    public static final String LISTENER_ID = "orderConsumerClient";
+    private static final String TOPIC = "order.created";
+    private static final long ADMIN_TIMEOUT_MS = 5000;
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final IntSupplier partitionCount;
+    private final Admin admin;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final ScheduledExecutorService scheduler;
+    private volatile int concurrency;
+
+    public ListenerConcurrencyScaler(KafkaListenerEndpointRegistry registry, String bootstrapServers,
+                                     int minConcurrency, int maxConcurrency, long checkIntervalMs) {
+        this(registry, Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers)), minConcurrency, maxConcurrency, checkIntervalMs);
+    }
+
+    private ListenerConcurrencyScaler(KafkaListenerEndpointRegistry registry, Admin admin,
+                                      int minConcurrency, int maxConcurrency, long checkIntervalMs) {
+        this(registry, () -> partitionCount(admin), admin, minConcurrency, maxConcurrency, checkIntervalMs);
+    }
+
+    ListenerConcurrencyScaler(KafkaListenerEndpointRegistry registry, IntSupplier partitionCount, Admin admin,
+                              int minConcurrency, int maxConcurrency, long checkIntervalMs) {
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+            throw new IllegalArgumentException("Need 1 <= dispatch.consumer.concurrency <= dispatch.consumer.maxConcurrency");
+        }
+        this.registry = registry;
+        this.partitionCount = partitionCount;
+        this.admin = admin;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.concurrency = minConcurrency;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads());
+        if (checkIntervalMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::rescale, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The concurrency for the current partition count, within the limits.
+     **/
+    public int targetConcurrency() {
+        try {
+            concurrency = Math.max(minConcurrency, Math.min(maxConcurrency, partitionCount.getAsInt()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to read the partition count of {}, keeping concurrency {}: {}", TOPIC, concurrency, e.getMessage());
+        }
+        return concurrency;
+    }
+
+    public int concurrency() {
+        return concurrency;
+    }
+
+    void rescale() {
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (!(container instanceof ConcurrentMessageListenerContainer<?, ?> concurrentContainer) || !container.isRunning()) {
+            return;
+        }
+        int target = targetConcurrency();
+        int current = concurrentContainer.getConcurrency();
+        if (target == current) {
+            return;
+        }
+        log.info("Partition count of {} changed, restarting {} with concurrency {} (was {})", TOPIC, LISTENER_ID, target, current);
+        // concurrency can only be changed while stopped, the callback comes once every consumer has committed and
+        // left; the restart is handed back to the scaler thread rather than run on the last consumer thread
+        concurrentContainer.stop(() -> scheduler.execute(() -> {
+            concurrentContainer.setConcurrency(target);
+            concurrentContainer.start();
+        }));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("dispatch.consumer.concurrency", this, ListenerConcurrencyScaler::concurrency)
+                .description("Consumer threads of the order.created listener sized from its partition count")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (admin != null) {
+            admin.close();
+        }
+    }
+
+    private static int partitionCount(Admin admin) {
+        try {
+            return admin.describeTopics(List.of(TOPIC)).allTopicNames()
+                    .get(ADMIN_TIMEOUT_MS, TimeUnit.MILLISECONDS).get(TOPIC).partitions().size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreads() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dispatch-concurrency-scaler-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
@@ -0,0 +1,273 @@
+package dev.lydtech.dispatch.dedup;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the ids of the last maxSize dispatched orders so that redelivered OrderCreated events can be skipped.
+ * Ids are held as pairs of longs in an open addressing table (linear probing, at most half full) and in a ring
+ * recording insertion order, so the oldest id is evicted first and nothing is boxed: about 64 bytes per id.
+ *
+ * With a file configured every id is also appended to it (16 bytes each) and replayed on startup, so the store
+ * survives restarts. The file is rewritten from the ring once it holds twice as many ids as the store. Appends are
+ * not forced to disk, losing the tail on a crash only means those orders may be dispatched again.
+ **/
+@Slf4j
+public class ProcessedOrderStore implements MeterBinder, AutoCloseable {
+
+    private static final int RECORD_BYTES = 16;
+
+    private final int maxSize;
+    private final int mask;
+    private final long[] tableMsb;
+    private final long[] tableLsb;
+    private final boolean[] used;
+    private final long[] ringMsb;
+    private final long[] ringLsb;
+    private int ringHead;
+    private int size;
+
+    private final Path file;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private FileChannel channel;
+    private long fileRecords;
+
+    private final LongAdder duplicatesSkipped = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ProcessedOrderStore(int maxSize) {
+        this(maxSize, null);
+    }
+
+    public ProcessedOrderStore(int maxSize, Path file) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        int capacity = Integer.highestOneBit(Math.max(2, maxSize * 2 - 1)) << 1;
+        this.mask = capacity - 1;
+        this.tableMsb = new long[capacity];
+        this.tableLsb = new long[capacity];
+        this.used = new boolean[capacity];
+        this.ringMsb = new long[maxSize];
+        this.ringLsb = new long[maxSize];
+        this.file = file;
+        if (file != null) {
+            try {
+                load();
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                if (fileRecords > 2L * maxSize) {
+                    compact();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open processed order store " + file, e);
+            }
+        }
+    }
+
+    public boolean contains(UUID orderId) {
+        return contains(orderId.getMostSignificantBits(), orderId.getLeastSignificantBits());
+    }
+
+    /**
+     * contains for an id given as its two halves, for callers that never build the UUID.
+     **/
+    public synchronized boolean contains(long msb, long lsb) {
+        return find(msb, lsb) >= 0;
+    }
+
+    /**
+     * Returns false if the order was already known.
+     **/
+    public synchronized boolean markProcessed(UUID orderId) {
+        long msb = orderId.getMostSignificantBits();
+        long lsb = orderId.getLeastSignificantBits();
+        if (!add(msb, lsb)) {
+            return false;
+        }
+        if (channel != null) {
+            append(msb, lsb);
+        }
+        return true;
+    }
+
+    public void duplicateSkipped() {
+        duplicatesSkipped.increment();
+    }
+
+    public long duplicatesSkippedCount() {
+        return duplicatesSkipped.sum();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("dispatch.dedup.duplicates.skipped", duplicatesSkipped, LongAdder::sum)
+                .description("Redelivered orders skipped because they were already dispatched")
+                .register(registry);
+        FunctionCounter.builder("dispatch.dedup.evictions", evictions, LongAdder::sum)
+                .description("Order ids dropped to stay within dispatch.dedup.maxSize")
+                .register(registry);
+        Gauge.builder("dispatch.dedup.size", this, ProcessedOrderStore::size)
+                .description("Order ids currently remembered")
+                .register(registry);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close processed order store {}", file, e);
+            }
+            channel = null;
+        }
+    }
+
+    private boolean add(long msb, long lsb) {
+        if (find(msb, lsb) >= 0) {
+            return false;
+        }
+        if (size == maxSize) {
+            // when full the head of the ring is the oldest id
+            remove(ringMsb[ringHead], ringLsb[ringHead]);
+            size--;
+            evictions.increment();
+        }
+        ringMsb[ringHead] = msb;
+        ringLsb[ringHead] = lsb;
+        ringHead = ringHead + 1 == maxSize ? 0 : ringHead + 1;
+        int slot = slot(msb, lsb);
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+        tableMsb[slot] = msb;
+        tableLsb[slot] = lsb;
+        used[slot] = true;
+        size++;
+        return true;
+    }
+
+    private int find(long msb, long lsb) {
+        int slot = slot(msb, lsb);
+        while (used[slot]) {
+            if (tableMsb[slot] == msb && tableLsb[slot] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Backward shift deletion, keeps every remaining id reachable from its home slot without tombstones.
+     **/
+    private void remove(long msb, long lsb) {
+        int hole = find(msb, lsb);
+        if (hole < 0) {
+            return;
+        }
+        int next = (hole + 1) & mask;
+        while (used[next]) {
+            int home = slot(tableMsb[next], tableLsb[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                tableMsb[hole] = tableMsb[next];
+                tableLsb[hole] = tableLsb[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[hole] = false;
+    }
+
+    private int slot(long msb, long lsb) {
+        long hash = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long complete = in.size() / RECORD_BYTES * RECORD_BYTES;
+            if (complete != in.size()) {
+                // a torn trailing record from a crash mid-append
+                in.truncate(complete);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+            while (in.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_BYTES) {
+                    add(buffer.getLong(), buffer.getLong());
+                    fileRecords++;
+                }
+                buffer.compact();
+            }
+        }
+        evictions.reset();
+        log.info("Loaded {} processed order ids from {}", size, file);
+    }
+
+    private void append(long msb, long lsb) {
+        record.clear();
+        record.putLong(msb).putLong(lsb).flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            if (++fileRecords > 2L * maxSize) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to persist processed order id to {}, it will only be remembered in memory", file, e);
+        }
+    }
+
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096);
+            int index = Math.floorMod(ringHead - size, maxSize);
+            for (int i = 0; i < size; i++) {
+                if (buffer.remaining() < RECORD_BYTES) {
+                    writeFully(out, buffer);
+                }
+                buffer.putLong(ringMsb[index]).putLong(ringLsb[index]);
+                index = index + 1 == maxSize ? 0 : index + 1;
+            }
+            writeFully(out, buffer);
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileRecords = size;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,40 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.lanes.RetryingRecordProcessor;
+import dev.lydtech.dispatch.logging.HotPathLog;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.service.DispatchService;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+/**
+ * The work the keyed and priority handlers hand to a lane: dispatches the record through RetryingRecordProcessor and
+ * acknowledges it once it is processed or dead lettered. If the dead letter publish fails the offset is left
+ * unacknowledged, which holds back the commit until the partition is reassigned.
+ **/
+@RequiredArgsConstructor
+@Component
+public class LaneRecordDispatcher {
+
+    private final DispatchService dispatchService;
+    private final RetryingRecordProcessor retryingRecordProcessor;
+    private final DispatchMetrics dispatchMetrics;
+    private final HotPathLog hotPathLog;
+
+    public Runnable task(ConsumerRecord<String, OrderCreated> record, Acknowledgment acknowledgment) {
+        return () -> {
+            if (retryingRecordProcessor.process(record, this::dispatch)) {
+                acknowledgment.acknowledge();
+            }
+        };
+    }
+
+    private void dispatch(ConsumerRecord<String, OrderCreated> record) throws Exception {
+        hotPathLog.received(record.partition(), record.key(), record.value());
+        dispatchService.process(record.key(), record.value());
+        dispatchMetrics.recordProcessed(record.timestamp());
+    }
+}
@@ -0,0 +1,119 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.lanes.RetryingRecordProcessor;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.prefilter.PreFiltered;
+import dev.lydtech.dispatch.service.DispatchService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+@Component
+@ConditionalOnExpression("'${dispatch.engine:listener}' == 'listener' and '${dispatch.listener.mode:record}' == 'batch'")
+public class OrderCreatedBatchHandler {
+
+    private final DispatchService dispatchService;
+    private final RetryingRecordProcessor retryingRecordProcessor;
+    private final DispatchMetrics dispatchMetrics;
+    private final boolean transactional;
+
+    public OrderCreatedBatchHandler(DispatchService dispatchService,
+                                    RetryingRecordProcessor retryingRecordProcessor,
+                                    DispatchMetrics dispatchMetrics,
+                                    @Value("${dispatch.producer.transactional:false}") boolean transactional) {
+        this.dispatchService = dispatchService;
+        this.retryingRecordProcessor = retryingRecordProcessor;
+        this.dispatchMetrics = dispatchMetrics;
+        this.transactional = transactional;
+    }
+
+    /**
+     * Receives everything returned by a single poll. DispatchService reports a failing record with a
+     * BatchListenerFailedException, so the error handler commits the records before it and only retries
+     * (or dead letters) that record onwards instead of replaying the whole batch.
+     *
+     * In exactly-once mode the whole poll is one transaction and a rollback replays all of it, so a failing record
+     * is retried and dead lettered here inside the transaction and the rest of the batch carries on.
+     *
+     * Records the pre-filter rejected are left out here rather than by the container, so that failure indexes can be
+     * given back relative to the poll.
+     **/
+    @KafkaListener(
+            id = "orderConsumerClient",
+            topics = "order.created",
+            groupId = "dispatch.order.created.consumer",
+            containerFactory = "kafkaListenerContainerFactory"
+    )
+    public void listen(List<ConsumerRecord<String, OrderCreated>> polled) {
+        log.info("Batch received: size: {}", polled.size());
+        List<ConsumerRecord<String, OrderCreated>> records = withoutPreFiltered(polled);
+        if (!transactional) {
+            try {
+                dispatchService.processBatch(records);
+                recordProcessed(records, records.size());
+            } catch (BatchListenerFailedException e) {
+                recordProcessed(records, e.getIndex());
+                throw inPoll(polled, records, e);
+            }
+            return;
+        }
+        List<ConsumerRecord<String, OrderCreated>> remaining = records;
+        while (!remaining.isEmpty()) {
+            try {
+                dispatchService.processBatch(remaining);
+                recordProcessed(remaining, remaining.size());
+                return;
+            } catch (BatchListenerFailedException e) {
+                recordProcessed(remaining, e.getIndex());
+                ConsumerRecord<String, OrderCreated> failed = remaining.get(e.getIndex());
+                if (!retryingRecordProcessor.process(failed, record -> dispatchService.process(record.key(), record.value()))) {
+                    // the dead letter send failed, roll the whole batch back
+                    throw inPoll(polled, remaining, e);
+                }
+                remaining = remaining.subList(e.getIndex() + 1, remaining.size());
+            }
+        }
+    }
+
+    private static List<ConsumerRecord<String, OrderCreated>> withoutPreFiltered(List<ConsumerRecord<String, OrderCreated>> polled) {
+        List<ConsumerRecord<String, OrderCreated>> records = null;
+        for (int i = 0; i < polled.size(); i++) {
+            ConsumerRecord<?, ?> record = polled.get(i);
+            if (record.value() instanceof PreFiltered) {
+                if (records == null) {
+                    records = new ArrayList<>(polled.subList(0, i));
+                }
+            } else if (records != null) {
+                records.add(polled.get(i));
+            }
+        }
+        return records != null ? records : polled;
+    }
+
+    /**
+     * The failure with its index moved from the list it was reported against to the poll, as the error handler expects.
+     **/
+    private static BatchListenerFailedException inPoll(List<ConsumerRecord<String, OrderCreated>> polled,
+                                                       List<ConsumerRecord<String, OrderCreated>> records,
+                                                       BatchListenerFailedException e) {
+        if (records == polled) {
+            return e;
+        }
+        return new BatchListenerFailedException(e.getMessage(), e.getCause(), polled.indexOf(records.get(e.getIndex())));
+    }
+
+    private void recordProcessed(List<ConsumerRecord<String, OrderCreated>> records, int toIndex) {
+        for (int i = 0; i < toIndex; i++) {
+            dispatchMetrics.recordProcessed(records.get(i).timestamp());
+        }
+    }
+}
@@ -2,10 +2,13 @@ package dev.lydtech.dispatch.handler;
 
 import dev.lydtech.dispatch.client.exception.NotRetryableException;
 import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.logging.HotPathLog;
 import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
 import dev.lydtech.dispatch.service.DispatchService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
@@ -15,9 +18,12 @@ import org.springframework.stereotype.Component;
 @Slf4j
 @RequiredArgsConstructor
 @Component
+@ConditionalOnExpression("'${dispatch.engine:listener}' == 'listener' and '${dispatch.listener.mode:record}' == 'record'")
 public class OrderCreatedHandler {
 
     private final DispatchService dispatchService;
+    private final DispatchMetrics dispatchMetrics;
+    private final HotPathLog hotPathLog;
 
     @KafkaListener( // this means Spring Kafka is responsible for polling Kafka for messages, and it will pass these to the relevant handlers annotated with the @KafkaListener annotation
             id = "orderConsumerClient",
@@ -27,15 +33,17 @@ public class OrderCreatedHandler {
     )
     public void listen(@Header(KafkaHeaders.RECEIVED_PARTITION) Integer partition,
                        @Header(KafkaHeaders.RECEIVED_KEY) String key,
+                       @Header(KafkaHeaders.RECEIVED_TIMESTAMP) long timestamp,
                        @Payload OrderCreated payload) {
-        log.info("Payload received: parition: " + partition + " - key: " + key + " - payload: " + payload);
+        hotPathLog.received(partition, key, payload);
         try {
             dispatchService.process(key, payload);
+            dispatchMetrics.recordProcessed(timestamp);
         } catch (RetryableException e) {
-            log.warn("Retryable exception: " + e.getMessage());
+            log.warn("Retryable exception: {}", e.getMessage());
             throw e;
         } catch (Exception e) {
-            log.error("NotRetryable exception: " + e.getMessage());
+            log.error("NotRetryable exception: {}", e.getMessage());
             throw new NotRetryableException(e);
         }
     }
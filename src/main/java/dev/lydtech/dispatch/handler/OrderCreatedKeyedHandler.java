@@ -0,0 +1,36 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.lanes.KeyedLaneExecutor;
+import dev.lydtech.dispatch.message.OrderCreated;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@RequiredArgsConstructor
+@Component
+@ConditionalOnExpression("'${dispatch.engine:listener}' == 'listener' and '${dispatch.listener.mode:record}' == 'keyed'")
+public class OrderCreatedKeyedHandler {
+
+    private final KeyedLaneExecutor keyedLaneExecutor;
+    private final LaneRecordDispatcher laneRecordDispatcher;
+
+    /**
+     * Hands each record to the lane owning its key and returns straight away, so many keys of one partition are
+     * dispatched in parallel while each key keeps its order. Offsets are acknowledged out of order as lanes finish;
+     * the container (MANUAL ack mode with async acks) only commits up to the lowest offset that has no gap before it.
+     **/
+    @KafkaListener(
+            id = "orderConsumerClient",
+            topics = "order.created",
+            groupId = "dispatch.order.created.consumer",
+            containerFactory = "kafkaListenerContainerFactory"
+    )
+    public void listen(ConsumerRecord<String, OrderCreated> record, Acknowledgment acknowledgment) throws InterruptedException {
+        keyedLaneExecutor.submit(record.key(), laneRecordDispatcher.task(record, acknowledgment));
+    }
+}
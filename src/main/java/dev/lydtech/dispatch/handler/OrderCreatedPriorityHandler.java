@@ -0,0 +1,39 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.lanes.OrderPriorityClassifier;
+import dev.lydtech.dispatch.lanes.PriorityLaneScheduler;
+import dev.lydtech.dispatch.message.OrderCreated;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@RequiredArgsConstructor
+@Component
+@ConditionalOnExpression("'${dispatch.engine:listener}' == 'listener' and '${dispatch.listener.mode:record}' == 'priority'")
+public class OrderCreatedPriorityHandler {
+
+    private final OrderPriorityClassifier orderPriorityClassifier;
+    private final PriorityLaneScheduler priorityLaneScheduler;
+    private final LaneRecordDispatcher laneRecordDispatcher;
+
+    /**
+     * Queues each record on its priority lane and returns straight away, the workers take express orders ahead of
+     * bulk ones by lane weight. As in keyed mode offsets are acknowledged as records finish, in any order, and the
+     * container (MANUAL ack mode with async acks) only commits up to the lowest offset that has no gap before it.
+     **/
+    @KafkaListener(
+            id = "orderConsumerClient",
+            topics = "order.created",
+            groupId = "dispatch.order.created.consumer",
+            containerFactory = "kafkaListenerContainerFactory"
+    )
+    public void listen(ConsumerRecord<String, OrderCreated> record, Acknowledgment acknowledgment) throws InterruptedException {
+        int lane = orderPriorityClassifier.classify(record);
+        priorityLaneScheduler.submit(lane, record.timestamp(), laneRecordDispatcher.task(record, acknowledgment));
+    }
+}
@@ -0,0 +1,79 @@
+package dev.lydtech.dispatch.lanes;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on a fixed set of single-threaded lanes, picking the lane from the hash of the task key.
+ * Tasks with the same key always run on the same lane, in submission order, while different keys run in parallel.
+ * The number of submitted but unfinished tasks is bounded: submit blocks the caller (the consumer thread) once
+ * the limit is reached, which stops it polling more records than the lanes can absorb.
+ **/
+@Slf4j
+public class KeyedLaneExecutor implements AutoCloseable {
+
+    private final ExecutorService[] lanes;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    public KeyedLaneExecutor(int laneCount, int maxInFlight, ThreadFactory threadFactory) {
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+    }
+
+    public void submit(Object key, Runnable task) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            lanes[laneOf(key)].execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    public int laneOf(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        // spread the high bits, String hashes of UUIDs differ mostly there
+        return Math.floorMod(hash ^ (hash >>> 16), lanes.length);
+    }
+
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            try {
+                if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.warn("Lane did not drain in time, unacknowledged records will be redelivered");
+                    lane.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.shutdownNow();
+            }
+        }
+    }
+}
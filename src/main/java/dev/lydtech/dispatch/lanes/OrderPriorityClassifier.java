@@ -0,0 +1,78 @@
+package dev.lydtech.dispatch.lanes;
+
+import dev.lydtech.dispatch.message.OrderCreated;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the priority lane of an order.created record: the lane named by the header if the producer set one,
+ * otherwise the first lane with an item prefix matching OrderCreated.item (the item class), otherwise the default.
+ **/
+public class OrderPriorityClassifier {
+
+    private final List<String> laneNames;
+    private final String header;
+    private final int defaultLane;
+    // item prefix to lane index, in configuration order
+    private final Map<String, Integer> itemPrefixes = new LinkedHashMap<>();
+
+    /**
+     * itemClasses maps lanes to item prefixes as lane=prefix|prefix entries separated by commas,
+     * e.g. express=express-|exp-,bulk=bulk-.
+     **/
+    public OrderPriorityClassifier(List<String> laneNames, String defaultLane, String header, String itemClasses) {
+        this.laneNames = new ArrayList<>(laneNames);
+        this.header = header == null || header.isBlank() ? null : header;
+        this.defaultLane = indexOf(defaultLane);
+        for (String entry : itemClasses.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected lane=prefix|prefix for a priority item class, got " + entry);
+            }
+            int lane = indexOf(parts[0].trim());
+            for (String prefix : parts[1].split("\\|")) {
+                if (!prefix.isBlank()) {
+                    itemPrefixes.put(prefix.trim(), lane);
+                }
+            }
+        }
+    }
+
+    public int classify(ConsumerRecord<String, OrderCreated> record) {
+        if (header != null) {
+            Header priority = record.headers().lastHeader(header);
+            if (priority != null && priority.value() != null) {
+                int lane = laneNames.indexOf(new String(priority.value(), StandardCharsets.UTF_8).trim());
+                if (lane >= 0) {
+                    return lane;
+                }
+            }
+        }
+        OrderCreated orderCreated = record.value();
+        if (orderCreated != null && orderCreated.getItem() != null) {
+            for (Map.Entry<String, Integer> prefix : itemPrefixes.entrySet()) {
+                if (orderCreated.getItem().startsWith(prefix.getKey())) {
+                    return prefix.getValue();
+                }
+            }
+        }
+        return defaultLane;
+    }
+
+    private int indexOf(String lane) {
+        int index = laneNames.indexOf(lane);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown priority lane " + lane + ", lanes are " + laneNames);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,53 @@
+package dev.lydtech.dispatch.lanes;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stops the priority listener feeding a saturated PriorityLaneScheduler by pausing the assigned partitions of its
+ * container, and resumes them once the lanes have drained. Partitions rather than the container are paused, so
+ * this doesn't undo or get undone by the BackpressureController, and the records of the current poll are still
+ * handed to the scheduler: express records behind a bulk one are queued straight away.
+ **/
+@Slf4j
+public class PriorityLanePartitionPauser implements PriorityLaneScheduler.SaturationListener {
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final String listenerId;
+    private final List<TopicPartition> paused = new ArrayList<>();
+
+    public PriorityLanePartitionPauser(KafkaListenerEndpointRegistry registry, String listenerId) {
+        this.registry = registry;
+        this.listenerId = listenerId;
+    }
+
+    @Override
+    public void saturated(String lane) {
+        MessageListenerContainer container = registry.getListenerContainer(listenerId);
+        Collection<TopicPartition> assigned = container != null ? container.getAssignedPartitions() : null;
+        if (assigned == null) {
+            return;
+        }
+        for (TopicPartition partition : assigned) {
+            container.pausePartition(partition);
+            paused.add(partition);
+        }
+        log.info("Paused {} partitions of {}, priority lane {} is full", paused.size(), listenerId, lane);
+    }
+
+    @Override
+    public void drained() {
+        MessageListenerContainer container = registry.getListenerContainer(listenerId);
+        if (container != null) {
+            paused.forEach(container::resumePartition);
+            log.info("Resumed {} partitions of {}", paused.size(), listenerId);
+        }
+        paused.clear();
+    }
+}
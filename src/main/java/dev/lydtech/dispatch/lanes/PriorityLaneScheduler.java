@@ -0,0 +1,266 @@
+package dev.lydtech.dispatch.lanes;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queues (lanes) of tasks shared by a pool of worker threads, served weighted fair: while several lanes hold
+ * tasks each gets a share of the workers in proportion to its weight (stride scheduling, every task taken from a
+ * lane moves its pass on by 1/weight and the non-empty lane with the lowest pass goes next). A lane that was idle
+ * starts again from the current pass, so it can't save up credit and then starve the others. Within a lane tasks
+ * start in submission order, ties between lanes go to the one listed first.
+ *
+ * submit never blocks the caller (the consumer thread): a task is always queued, and a lane reaching its capacity
+ * tells the SaturationListener, which stops the feed (PriorityLanePartitionPauser pauses the partitions) until
+ * every lane has drained to half its capacity. Records of other lanes still in hand are queued straight away, so a
+ * saturated bulk lane doesn't hold up express records behind it. A lane can go past its capacity by what the
+ * consumer already polled. Nothing is ordered across lanes, and with several workers not even within one: records
+ * of a key may complete out of order.
+ **/
+@Slf4j
+public class PriorityLaneScheduler implements AutoCloseable {
+
+    public record LaneSpec(String name, int weight, int capacity) {
+    }
+
+    /**
+     * Called with the scheduler's lock held, in order, so implementations must not block: saturated when a lane
+     * reaches its capacity, drained once every lane is back to half its capacity or less.
+     **/
+    public interface SaturationListener {
+        void saturated(String lane);
+
+        void drained();
+    }
+
+    private static final SaturationListener NO_SATURATION_LISTENER = new SaturationListener() {
+        @Override
+        public void saturated(String lane) {
+        }
+
+        @Override
+        public void drained() {
+        }
+    };
+
+    private record Task(Runnable task, long submittedNanos, long timestampMs) {
+    }
+
+    private static final class Lane {
+        private final LaneSpec spec;
+        private final double stride;
+        private final ArrayDeque<Task> queue = new ArrayDeque<>();
+        private final Timer wait;
+        private final Timer latency;
+        private double pass;
+
+        private Lane(LaneSpec spec, MeterRegistry meterRegistry) {
+            this.spec = spec;
+            this.stride = 1.0 / spec.weight();
+            this.wait = Timer.builder("dispatch.priority.lane.wait")
+                    .tag("lane", spec.name())
+                    .description("Time records spent queued in their priority lane")
+                    .register(meterRegistry);
+            this.latency = Timer.builder("dispatch.priority.lane.latency")
+                    .tag("lane", spec.name())
+                    .description("Time from the order.created record timestamp to the end of its dispatch, per priority lane")
+                    .register(meterRegistry);
+        }
+    }
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final List<Thread> workers = new ArrayList<>();
+    private int queued;
+    private double virtualTime;
+    private boolean running = true;
+    private boolean saturated;
+    private SaturationListener saturationListener = NO_SATURATION_LISTENER;
+
+    public PriorityLaneScheduler(List<LaneSpec> laneSpecs, int workerCount, ThreadFactory threadFactory, MeterRegistry meterRegistry) {
+        if (laneSpecs.isEmpty() || workerCount < 1) {
+            throw new IllegalArgumentException("Need at least one lane and one worker");
+        }
+        for (LaneSpec spec : laneSpecs) {
+            if (spec.weight() < 1 || spec.capacity() < 1) {
+                throw new IllegalArgumentException("Lane " + spec.name() + " needs a positive weight and capacity");
+            }
+            Lane lane = new Lane(spec, meterRegistry);
+            lanes.add(lane);
+            Gauge.builder("dispatch.priority.lane.depth", lane, l -> depth(l))
+                    .tag("lane", spec.name())
+                    .description("Records queued in the priority lane")
+                    .register(meterRegistry);
+        }
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = threadFactory.newThread(this::work);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Parses lanes from name:weight[:capacity] entries separated by commas, e.g. express:8,standard:3,bulk:1:5000.
+     **/
+    public static List<LaneSpec> parse(String spec, int defaultCapacity) {
+        List<LaneSpec> laneSpecs = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":");
+            if (parts.length < 2 || parts.length > 3) {
+                throw new IllegalArgumentException("Expected name:weight[:capacity] for a priority lane, got " + entry);
+            }
+            int capacity = parts.length == 3 ? Integer.parseInt(parts[2].trim()) : defaultCapacity;
+            laneSpecs.add(new LaneSpec(parts[0].trim(), Integer.parseInt(parts[1].trim()), capacity));
+        }
+        return laneSpecs;
+    }
+
+    public List<String> laneNames() {
+        return lanes.stream().map(lane -> lane.spec.name()).toList();
+    }
+
+    public void setSaturationListener(SaturationListener saturationListener) {
+        lock.lock();
+        try {
+            this.saturationListener = saturationListener;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues the task on the lane without waiting, even past the lane's capacity. timestampMs is when the record
+     * was created.
+     **/
+    public void submit(int laneIndex, long timestampMs, Runnable task) throws InterruptedException {
+        Lane lane = lanes.get(laneIndex);
+        lock.lockInterruptibly();
+        try {
+            if (!running) {
+                throw new RejectedExecutionException("Priority lanes are shut down");
+            }
+            if (lane.queue.isEmpty()) {
+                // no credit for the time the lane was idle
+                lane.pass = Math.max(lane.pass, virtualTime);
+            }
+            lane.queue.add(new Task(task, System.nanoTime(), timestampMs));
+            queued++;
+            notEmpty.signal();
+            if (!saturated && lane.queue.size() >= lane.spec.capacity()) {
+                saturated = true;
+                saturationListener.saturated(lane.spec.name());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int depth(int laneIndex) {
+        return depth(lanes.get(laneIndex));
+    }
+
+    private int depth(Lane lane) {
+        lock.lock();
+        try {
+            return lane.queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Lane lane;
+            Task task;
+            lock.lock();
+            try {
+                while (queued == 0) {
+                    if (!running) {
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                lane = next();
+                virtualTime = lane.pass;
+                lane.pass += lane.stride;
+                task = lane.queue.poll();
+                queued--;
+                if (saturated && drained()) {
+                    saturated = false;
+                    saturationListener.drained();
+                }
+            } finally {
+                lock.unlock();
+            }
+            lane.wait.record(System.nanoTime() - task.submittedNanos(), TimeUnit.NANOSECONDS);
+            try {
+                task.task().run();
+            } catch (RuntimeException e) {
+                log.error("Priority lane {} task failed", lane.spec.name(), e);
+            } finally {
+                lane.latency.record(Math.max(0, System.currentTimeMillis() - task.timestampMs()), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private boolean drained() {
+        for (Lane lane : lanes) {
+            if (lane.queue.size() > lane.spec.capacity() / 2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Lane next() {
+        Lane next = null;
+        for (Lane lane : lanes) {
+            if (!lane.queue.isEmpty() && (next == null || lane.pass < next.pass)) {
+                next = lane;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Stops taking tasks and lets the workers drain what is queued, for up to 10 seconds.
+     **/
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (worker.isAlive()) {
+                log.warn("Priority lanes did not drain in time, unacknowledged records will be redelivered");
+                return;
+            }
+        }
+    }
+}
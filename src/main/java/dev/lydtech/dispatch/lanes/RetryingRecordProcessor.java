@@ -0,0 +1,90 @@
+package dev.lydtech.dispatch.lanes;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.RetryListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+
+/**
+ * Applies the same policy as the container's DefaultErrorHandler to records processed off the consumer thread:
+ * RetryableException is retried with the dispatch back off, anything else (or running out of retries) sends the
+ * record to the dead letter topic through the shared recoverer.
+ * Returns true once the record is either processed or recovered, so its offset can be acknowledged.
+ **/
+@Slf4j
+@Component
+public class RetryingRecordProcessor {
+
+    private final BackOff dispatchRetryBackOff;
+    private final ConsumerRecordRecoverer deadLetterPublishingRecoverer;
+    private final RetryListener retryListener;
+
+    public RetryingRecordProcessor(BackOff dispatchRetryBackOff, ConsumerRecordRecoverer deadLetterPublishingRecoverer) {
+        this(dispatchRetryBackOff, deadLetterPublishingRecoverer, (record, ex, deliveryAttempt) -> { });
+    }
+
+    @Autowired
+    public RetryingRecordProcessor(BackOff dispatchRetryBackOff, ConsumerRecordRecoverer deadLetterPublishingRecoverer, RetryListener retryListener) {
+        this.dispatchRetryBackOff = dispatchRetryBackOff;
+        this.deadLetterPublishingRecoverer = deadLetterPublishingRecoverer;
+        this.retryListener = retryListener;
+    }
+
+    @FunctionalInterface
+    public interface RecordTask<V> {
+        void process(ConsumerRecord<String, V> record) throws Exception;
+    }
+
+    public <V> boolean process(ConsumerRecord<String, V> record, RecordTask<V> task) {
+        BackOffExecution backOff = dispatchRetryBackOff.start();
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            try {
+                task.process(record);
+                return true;
+            } catch (RetryableException e) {
+                retryListener.failedDelivery(record, e, attempt);
+                long interval = backOff.nextBackOff();
+                if (interval == BackOffExecution.STOP) {
+                    return recover(record, e);
+                }
+                if (log.isWarnEnabled()) {
+                    log.warn("Retryable exception: {} - retrying offset {} in {}ms", e.getMessage(), record.offset(), interval);
+                }
+                try {
+                    Thread.sleep(interval);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            } catch (NotRetryableException e) {
+                retryListener.failedDelivery(record, e, attempt);
+                return recover(record, e);
+            } catch (Exception e) {
+                NotRetryableException notRetryable = new NotRetryableException(e);
+                retryListener.failedDelivery(record, notRetryable, attempt);
+                return recover(record, notRetryable);
+            }
+        }
+    }
+
+    private boolean recover(ConsumerRecord<?, ?> record, Exception exception) {
+        try {
+            deadLetterPublishingRecoverer.accept(record, exception);
+            retryListener.recovered(record, exception);
+            return true;
+        } catch (RuntimeException e) {
+            retryListener.recoveryFailed(record, exception, e);
+            // leaving the offset unacknowledged holds back the commit, so the record is redelivered after a restart or rebalance
+            log.error("Failed to dead letter {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package dev.lydtech.dispatch.logging;
+
+import dev.lydtech.dispatch.message.OrderCreated;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The per record log lines, on their own logger (dev.lydtech.dispatch.hotpath) so they can be turned down without
+ * touching the rest. Every method checks the level (and the rate limit) before building anything, so a disabled
+ * line costs no allocation: no concatenation, no varargs array, no OrderCreated.toString().
+ *
+ * dispatch.logging.hotPath selects:
+ * - full: every record, as before
+ * - sampled: at most dispatch.logging.maxPerSecond key=value lines per second, each carrying how many were suppressed
+ * - off: nothing
+ **/
+@Component
+public class HotPathLog {
+
+    public static final String LOGGER_NAME = "dev.lydtech.dispatch.hotpath";
+
+    public enum Mode {
+        FULL, SAMPLED, OFF
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private final Mode mode;
+    private final int maxPerSecond;
+    private final LongSupplier clock;
+    private final AtomicInteger permitsUsed = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+    private volatile long currentSecond;
+
+    public HotPathLog() {
+        this(Mode.FULL, 0);
+    }
+
+    @Autowired
+    public HotPathLog(@Value("${dispatch.logging.hotPath:full}") String mode,
+                      @Value("${dispatch.logging.maxPerSecond:100}") int maxPerSecond) {
+        this(Mode.valueOf(mode.toUpperCase()), maxPerSecond);
+    }
+
+    public HotPathLog(Mode mode, int maxPerSecond) {
+        this(mode, maxPerSecond, System::currentTimeMillis);
+    }
+
+    HotPathLog(Mode mode, int maxPerSecond, LongSupplier clock) {
+        this.mode = mode;
+        this.maxPerSecond = maxPerSecond;
+        this.clock = clock;
+    }
+
+    public void received(int partition, String key, OrderCreated payload) {
+        if (!permitted()) {
+            return;
+        }
+        if (mode == Mode.FULL) {
+            log.info("Payload received: partition: {} - key: {} - payload: {}", partition, key, payload);
+        } else {
+            log.info("event=order.received partition={} key={} orderId={} item={} suppressed={}",
+                    partition, key, payload == null ? null : payload.getOrderId(), payload == null ? null : payload.getItem(), suppressed.sumThenReset());
+        }
+    }
+
+    public void dispatched(String key, UUID orderId, UUID processedById) {
+        if (!permitted()) {
+            return;
+        }
+        if (mode == Mode.FULL) {
+            log.info("Sent messages: key: {} - orderId: {} - processedById: {}", key, orderId, processedById);
+        } else {
+            log.info("event=order.dispatched key={} orderId={} processedById={} suppressed={}", key, orderId, processedById, suppressed.sumThenReset());
+        }
+    }
+
+    public void unavailable(String key, String item) {
+        if (!permitted()) {
+            return;
+        }
+        if (mode == Mode.FULL) {
+            log.info("Item {} is unavailable.", item);
+        } else {
+            log.info("event=order.unavailable key={} item={} suppressed={}", key, item, suppressed.sumThenReset());
+        }
+    }
+
+    public void duplicate(String key, UUID orderId) {
+        if (!permitted()) {
+            return;
+        }
+        if (mode == Mode.FULL) {
+            log.info("Skipping already dispatched order: key: {} - orderId: {}", key, orderId);
+        } else {
+            log.info("event=order.duplicate key={} orderId={} suppressed={}", key, orderId, suppressed.sumThenReset());
+        }
+    }
+
+    private boolean permitted() {
+        if (mode == Mode.OFF || !log.isInfoEnabled()) {
+            return false;
+        }
+        if (mode == Mode.FULL) {
+            return true;
+        }
+        long second = clock.getAsLong() / 1000;
+        if (second != currentSecond) {
+            synchronized (this) {
+                if (second != currentSecond) {
+                    permitsUsed.set(0);
+                    currentSecond = second;
+                }
+            }
+        }
+        if (permitsUsed.incrementAndGet() <= maxPerSecond) {
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+}
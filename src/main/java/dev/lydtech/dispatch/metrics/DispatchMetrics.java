@@ -0,0 +1,91 @@
+package dev.lydtech.dispatch.metrics;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.springframework.kafka.listener.RetryListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch meters on top of the Kafka client, listener and template metrics:
+ * - dispatch.order.end.to.end: from the OrderCreated record timestamp until the order is processed
+ * - dispatch.delivery.failures (by exception), dispatch.dead.letters and dispatch.dead.letter.failures, fed as the
+ *   RetryListener of the container error handling and of RetryingRecordProcessor
+ **/
+@Component
+public class DispatchMetrics implements RetryListener {
+
+    private final Timer endToEnd;
+    private final Counter retryableFailures;
+    private final Counter notRetryableFailures;
+    private final Counter deadLetters;
+    private final Counter deadLetterFailures;
+
+    public DispatchMetrics(MeterRegistry registry) {
+        endToEnd = Timer.builder("dispatch.order.end.to.end")
+                .description("Time from the OrderCreated record timestamp until the order is processed")
+                .register(registry);
+        retryableFailures = failures(registry, "retryable");
+        notRetryableFailures = failures(registry, "not_retryable");
+        deadLetters = Counter.builder("dispatch.dead.letters")
+                .description("Records published to the dead letter topic")
+                .register(registry);
+        deadLetterFailures = Counter.builder("dispatch.dead.letter.failures")
+                .description("Records that could not be published to the dead letter topic")
+                .register(registry);
+    }
+
+    public void recordProcessed(long recordTimestamp) {
+        if (recordTimestamp < 0) {
+            // ConsumerRecord.NO_TIMESTAMP
+            return;
+        }
+        endToEnd.record(Math.max(0L, System.currentTimeMillis() - recordTimestamp), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void failedDelivery(ConsumerRecord<?, ?> record, Exception ex, int deliveryAttempt) {
+        failures(ex).increment();
+    }
+
+    @Override
+    public void failedDelivery(ConsumerRecords<?, ?> records, Exception ex, int deliveryAttempt) {
+        failures(ex).increment();
+    }
+
+    @Override
+    public void recovered(ConsumerRecord<?, ?> record, Exception ex) {
+        deadLetters.increment();
+    }
+
+    @Override
+    public void recoveryFailed(ConsumerRecord<?, ?> record, Exception original, Exception failure) {
+        deadLetterFailures.increment();
+    }
+
+    private Counter failures(Exception ex) {
+        // the container wraps listener exceptions, classify on the first dispatch exception in the chain
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RetryableException) {
+                return retryableFailures;
+            }
+            if (cause instanceof NotRetryableException) {
+                return notRetryableFailures;
+            }
+        }
+        return notRetryableFailures;
+    }
+
+    private static Counter failures(MeterRegistry registry, String exception) {
+        return Counter.builder("dispatch.delivery.failures")
+                .tag("exception", exception)
+                .description("Failed delivery attempts, retried or dead lettered")
+                .register(registry);
+    }
+}
@@ -0,0 +1,605 @@
+package dev.lydtech.dispatch.outbox;
+
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.codec.DispatchBinaryCodec;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local write-ahead log of outbound dispatch events, drained to Kafka by OutboxRelay. The listener acks an order
+ * once its events are in the log, so it never waits for the broker.
+ *
+ * The log is a directory of segment files named by the log offset (in bytes) of their first frame, a new one is
+ * started once the current one reaches segmentBytes. Every append() is one frame, [int length][int crc32c][payload],
+ * holding all its entries, so the events of an order are relayed all or none. Frames are written sequentially with
+ * FileChannel and, with fsync, forced before append() returns: the first appender to need a force forces everything
+ * written so far and the appenders that wrote meanwhile wait for it rather than forcing themselves (group commit).
+ *
+ * The relay's position is kept in the cursor file, segments entirely before it are deleted. On open the frames from
+ * the cursor on are checked and the log is truncated at the first torn or corrupt one (an append that never returned).
+ * The cursor file isn't forced, after a crash the relay may publish some events again: delivery is at least once.
+ * Appends fail with a RetryableException once maxBytes of events wait for the relay. A frame whose write fails part
+ * way is cut off the segment again before append() throws, so a retried append never follows torn bytes; if even
+ * that fails the log refuses further appends until it is reopened, and recovery drops the torn frame.
+ **/
+@Slf4j
+public class OutboxLog implements MeterBinder, AutoCloseable {
+
+    /**
+     * An outbound event, value being one of the dispatch messages.
+     **/
+    public record Entry(String topic, String key, Object value, long appendedAt) {
+    }
+
+    /**
+     * Entries read from the log, next being the log offset after them.
+     **/
+    public record Batch(List<Entry> entries, long next) {
+    }
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "outbox.cursor";
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    /**
+     * Opens the channel of a segment file, replaced in tests to inject failing writes.
+     **/
+    interface SegmentOpener {
+        FileChannel open(Path file) throws IOException;
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final boolean fsync;
+    private final SegmentOpener segmentOpener;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final FileChannel cursorChannel;
+    private final ByteBuffer cursorBuffer = ByteBuffer.allocate(8);
+
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private Segment active;
+    // set when a torn frame could not be cut off, appends are refused from then on
+    private IOException writeFailure;
+    // log offset after the last frame written, and after the last frame forced to disk
+    private volatile long end;
+    private volatile long durable;
+    private boolean syncing;
+    private volatile long cursor;
+    private final AtomicLong pending = new AtomicLong();
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder relayed = new LongAdder();
+
+    public OutboxLog(Path directory, long segmentBytes, long maxBytes, boolean fsync) {
+        this(directory, segmentBytes, maxBytes, fsync,
+                file -> FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    OutboxLog(Path directory, long segmentBytes, long maxBytes, boolean fsync, SegmentOpener segmentOpener) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.fsync = fsync;
+        this.segmentOpener = segmentOpener;
+        try {
+            Files.createDirectories(directory);
+            cursorChannel = FileChannel.open(directory.resolve(CURSOR_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open outbox " + directory, e);
+        }
+    }
+
+    /**
+     * Appends the entries as one frame, durably with fsync, and returns once they will be relayed.
+     **/
+    public void append(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        ByteBuffer frame = encode(entries);
+        long position;
+        synchronized (writeLock) {
+            if (writeFailure != null) {
+                throw new RetryableException("Outbox " + directory + " is closed for writes after a torn frame, reopen it to recover: " + writeFailure.getMessage());
+            }
+            if (end - cursor + frame.remaining() > maxBytes) {
+                throw new RetryableException("Outbox full, " + (end - cursor) + " bytes wait for the relay");
+            }
+            try {
+                if (active.size > 0 && active.size + frame.remaining() > segmentBytes) {
+                    roll();
+                }
+                active.write(frame);
+            } catch (IOException e) {
+                throw new RetryableException(e);
+            }
+            end += frame.limit();
+            position = end;
+            pending.addAndGet(entries.size());
+            appends.increment();
+            if (!fsync) {
+                durable = position;
+            }
+            writeLock.notifyAll();
+        }
+        if (fsync) {
+            sync(position);
+        }
+    }
+
+    /**
+     * Up to maxEntries entries from the log offset from on, whole frames only (at least one), from what is durable.
+     **/
+    public Batch read(long from, int maxEntries) throws IOException {
+        Scan scan = scan(from, maxEntries, durable);
+        if (scan.corrupt()) {
+            throw new IOException("Corrupt outbox frame at offset " + scan.batch().next());
+        }
+        return scan.batch();
+    }
+
+    /**
+     * Frames from the log offset from on until limit, stopping at the first torn or corrupt one.
+     **/
+    private Scan scan(long from, int maxEntries, long limit) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long position = from;
+        while (position < limit && entries.size() < maxEntries) {
+            Map.Entry<Long, Segment> floor = segments.floorEntry(position);
+            if (floor == null) {
+                throw new IllegalStateException("Outbox offset " + position + " is before the first segment");
+            }
+            Segment segment = floor.getValue();
+            long segmentEnd = Math.min(segment.base + segment.size, limit);
+            if (position >= segmentEnd) {
+                // the rest of the frames are in the next segment
+                Long next = segments.higherKey(segment.base);
+                if (next == null || next > limit) {
+                    break;
+                }
+                position = next;
+                continue;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_BYTES, segmentEnd - position));
+            segment.read(buffer, position - segment.base);
+            buffer.flip();
+            int consumed = 0;
+            while (buffer.remaining() >= FRAME_HEADER_BYTES && entries.size() < maxEntries) {
+                int length = buffer.getInt(buffer.position());
+                if (length <= 0 || position + consumed + FRAME_HEADER_BYTES + length > segmentEnd) {
+                    return new Scan(new Batch(entries, position + consumed), true);
+                }
+                if (buffer.remaining() < FRAME_HEADER_BYTES + length) {
+                    if (consumed == 0) {
+                        // a frame larger than the read buffer
+                        buffer = ByteBuffer.allocate(FRAME_HEADER_BYTES + length);
+                        segment.read(buffer, position - segment.base);
+                        buffer.flip();
+                        continue;
+                    }
+                    break;
+                }
+                buffer.getInt();
+                int checksum = buffer.getInt();
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                if (checksum(payload) != checksum) {
+                    return new Scan(new Batch(entries, position + consumed), true);
+                }
+                decode(payload, entries);
+                buffer.position(buffer.position() + length);
+                consumed += FRAME_HEADER_BYTES + length;
+            }
+            position += consumed;
+            if (buffer.remaining() > 0 && buffer.remaining() < FRAME_HEADER_BYTES && position + buffer.remaining() == segmentEnd) {
+                // a torn frame header at the end of the segment
+                return new Scan(new Batch(entries, position), true);
+            }
+        }
+        return new Scan(new Batch(entries, position), false);
+    }
+
+    private record Scan(Batch batch, boolean corrupt) {
+    }
+
+    /**
+     * Waits up to timeoutMs for frames after the log offset from to become readable.
+     **/
+    public void awaitAppend(long from, long timeoutMs) throws InterruptedException {
+        synchronized (writeLock) {
+            if (durable <= from) {
+                writeLock.wait(timeoutMs);
+            }
+        }
+    }
+
+    /**
+     * Records that the relay published everything before the log offset next, entries of them since the last call.
+     **/
+    public void relayed(long next, int entries) {
+        cursor = next;
+        pending.addAndGet(-entries);
+        relayed.add(entries);
+        try {
+            cursorBuffer.clear();
+            cursorBuffer.putLong(next).flip();
+            while (cursorBuffer.hasRemaining()) {
+                cursorChannel.write(cursorBuffer, cursorBuffer.position());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to persist the outbox cursor, events after {} may be relayed again", next, e);
+        }
+        deleteRelayedSegments();
+    }
+
+    public long cursor() {
+        return cursor;
+    }
+
+    public long pending() {
+        return pending.get();
+    }
+
+    /**
+     * Bytes held in the segment files.
+     **/
+    public long size() {
+        Map.Entry<Long, Segment> first = segments.firstEntry();
+        return first == null ? 0 : end - first.getKey();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("dispatch.outbox.size", this, OutboxLog::size)
+                .description("Bytes held in the outbox segment files")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("dispatch.outbox.pending", this, OutboxLog::pending)
+                .description("Outbound events in the outbox not yet published by the relay")
+                .register(registry);
+        FunctionCounter.builder("dispatch.outbox.appends", appends, LongAdder::sum)
+                .description("Frames appended to the outbox, one per dispatched order or batch")
+                .register(registry);
+        FunctionCounter.builder("dispatch.outbox.syncs", syncs, LongAdder::sum)
+                .description("Forces of the outbox to disk, each covering every append written before it")
+                .register(registry);
+        FunctionCounter.builder("dispatch.outbox.relayed", relayed, LongAdder::sum)
+                .description("Outbound events published from the outbox")
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            segments.values().forEach(Segment::close);
+            try {
+                cursorChannel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close the outbox cursor", e);
+            }
+        }
+    }
+
+    private void sync(long position) {
+        while (true) {
+            synchronized (syncLock) {
+                while (syncing && durable < position) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RetryableException(e);
+                    }
+                }
+                if (durable >= position) {
+                    return;
+                }
+                syncing = true;
+            }
+            long target;
+            Segment segment;
+            synchronized (writeLock) {
+                target = end;
+                segment = active;
+            }
+            boolean forced = false;
+            try {
+                // roll() forced the segments before this one
+                segment.force();
+                forced = true;
+                syncs.increment();
+            } catch (IOException e) {
+                throw new RetryableException(e);
+            } finally {
+                synchronized (syncLock) {
+                    syncing = false;
+                    if (forced && target > durable) {
+                        durable = target;
+                    }
+                    syncLock.notifyAll();
+                }
+                if (forced) {
+                    synchronized (writeLock) {
+                        writeLock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        active.force();
+        active = new Segment(end);
+        segments.put(active.base, active);
+    }
+
+    private void deleteRelayedSegments() {
+        while (true) {
+            Map.Entry<Long, Segment> first = segments.firstEntry();
+            Long next = first == null ? null : segments.higherKey(first.getKey());
+            if (next == null || next > cursor) {
+                return;
+            }
+            segments.remove(first.getKey());
+            first.getValue().delete();
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Long> bases;
+        try (Stream<Path> files = Files.list(directory)) {
+            bases = files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        for (Long base : bases) {
+            Segment segment = new Segment(base);
+            segments.put(base, segment);
+        }
+        if (segments.isEmpty()) {
+            active = new Segment(0);
+            segments.put(0L, active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        ByteBuffer saved = ByteBuffer.allocate(8);
+        cursorChannel.read(saved, 0);
+        cursor = saved.position() == 8 ? saved.flip().getLong() : segments.firstKey();
+        if (cursor < segments.firstKey()) {
+            // the segments before it were deleted, the cursor write didn't make it
+            cursor = segments.firstKey();
+        }
+        end = active.base + active.size;
+        durable = end;
+        cursor = Math.min(cursor, end);
+        deleteRelayedSegments();
+
+        // check every frame not relayed yet, the log ends at the first one that doesn't hold
+        long position = cursor;
+        long entries = 0;
+        while (position < end) {
+            Scan scan;
+            try {
+                scan = scan(position, 10_000, end);
+            } catch (RuntimeException e) {
+                // a frame with a valid checksum that doesn't decode
+                scan = new Scan(new Batch(List.of(), position), true);
+            }
+            entries += scan.batch().entries().size();
+            if (scan.corrupt() || scan.batch().next() == position) {
+                truncate(scan.batch().next());
+                break;
+            }
+            position = scan.batch().next();
+        }
+        pending.set(entries);
+        if (entries > 0) {
+            log.info("Outbox {} holds {} events ({} bytes) still to be relayed", directory, entries, end - cursor);
+        }
+    }
+
+    private void truncate(long position) throws IOException {
+        log.warn("Outbox {} truncated at offset {}, dropping {} bytes of torn or corrupt frames", directory, position, end - position);
+        Segment segment = segments.floorEntry(position).getValue();
+        for (Segment later : new ArrayList<>(segments.tailMap(position, false).values())) {
+            if (later != segment) {
+                segments.remove(later.base);
+                later.delete();
+            }
+        }
+        segment.truncate(position - segment.base);
+        active = segment;
+        end = position;
+        durable = position;
+    }
+
+    private static ByteBuffer encode(List<Entry> entries) {
+        List<byte[]> values = new ArrayList<>(entries.size());
+        int size = FRAME_HEADER_BYTES + 4;
+        for (Entry entry : entries) {
+            byte[] value = DispatchBinaryCodec.encode(entry.value());
+            values.add(value);
+            size += 8 + 4 + utf8(entry.topic()).length + 4 + (entry.key() == null ? 0 : utf8(entry.key()).length) + 4 + value.length;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        frame.position(FRAME_HEADER_BYTES);
+        frame.putInt(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            frame.putLong(entry.appendedAt());
+            putBytes(frame, utf8(entry.topic()));
+            putBytes(frame, entry.key() == null ? null : utf8(entry.key()));
+            putBytes(frame, values.get(i));
+        }
+        frame.flip();
+        ByteBuffer payload = frame.slice(FRAME_HEADER_BYTES, frame.limit() - FRAME_HEADER_BYTES);
+        frame.putInt(0, payload.remaining()).putInt(4, checksum(payload));
+        return frame;
+    }
+
+    private static void decode(ByteBuffer payload, List<Entry> entries) {
+        for (int i = payload.getInt(); i > 0; i--) {
+            long appendedAt = payload.getLong();
+            String topic = string(payload);
+            String key = string(payload);
+            byte[] value = bytes(payload);
+            entries.add(new Entry(topic, key, DispatchBinaryCodec.decode(value), appendedAt));
+        }
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] bytes = bytes(buffer);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One segment file. The channel is reopened if an interrupt closed it.
+     **/
+    private final class Segment {
+
+        private final long base;
+        private final Path file;
+        private FileChannel channel;
+        private volatile long size;
+        private boolean deleted;
+
+        private Segment(long base) throws IOException {
+            this.base = base;
+            this.file = directory.resolve(String.format("%020d", base) + SEGMENT_SUFFIX);
+            this.channel = open();
+            this.size = channel.size();
+        }
+
+        /**
+         * Writes the whole frame after the last one, size only moves once all of it is written. On failure the
+         * bytes already written are cut off again, or the log is closed for writes if that fails as well.
+         **/
+        private void write(ByteBuffer frame) throws IOException {
+            long position = size;
+            try {
+                while (frame.hasRemaining()) {
+                    position += channel().write(frame, position);
+                }
+            } catch (IOException e) {
+                if (position > size) {
+                    try {
+                        channel().truncate(size);
+                    } catch (IOException truncateFailure) {
+                        e.addSuppressed(truncateFailure);
+                        writeFailure = e;
+                        log.error("Outbox {} failed to cut off a torn frame at offset {}, refusing appends until it is reopened", directory, base + size, e);
+                    }
+                }
+                throw e;
+            }
+            size = position;
+        }
+
+        private void read(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel().read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Outbox segment " + file + " ends before offset " + (position + buffer.position()));
+                }
+            }
+        }
+
+        private void force() throws IOException {
+            channel().force(false);
+        }
+
+        private void truncate(long length) throws IOException {
+            channel().truncate(length);
+            size = length;
+        }
+
+        private synchronized FileChannel channel() throws IOException {
+            if (deleted) {
+                throw new ClosedChannelException();
+            }
+            if (!channel.isOpen()) {
+                channel = open();
+            }
+            return channel;
+        }
+
+        private FileChannel open() throws IOException {
+            return segmentOpener.open(file);
+        }
+
+        private synchronized void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close outbox segment {}", file, e);
+            }
+        }
+
+        private void delete() {
+            synchronized (this) {
+                deleted = true;
+            }
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete relayed outbox segment {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package dev.lydtech.dispatch.outbox;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static dev.lydtech.dispatch.service.DispatchEvents.DISPATCH_TRACKING_TOPIC;
+
+/**
+ * Drains the OutboxLog to Kafka on its own thread: reads up to batchSize events, sends them all and waits for their
+ * acks once, then moves the cursor past them. Events are sent in log order from a single thread, so the idempotent
+ * producer keeps each key's events in order. A failed batch is sent again from its first event after
+ * retryBackoffMs, the log keeps filling meanwhile, so a broker outage holds back the relay and not the listeners.
+ **/
+@Slf4j
+public class OutboxRelay implements AutoCloseable {
+
+    private final OutboxLog outbox;
+    private final KafkaTemplate<String, Object> kafkaProducer;
+    private final KafkaTemplate<String, Object> trackingProducer;
+    private final int batchSize;
+    private final long sendTimeoutMs;
+    private final long retryBackoffMs;
+    private final Thread thread;
+    private volatile boolean running = true;
+    // append time of the oldest event being relayed, 0 once the log is drained
+    private volatile long oldestAppendedAt;
+
+    public OutboxRelay(OutboxLog outbox, KafkaTemplate<String, Object> kafkaProducer, KafkaTemplate<String, Object> trackingProducer,
+                       MeterRegistry meterRegistry, int batchSize, long sendTimeoutMs, long retryBackoffMs) {
+        this.outbox = outbox;
+        this.kafkaProducer = kafkaProducer;
+        this.trackingProducer = trackingProducer;
+        this.batchSize = batchSize;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.retryBackoffMs = retryBackoffMs;
+        Gauge.builder("dispatch.outbox.relay.lag", this, OutboxRelay::lagSeconds)
+                .description("Age of the oldest outbox event not yet published")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dispatch-outbox-relay-");
+        threadFactory.setDaemon(true);
+        this.thread = threadFactory.newThread(this::run);
+        thread.start();
+    }
+
+    public double lagSeconds() {
+        long appendedAt = oldestAppendedAt;
+        return appendedAt == 0 ? 0 : Math.max(0, System.currentTimeMillis() - appendedAt) / 1000.0;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (!relayBatch()) {
+                    outbox.awaitAppend(outbox.cursor(), 200);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("Outbox relay failed at offset {}, {} events pending, retrying in {}ms", outbox.cursor(), outbox.pending(),
+                        retryBackoffMs, e);
+                pause();
+            }
+        }
+    }
+
+    /**
+     * Publishes the next batch, false if there was nothing to publish.
+     **/
+    boolean relayBatch() throws Exception {
+        OutboxLog.Batch batch = outbox.read(outbox.cursor(), batchSize);
+        if (batch.entries().isEmpty()) {
+            oldestAppendedAt = 0;
+            return false;
+        }
+        oldestAppendedAt = batch.entries().get(0).appendedAt();
+        List<CompletableFuture<?>> sends = new ArrayList<>(batch.entries().size());
+        for (OutboxLog.Entry entry : batch.entries()) {
+            KafkaTemplate<String, Object> producer = DISPATCH_TRACKING_TOPIC.equals(entry.topic()) ? trackingProducer : kafkaProducer;
+            sends.add(producer.send(entry.topic(), entry.key(), entry.value()));
+        }
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        outbox.relayed(batch.next(), batch.entries().size());
+        return true;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(retryBackoffMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * Stops after the batch in progress, whatever is left is relayed after the restart.
+     **/
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(sendTimeoutMs + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package dev.lydtech.dispatch.prefilter;
+
+import dev.lydtech.dispatch.client.StockSnapshot;
+import dev.lydtech.dispatch.codec.OrderCreatedScanner;
+import dev.lydtech.dispatch.dedup.ProcessedOrderStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides from a scanned OrderCreated payload whether DispatchService would do nothing with it, so it need not be
+ * deserialized: the order id is already in the ProcessedOrderStore, or the stock snapshot holds the item as
+ * unavailable. Checked in that order, as DispatchService does. Either lookup is skipped when its bean is absent.
+ * Shared by the PreFilteringDeserializer of every consumer.
+ **/
+public class OrderCreatedPreFilter implements MeterBinder {
+
+    private final ProcessedOrderStore processedOrderStore;
+    private final StockSnapshot stockSnapshot;
+
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder unavailable = new LongAdder();
+
+    public OrderCreatedPreFilter(@Nullable ProcessedOrderStore processedOrderStore, @Nullable StockSnapshot stockSnapshot) {
+        this.processedOrderStore = processedOrderStore;
+        this.stockSnapshot = stockSnapshot;
+    }
+
+    /**
+     * The reason to drop the scanned payload, null to deserialize it as usual.
+     **/
+    public PreFiltered check(OrderCreatedScanner scanner) {
+        if (processedOrderStore != null && scanner.hasOrderId()
+                && processedOrderStore.contains(scanner.orderIdMsb(), scanner.orderIdLsb())) {
+            processedOrderStore.duplicateSkipped();
+            duplicates.increment();
+            return PreFiltered.DUPLICATE;
+        }
+        if (stockSnapshot != null && scanner.hasItem() && stockSnapshot.knownUnavailable(scanner.item())) {
+            unavailable.increment();
+            return PreFiltered.UNAVAILABLE;
+        }
+        passed.increment();
+        return null;
+    }
+
+    /**
+     * Counts a payload that was not scanned or could not be, it goes on to the deserializer.
+     **/
+    public void passed() {
+        passed.increment();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindCounter(registry, "passed", passed);
+        bindCounter(registry, "duplicate", duplicates);
+        bindCounter(registry, "unavailable", unavailable);
+    }
+
+    private static void bindCounter(MeterRegistry registry, String result, LongAdder counter) {
+        FunctionCounter.builder("dispatch.prefilter.records", counter, LongAdder::sum)
+                .tag("result", result)
+                .description("order.created records by pre-filter result, only passed records are deserialized")
+                .register(registry);
+    }
+}
@@ -0,0 +1,18 @@
+package dev.lydtech.dispatch.prefilter;
+
+/**
+ * Stands in for the value of an order.created record the pre-filter rejected, the container's record filter then
+ * discards the record before it reaches the listener. One shared constant per reason, nothing is allocated.
+ **/
+public enum PreFiltered {
+
+    /**
+     * The order id is in the ProcessedOrderStore.
+     **/
+    DUPLICATE,
+
+    /**
+     * The stock snapshot holds the item as unavailable.
+     **/
+    UNAVAILABLE
+}
@@ -0,0 +1,84 @@
+package dev.lydtech.dispatch.prefilter;
+
+import dev.lydtech.dispatch.codec.OrderCreatedScanner;
+import dev.lydtech.dispatch.message.OrderCreated;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Runs OrderCreatedPreFilter on the raw value before the delegate binds it. A rejected record deserializes to its
+ * PreFiltered reason instead of an OrderCreated, everything else, including anything the scan can't read, goes to
+ * the delegate unchanged; poison payloads still fail there and are dead lettered through ErrorHandlingDeserializer.
+ * Only order.created and its non-blocking retry topics are scanned, any other topic the consumers read (the dead
+ * letter topic in particular) goes straight to the delegate. A JSON type header naming another class than
+ * OrderCreated also skips the scan.
+ *
+ * Holds a scanner, so one instance per consumer (the consumer factory creates one for each).
+ **/
+public class PreFilteringDeserializer implements Deserializer<Object> {
+
+    private static final String ORDER_CREATED_TOPIC = "order.created";
+    private static final String ORDER_CREATED_RETRY_TOPIC_PREFIX = ORDER_CREATED_TOPIC + ".retry";
+    private static final byte[] ORDER_CREATED_TYPE = OrderCreated.class.getName().getBytes(StandardCharsets.UTF_8);
+
+    private final Deserializer<Object> delegate;
+    private final OrderCreatedPreFilter preFilter;
+    private final OrderCreatedScanner scanner = new OrderCreatedScanner();
+
+    public PreFilteringDeserializer(Deserializer<Object> delegate, OrderCreatedPreFilter preFilter) {
+        this.delegate = delegate;
+        this.preFilter = preFilter;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        delegate.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        if (!orderCreatedTopic(topic)) {
+            return delegate.deserialize(topic, data);
+        }
+        PreFiltered rejected = preFilter(data);
+        return rejected != null ? rejected : delegate.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (!orderCreatedTopic(topic)) {
+            return delegate.deserialize(topic, headers, data);
+        }
+        PreFiltered rejected = orderCreatedType(headers) ? preFilter(data) : passed();
+        return rejected != null ? rejected : delegate.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private PreFiltered preFilter(byte[] data) {
+        return scanner.scan(data) ? preFilter.check(scanner) : passed();
+    }
+
+    private PreFiltered passed() {
+        preFilter.passed();
+        return null;
+    }
+
+    private static boolean orderCreatedTopic(String topic) {
+        return ORDER_CREATED_TOPIC.equals(topic) || (topic != null && topic.startsWith(ORDER_CREATED_RETRY_TOPIC_PREFIX));
+    }
+
+    private static boolean orderCreatedType(Headers headers) {
+        Header type = headers == null ? null : headers.lastHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+        return type == null || Arrays.equals(type.value(), ORDER_CREATED_TYPE);
+    }
+}
@@ -0,0 +1,62 @@
+package dev.lydtech.dispatch.producer;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Producer tuning applied as a unit, selected by name with dispatch.producer.profile (and
+ * dispatch.producer.tracking.profile for the dispatch.tracking template):
+ * - low-latency: no linger, small batches, no compression, every send goes out as soon as the sender is free
+ * - high-throughput: 20ms linger, 256KB batches, lz4 and a larger buffer, fewer and fuller requests per broker
+ * - exactly-once: a short linger and lz4, for use with dispatch.producer.transactional=true
+ *
+ * All three keep acks=all with idempotence, so retries can neither lose nor reorder or duplicate events of a key.
+ * The compression codec of any profile can be replaced, lz4 is the cheaper one on the CPU and zstd the smaller.
+ **/
+public enum ProducerProfile {
+
+    LOW_LATENCY(0, 16 * 1024, "none", 32L * 1024 * 1024),
+    HIGH_THROUGHPUT(20, 256 * 1024, "lz4", 128L * 1024 * 1024),
+    EXACTLY_ONCE(5, 64 * 1024, "lz4", 64L * 1024 * 1024);
+
+    private final int lingerMs;
+    private final int batchSize;
+    private final String compressionType;
+    private final long bufferMemory;
+
+    ProducerProfile(int lingerMs, int batchSize, String compressionType, long bufferMemory) {
+        this.lingerMs = lingerMs;
+        this.batchSize = batchSize;
+        this.compressionType = compressionType;
+        this.bufferMemory = bufferMemory;
+    }
+
+    /**
+     * Accepts the property form, e.g. high-throughput.
+     **/
+    public static ProducerProfile of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown producer profile '" + name + "', expected low-latency, high-throughput or exactly-once", e);
+        }
+    }
+
+    /**
+     * The producer properties of this profile, compressionType replaces the profile's codec unless empty.
+     **/
+    public Map<String, Object> config(String compressionType) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType == null || compressionType.isEmpty() ? this.compressionType : compressionType);
+        config.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        // the most idempotence allows while still guaranteeing order
+        config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        return config;
+    }
+}
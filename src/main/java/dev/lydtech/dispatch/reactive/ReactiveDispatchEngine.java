@@ -0,0 +1,231 @@
+package dev.lydtech.dispatch.reactive;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.message.OrderCreated;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.receiver.ReceiverRecord;
+import reactor.kafka.sender.KafkaSender;
+import reactor.kafka.sender.SenderOptions;
+import reactor.kafka.sender.SenderRecord;
+import reactor.util.retry.Retry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.lydtech.dispatch.service.DispatchEvents.*;
+
+/**
+ * Alternative to the @KafkaListener engine (dispatch.engine=reactive). Consumes order.created with reactor-kafka,
+ * checks stock through the non-blocking ReactiveStockServiceClient and publishes with a KafkaSender, so thousands
+ * of orders can be in flight without a thread each.
+ * Records are grouped into lanesPerPartition lanes per partition by key; a lane handles one record at a time, which
+ * keeps per-key order and bounds the concurrency per partition. Acknowledgements arrive out of order and the
+ * receiver only commits up to the first unacknowledged offset, pausing the consumer once maxInFlight offsets are
+ * waiting. Retries and dead lettering follow the listener engine: RetryableException is retried with the delays of
+ * the shared dispatchRetryBackOff (guard aware when the StockServiceGuard is enabled), anything else or exhausted
+ * retries goes to order.created.DLT with the usual DLT headers. A record that failed deserialization is dead
+ * lettered with its original bytes, taken from the ErrorHandlingDeserializer header.
+ * The senders are created on start and closed on stop, so the engine can be stopped and started again.
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dispatch.engine", havingValue = "reactive")
+public class ReactiveDispatchEngine implements SmartLifecycle {
+
+    private static final String ORDER_CREATED_TOPIC = "order.created";
+    private static final String ORDER_CREATED_DLT_TOPIC = "order.created.DLT";
+    private static final String GROUP_ID = "dispatch.order.created.consumer";
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(ReactiveDispatchEngine.class);
+
+    private final ReactiveStockServiceClient stockServiceClient;
+    private final BackOff retryBackOff;
+    private final ReceiverOptions<String, OrderCreated> receiverOptions;
+    private final Map<String, Object> producerConfig;
+    private final int lanesPerPartition;
+    private final AtomicInteger assignedPartitions = new AtomicInteger();
+    private volatile KafkaSender<String, Object> kafkaSender;
+    private volatile KafkaSender<String, byte[]> rawSender;
+    private volatile Disposable subscription;
+
+    public ReactiveDispatchEngine(ReactiveStockServiceClient stockServiceClient,
+                                  ConsumerFactory<String, Object> consumerFactory,
+                                  ProducerFactory<String, Object> producerFactory,
+                                  BackOff dispatchRetryBackOff,
+                                  @Value("${dispatch.reactive.lanesPerPartition:16}") int lanesPerPartition,
+                                  @Value("${dispatch.reactive.maxInFlight:1000}") int maxInFlight) {
+        this.stockServiceClient = stockServiceClient;
+        this.retryBackOff = dispatchRetryBackOff;
+        this.lanesPerPartition = lanesPerPartition;
+        Map<String, Object> consumerConfig = new HashMap<>(consumerFactory.getConfigurationProperties());
+        consumerConfig.put(ConsumerConfig.GROUP_ID_CONFIG, GROUP_ID);
+        this.receiverOptions = ReceiverOptions.<String, OrderCreated>create(consumerConfig)
+                .subscription(List.of(ORDER_CREATED_TOPIC))
+                .maxDeferredCommits(maxInFlight)
+                .commitInterval(Duration.ofMillis(500))
+                .addAssignListener(partitions -> assignedPartitions.addAndGet(partitions.size()))
+                .addRevokeListener(partitions -> assignedPartitions.addAndGet(-partitions.size()));
+        this.producerConfig = producerFactory.getConfigurationProperties();
+    }
+
+    @Override
+    public void start() {
+        kafkaSender = KafkaSender.create(SenderOptions.<String, Object>create(producerConfig));
+        rawSender = KafkaSender.create(SenderOptions.<String, byte[]>create(producerConfig).withValueSerializer(new ByteArraySerializer()));
+        subscription = KafkaReceiver.create(receiverOptions).receive()
+                .groupBy(this::laneOf)
+                .flatMap(lane -> lane.concatMap(this::dispatch), Integer.MAX_VALUE)
+                .doOnError(e -> log.error("Reactive dispatch pipeline failed, resubscribing", e))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+        subscription = null;
+        closeSenders();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return subscription != null && !subscription.isDisposed();
+    }
+
+    public int assignedPartitions() {
+        return assignedPartitions.get();
+    }
+
+    private void closeSenders() {
+        KafkaSender<String, Object> sender = kafkaSender;
+        if (sender != null) {
+            sender.close();
+        }
+        KafkaSender<String, byte[]> raw = rawSender;
+        if (raw != null) {
+            raw.close();
+        }
+        kafkaSender = null;
+        rawSender = null;
+    }
+
+    private int laneOf(ReceiverRecord<String, OrderCreated> record) {
+        int keyHash = record.key() == null ? 0 : record.key().hashCode();
+        return record.partition() * lanesPerPartition + Math.floorMod(keyHash, lanesPerPartition);
+    }
+
+    /**
+     * Completes once the record is dispatched or dead lettered, acknowledging it. If even the dead letter publish
+     * fails the record stays unacknowledged, which holds back the commit until the partition is reassigned.
+     **/
+    private Mono<Void> dispatch(ReceiverRecord<String, OrderCreated> record) {
+        return process(record)
+                .retryWhen(retry())
+                .onErrorResume(e -> deadLetter(record, classify(e)))
+                .doOnSuccess(done -> record.receiverOffset().acknowledge())
+                .onErrorResume(e -> {
+                    log.error("Failed to dead letter {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Retries RetryableException after each delay of a fresh execution of the back off, one per record, and gives
+     * up with the last failure once it says STOP.
+     **/
+    private Retry retry() {
+        BackOffExecution backOff = retryBackOff.start();
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            Throwable failure = signal.failure();
+            long delayMs = failure instanceof RetryableException ? backOff.nextBackOff() : BackOffExecution.STOP;
+            return delayMs == BackOffExecution.STOP ? Mono.<Long>error(failure) : Mono.delay(Duration.ofMillis(delayMs));
+        }));
+    }
+
+    private Mono<Void> process(ReceiverRecord<String, OrderCreated> record) {
+        OrderCreated orderCreated = record.value();
+        if (orderCreated == null) {
+            DeserializationException poison = deserializationException(record);
+            return Mono.error(new NotRetryableException(poison != null ? poison
+                    : new IllegalArgumentException("No payload at offset " + record.offset())));
+        }
+        return stockServiceClient.checkAvailability(orderCreated.getItem())
+                .flatMap(available -> available ? publish(record.key(), orderCreated) : Mono.<Void>fromRunnable(() ->
+                        log.info("Item {} is unavailable.", orderCreated.getItem())));
+    }
+
+    private Mono<Void> publish(String key, OrderCreated orderCreated) {
+        Flux<SenderRecord<String, Object, String>> events = Flux.just(
+                event(DISPATCH_TRACKING_TOPIC, key, dispatchPreparing(orderCreated)),
+                event(DISPATCH_TRACKING_TOPIC, key, dispatchCompleted(orderCreated)),
+                event(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated)));
+        return kafkaSender.send(events)
+                .then()
+                .doOnSuccess(done -> log.info("Sent messages: key: {} - orderId: {} - processedById: {}", key, orderCreated.getOrderId(), APPLICATION_ID));
+    }
+
+    private static SenderRecord<String, Object, String> event(String topic, String key, Object event) {
+        return SenderRecord.create(new ProducerRecord<>(topic, key, event), key);
+    }
+
+    private Mono<Void> deadLetter(ReceiverRecord<String, OrderCreated> record, RuntimeException exception) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic().getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(record.partition()).array());
+        headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(record.offset()).array());
+        headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, exception.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, String.valueOf(exception.getMessage()).getBytes(StandardCharsets.UTF_8));
+        DeserializationException poison = record.value() == null ? deserializationException(record) : null;
+        Mono<Void> sent = poison != null
+                ? rawSender.send(Mono.just(SenderRecord.<String, byte[], String>create(
+                        new ProducerRecord<>(ORDER_CREATED_DLT_TOPIC, record.partition(), record.key(), poison.getData(), headers), record.key()))).then()
+                : kafkaSender.send(Mono.just(SenderRecord.<String, Object, String>create(
+                        new ProducerRecord<>(ORDER_CREATED_DLT_TOPIC, record.partition(), record.key(), record.value(), headers), record.key()))).then();
+        return sent
+                .doOnSuccess(done -> log.warn("Dead lettered {}-{}@{}: {}", record.topic(), record.partition(), record.offset(), exception.getMessage()));
+    }
+
+    /**
+     * The exception ErrorHandlingDeserializer left in the headers of a record it couldn't deserialize, holding the
+     * original bytes, or null if there is none.
+     **/
+    private static DeserializationException deserializationException(ReceiverRecord<String, OrderCreated> record) {
+        return SerializationUtils.getExceptionFromHeader(record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+    }
+
+    private static RuntimeException classify(Throwable e) {
+        if (e instanceof RetryableException || e instanceof NotRetryableException) {
+            return (RuntimeException) e;
+        }
+        return new NotRetryableException(e instanceof Exception exception ? exception : new RuntimeException(e));
+    }
+}
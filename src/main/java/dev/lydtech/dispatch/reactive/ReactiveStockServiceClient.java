@@ -0,0 +1,59 @@
+package dev.lydtech.dispatch.reactive;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non-blocking counterpart of StockServiceClient for the reactive engine, with the same error classification:
+ * server errors, connection failures and timeouts are RetryableException, everything else NotRetryableException.
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dispatch.engine", havingValue = "reactive")
+public class ReactiveStockServiceClient {
+
+    private final WebClient webClient;
+    private final Duration readTimeout;
+
+    public ReactiveStockServiceClient(WebClient.Builder webClientBuilder,
+                                      @Value("${dispatch.stockServiceEndpoint}") String stockServiceEndpoint,
+                                      @Value("${dispatch.http.readTimeoutMs:2000}") long readTimeoutMs) {
+        this.webClient = webClientBuilder.baseUrl(stockServiceEndpoint).build();
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+    }
+
+    public Mono<Boolean> checkAvailability(String item) {
+        return webClient.get()
+                .uri(uriBuilder -> uriBuilder.queryParam("item", item).build())
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(readTimeout)
+                .map(Boolean::parseBoolean)
+                .onErrorMap(this::classify);
+    }
+
+    private Throwable classify(Throwable e) {
+        if (e instanceof RetryableException || e instanceof NotRetryableException) {
+            return e;
+        }
+        if ((e instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError())
+                || e instanceof WebClientRequestException
+                || e instanceof TimeoutException) {
+            log.warn("Failure calling external service", e);
+            return new RetryableException((Exception) e);
+        }
+        log.error("Exception thrown: {}", e.getClass().getName(), e);
+        return new NotRetryableException(e instanceof Exception exception ? exception : new RuntimeException(e));
+    }
+}
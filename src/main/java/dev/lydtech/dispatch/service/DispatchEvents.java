@@ -0,0 +1,45 @@
+package dev.lydtech.dispatch.service;
+
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static java.util.UUID.randomUUID;
+
+/**
+ * Outbound topics and the events published for a dispatched order, shared by every dispatch engine.
+ **/
+public final class DispatchEvents {
+
+    public static final String DISPATCH_TRACKING_TOPIC = "dispatch.tracking";
+    public static final String ORDER_DISPATCHED_TOPIC = "order.dispatched";
+    public static final UUID APPLICATION_ID = randomUUID();
+
+    private DispatchEvents() {
+    }
+
+    public static DispatchPreparing dispatchPreparing(OrderCreated orderCreated) {
+        return DispatchPreparing.builder()
+                .orderId(orderCreated.getOrderId())
+                .build();
+    }
+
+    public static DispatchCompleted dispatchCompleted(OrderCreated orderCreated) {
+        return DispatchCompleted.builder()
+                .orderId(orderCreated.getOrderId())
+                .date(LocalDateTime.now().toString())
+                .build();
+    }
+
+    public static OrderDispatched orderDispatched(OrderCreated orderCreated) {
+        return OrderDispatched.builder()
+                .orderId(orderCreated.getOrderId())
+                .processedById(APPLICATION_ID)
+                .notes("Dispatched: " + orderCreated.getItem())
+                .build();
+    }
+}
@@ -1,55 +1,266 @@
 package dev.lydtech.dispatch.service;
 
 import dev.lydtech.dispatch.client.StockServiceClient;
-import dev.lydtech.dispatch.message.DispatchCompleted;
-import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.dedup.ProcessedOrderStore;
+import dev.lydtech.dispatch.logging.HotPathLog;
 import dev.lydtech.dispatch.message.OrderCreated;
-import dev.lydtech.dispatch.message.OrderDispatched;
-import lombok.AllArgsConstructor;
+import dev.lydtech.dispatch.outbox.OutboxLog;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
-import static java.util.UUID.randomUUID;
+import static dev.lydtech.dispatch.service.DispatchEvents.*;
 
 @Slf4j
 @Service
-@AllArgsConstructor
 public class DispatchService {
 
-    private static final String DISPATCH_TRACKING_TOPIC = "dispatch.tracking";
-    private static final String ORDER_DISPATCHED_TOPIC = "order.dispatched";
-    private static final UUID APPLICATION_ID = randomUUID();
     private final KafkaTemplate<String, Object> kafkaProducer;
+    private final KafkaTemplate<String, Object> trackingProducer;
     private final StockServiceClient stockServiceClient;
+    private final boolean pipelinedSends;
+    private final ProcessedOrderStore processedOrderStore;
+    private final HotPathLog hotPathLog;
+    private final OutboxLog outbox;
+
+    public DispatchService(KafkaTemplate<String, Object> kafkaProducer, StockServiceClient stockServiceClient) {
+        this(kafkaProducer, stockServiceClient, false);
+    }
+
+    public DispatchService(KafkaTemplate<String, Object> kafkaProducer, StockServiceClient stockServiceClient, boolean pipelinedSends) {
+        this(kafkaProducer, stockServiceClient, pipelinedSends, null);
+    }
+
+    public DispatchService(KafkaTemplate<String, Object> kafkaProducer, StockServiceClient stockServiceClient, boolean pipelinedSends,
+                           ProcessedOrderStore processedOrderStore) {
+        this(kafkaProducer, kafkaProducer, stockServiceClient, pipelinedSends, processedOrderStore, new HotPathLog(), null);
+    }
+
+    @Autowired
+    public DispatchService(KafkaTemplate<String, Object> kafkaProducer,
+                           @Qualifier("trackingKafkaTemplate") KafkaTemplate<String, Object> trackingProducer,
+                           StockServiceClient stockServiceClient,
+                           @Value("${dispatch.producer.pipelinedSends:false}") boolean pipelinedSends,
+                           @Nullable ProcessedOrderStore processedOrderStore,
+                           HotPathLog hotPathLog,
+                           @Nullable OutboxLog outbox) {
+        this.kafkaProducer = kafkaProducer;
+        this.trackingProducer = trackingProducer;
+        this.stockServiceClient = stockServiceClient;
+        this.pipelinedSends = pipelinedSends;
+        this.processedOrderStore = processedOrderStore;
+        this.hotPathLog = hotPathLog;
+        this.outbox = outbox;
+    }
 
     public void process(String key, OrderCreated orderCreated) throws Exception {
+        if (alreadyDispatched(orderCreated.getOrderId())) {
+            hotPathLog.duplicate(key, orderCreated.getOrderId());
+            return;
+        }
         String available = stockServiceClient.checkAvailability(orderCreated.getItem());
         if (Boolean.parseBoolean(available)) {
-            DispatchPreparing dispatchPreparing = DispatchPreparing.builder()
-                    .orderId(orderCreated.getOrderId())
-                    .build();
-            kafkaProducer.send(DISPATCH_TRACKING_TOPIC, key, dispatchPreparing).get();
-
-            DispatchCompleted dispatchCompleted = DispatchCompleted.builder()
-                    .orderId(orderCreated.getOrderId())
-                    .date(LocalDateTime.now().toString())
-                    .build();
-            kafkaProducer.send(DISPATCH_TRACKING_TOPIC, key, dispatchCompleted).get();
-
-            OrderDispatched orderDispatched = OrderDispatched.builder()
-                    .orderId(orderCreated.getOrderId())
-                    .processedById(APPLICATION_ID)
-                    .notes("Dispatched: " + orderCreated.getItem())
-                    .build();
-            kafkaProducer.send(ORDER_DISPATCHED_TOPIC, key, orderDispatched).get();
-
-            log.info("Sent messages: key: " + key + " - orderId: " + orderCreated.getOrderId() + " - processedById: " + APPLICATION_ID);
+            if (outbox != null) {
+                List<OutboxLog.Entry> events = new ArrayList<>(3);
+                addEvents(events, key, orderCreated);
+                outbox.append(events);
+            } else if (pipelinedSends) {
+                sendPipelined(key, orderCreated);
+            } else {
+                sendSequentially(key, orderCreated);
+            }
+            markDispatched(Collections.singletonList(orderCreated.getOrderId()));
+            hotPathLog.dispatched(key, orderCreated.getOrderId(), APPLICATION_ID);
         } else {
-            log.info("Item " + orderCreated.getItem() + " is unavailable.");
+            hotPathLog.unavailable(key, orderCreated.getItem());
+        }
+    }
+
+    /**
+     * Dispatches a whole poll. Availability is checked once per distinct item and the events of every available
+     * order are published together and joined once. Processing stops at the first record that fails, and the
+     * failure is reported with its index so the error handler commits the records before it and retries or dead
+     * letters only that record onwards.
+     **/
+    public void processBatch(List<ConsumerRecord<String, OrderCreated>> records) {
+        Map<String, Boolean> availability = new HashMap<>(prefetchAvailability(records));
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+        List<OutboxLog.Entry> events = new ArrayList<>();
+        List<Integer> sendIndexes = new ArrayList<>();
+        Set<UUID> dispatchedOrderIds = new HashSet<>();
+        int failedIndex = -1;
+        RuntimeException failure = null;
+        int dispatched = 0;
+
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, OrderCreated> record = records.get(i);
+            try {
+                OrderCreated orderCreated = record.value();
+                if (orderCreated == null) {
+                    throw new NotRetryableException(new IllegalArgumentException("No payload at offset " + record.offset()));
+                }
+                if (dispatchedOrderIds.contains(orderCreated.getOrderId()) || alreadyDispatched(orderCreated.getOrderId())) {
+                    hotPathLog.duplicate(record.key(), orderCreated.getOrderId());
+                    continue;
+                }
+                Boolean available = availability.get(orderCreated.getItem());
+                if (available == null) {
+                    available = Boolean.parseBoolean(stockServiceClient.checkAvailability(orderCreated.getItem()));
+                    availability.put(orderCreated.getItem(), available);
+                }
+                if (available) {
+                    String key = record.key();
+                    if (outbox != null) {
+                        addEvents(events, key, orderCreated);
+                    } else {
+                        sends.add(trackingProducer.send(DISPATCH_TRACKING_TOPIC, key, dispatchPreparing(orderCreated)));
+                        sends.add(trackingProducer.send(DISPATCH_TRACKING_TOPIC, key, dispatchCompleted(orderCreated)));
+                        sends.add(kafkaProducer.send(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated)));
+                    }
+                    sendIndexes.add(i);
+                    dispatchedOrderIds.add(orderCreated.getOrderId());
+                    dispatched++;
+                }
+            } catch (RetryableException | NotRetryableException e) {
+                failedIndex = i;
+                failure = e;
+                break;
+            } catch (Exception e) {
+                failedIndex = i;
+                failure = new NotRetryableException(e);
+                break;
+            }
+        }
+
+        if (!events.isEmpty()) {
+            try {
+                // one frame for the poll, the records before the first dispatched one need nothing more
+                outbox.append(events);
+            } catch (RetryableException e) {
+                throw new BatchListenerFailedException("Failed to append dispatch events to the outbox", e, sendIndexes.get(0));
+            }
+        }
+        // the first failed ack wins, since everything after it will be redelivered anyway
+        for (int i = 0; i < sends.size(); i++) {
+            try {
+                sends.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BatchListenerFailedException("Interrupted waiting for send results", e, sendIndexes.get(i / 3));
+            } catch (ExecutionException e) {
+                throw new BatchListenerFailedException("Failed to publish dispatch events", new NotRetryableException(e), sendIndexes.get(i / 3));
+            }
+        }
+        markDispatched(dispatchedOrderIds);
+
+        if (log.isInfoEnabled()) {
+            log.info("Batch processed: records: {} - dispatched: {} - distinct items: {}", records.size(), dispatched, availability.size());
+        }
+        if (failure != null) {
+            throw new BatchListenerFailedException("Failed to process order", failure, failedIndex);
         }
     }
+
+    /**
+     * Asks the bulk endpoint about every distinct item of the batch in one request. A retryable failure means the
+     * service is struggling, so it is rethrown as is rather than sending the service a request per item: without a
+     * failed index the error handler retries the whole batch with dispatchRetryBackOff and no record is blamed for
+     * it. Only a non retryable failure (no bulk endpoint, say) falls back to per item checks, so the failure is
+     * attributed to the record that actually hits it.
+     **/
+    private Map<String, Boolean> prefetchAvailability(List<ConsumerRecord<String, OrderCreated>> records) {
+        Set<String> items = new LinkedHashSet<>();
+        for (ConsumerRecord<String, OrderCreated> record : records) {
+            // an order without an item is left to the per record check, which fails just that record
+            if (record.value() != null && record.value().getItem() != null) {
+                items.add(record.value().getItem());
+            }
+        }
+        try {
+            return stockServiceClient.checkAvailability(items);
+        } catch (NotRetryableException e) {
+            log.warn("Bulk availability check failed, falling back to per item checks: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private boolean alreadyDispatched(UUID orderId) {
+        if (processedOrderStore == null || orderId == null || !processedOrderStore.contains(orderId)) {
+            return false;
+        }
+        processedOrderStore.duplicateSkipped();
+        return true;
+    }
+
+    /**
+     * Remembers the orders once their events are acked. Inside a Kafka transaction that waits for the commit,
+     * otherwise a rolled back dispatch would be skipped when it is redelivered.
+     **/
+    private void markDispatched(Collection<UUID> orderIds) {
+        if (processedOrderStore == null || orderIds.isEmpty()) {
+            return;
+        }
+        Runnable mark = () -> orderIds.stream().filter(Objects::nonNull).forEach(processedOrderStore::markProcessed);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    mark.run();
+                }
+            });
+        } else {
+            mark.run();
+        }
+    }
+
+    private static void addEvents(List<OutboxLog.Entry> events, String key, OrderCreated orderCreated) {
+        long now = System.currentTimeMillis();
+        events.add(new OutboxLog.Entry(DISPATCH_TRACKING_TOPIC, key, dispatchPreparing(orderCreated), now));
+        events.add(new OutboxLog.Entry(DISPATCH_TRACKING_TOPIC, key, dispatchCompleted(orderCreated), now));
+        events.add(new OutboxLog.Entry(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated), now));
+    }
+
+    private void sendSequentially(String key, OrderCreated orderCreated) throws Exception {
+        trackingProducer.send(DISPATCH_TRACKING_TOPIC, key, dispatchPreparing(orderCreated)).get();
+        trackingProducer.send(DISPATCH_TRACKING_TOPIC, key, dispatchCompleted(orderCreated)).get();
+        kafkaProducer.send(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated)).get();
+    }
+
+    /**
+     * Issues all three sends back to back and waits for them once, so the listener thread pays a single broker
+     * round-trip instead of three. The two tracking events share a key and a producer, so the producer keeps
+     * them in send order on the partition (every ProducerProfile enables idempotence).
+     * Joining with get() surfaces the first failure as an ExecutionException, exactly like the sequential path,
+     * so the error handler classifies and retries it the same way before the offset is committed.
+     **/
+    private void sendPipelined(String key, OrderCreated orderCreated) throws Exception {
+        CompletableFuture<?> preparing = trackingProducer.send(DISPATCH_TRACKING_TOPIC, key, dispatchPreparing(orderCreated));
+        CompletableFuture<?> completed = trackingProducer.send(DISPATCH_TRACKING_TOPIC, key, dispatchCompleted(orderCreated));
+        CompletableFuture<?> dispatched = kafkaProducer.send(ORDER_DISPATCHED_TOPIC, key, orderDispatched(orderCreated));
+        CompletableFuture.allOf(preparing, completed, dispatched).get();
+    }
 }
@@ -0,0 +1,127 @@
+package dev.lydtech.dispatch.backpressure;
+
+import dev.lydtech.dispatch.client.StockServiceGuard;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.*;
+
+class BackpressureControllerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MessageListenerContainer containerMock;
+    private KafkaListenerEndpointRegistry registryMock;
+    private BackpressureController controller;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        registryMock = mock(KafkaListenerEndpointRegistry.class);
+        containerMock = mock(MessageListenerContainer.class);
+        when(registryMock.getListenerContainer(BackpressureController.LISTENER_ID)).thenReturn(containerMock);
+        when(containerMock.isRunning()).thenReturn(true);
+        controller = controller(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        controller.close();
+    }
+
+    @Test
+    void sample_PausesOnSlowStockServiceAndResumesOnceRecovered() {
+        Timer stockRequests = Timer.builder("dispatch.stock.requests").tag("type", "single").register(meterRegistry);
+        stockRequests.record(Duration.ofMillis(1500));
+        stockRequests.record(Duration.ofMillis(900));
+
+        controller.sample();
+        assertThat(controller.paused(), equalTo(true));
+        verify(containerMock).pause();
+
+        stockRequests.record(Duration.ofMillis(50));
+        controller.sample();
+        assertThat(controller.paused(), equalTo(false));
+        verify(containerMock).resume();
+        assertThat(meterRegistry.get("dispatch.backpressure.pauses").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void sample_StaysPausedAbovePauseRatio() {
+        Timer stockRequests = Timer.builder("dispatch.stock.requests").register(meterRegistry);
+        stockRequests.record(Duration.ofMillis(1200));
+        controller.sample();
+
+        // 0.8 is below the pause threshold but above resumeRatio
+        stockRequests.record(Duration.ofMillis(800));
+        controller.sample();
+
+        assertThat(controller.paused(), equalTo(true));
+        verify(containerMock, never()).resume();
+    }
+
+    @Test
+    void sample_PausesOnProducerBufferUsage() {
+        AtomicLong available = new AtomicLong(5);
+        Gauge.builder("kafka.producer.buffer.total.bytes", () -> 100).register(meterRegistry);
+        Gauge.builder("kafka.producer.buffer.available.bytes", available::get).register(meterRegistry);
+
+        controller.sample();
+
+        assertThat(controller.paused(), equalTo(true));
+    }
+
+    @Test
+    void sample_PausesOnErrorRateOnceEnoughDeliveries() {
+        DispatchMetrics dispatchMetrics = new DispatchMetrics(meterRegistry);
+        for (int i = 0; i < 9; i++) {
+            dispatchMetrics.failedDelivery((ConsumerRecord<?, ?>) null, new RuntimeException(), 1);
+        }
+        controller.sample();
+        assertThat(controller.paused(), equalTo(false));
+
+        dispatchMetrics.failedDelivery((ConsumerRecord<?, ?>) null, new RuntimeException(), 1);
+        controller.sample();
+        assertThat(controller.paused(), equalTo(true));
+    }
+
+    @Test
+    void sample_PausesWhileCircuitOpen() {
+        StockServiceGuard guard = new StockServiceGuard(1, 1, 0.5, 60_000L, 1, 1, 1, 1, 500L, 0.9, 0L);
+        guard.release(guard.acquire(), true);
+        controller.close();
+        controller = controller(guard);
+
+        controller.sample();
+
+        assertThat(controller.paused(), equalTo(true));
+    }
+
+    @Test
+    void sample_IgnoresStoppedContainer() {
+        when(containerMock.isRunning()).thenReturn(false);
+        Timer.builder("dispatch.stock.requests").register(meterRegistry).record(Duration.ofSeconds(5));
+
+        controller.sample();
+
+        verify(containerMock, never()).pause();
+    }
+
+    private BackpressureController controller(StockServiceGuard guard) {
+        // 1s stock latency, 80% buffer, 50 in flight, 50% errors over at least 10 deliveries, resume below 0.7, no
+        // minimum pause, sampled by the test
+        return new BackpressureController(registryMock, meterRegistry, guard, 1000L, 0.8, 50, 0.5, 10, 0.7, 0L, 0L);
+    }
+}
@@ -0,0 +1,71 @@
+package dev.lydtech.dispatch.benchmark;
+
+import dev.lydtech.dispatch.codec.DispatchBinarySerializer;
+import dev.lydtech.dispatch.codec.MigratingDispatchDeserializer;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.UUID.randomUUID;
+
+/**
+ * The Jackson path the containers use today (type headers included) against DispatchBinaryCodec, for the
+ * largest outbound event and for OrderCreated as read by the listener. Run with -prof gc for allocation rates.
+ * Encoded sizes don't vary between runs and are covered by DispatchBinaryCodecTest rather than measured here.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=CodecBenchmark
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"json", "binary"})
+    public String codec;
+
+    private Serializer<Object> serializer;
+    private Deserializer<Object> deserializer;
+    private OrderDispatched orderDispatched;
+    private byte[] orderCreatedBytes;
+    private RecordHeaders orderCreatedHeaders;
+
+    @Setup
+    public void setUp() {
+        serializer = "json".equals(codec) ? new JsonSerializer<>() : new DispatchBinarySerializer();
+        // the listener's deserializer either way, JSON payloads fall through to Jackson
+        deserializer = new MigratingDispatchDeserializer();
+        deserializer.configure(Map.of(
+                JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName(),
+                JsonDeserializer.TRUSTED_PACKAGES, "dev.lydtech.dispatch.message"), false);
+
+        orderDispatched = new OrderDispatched(randomUUID(), randomUUID(), "Dispatched: item-" + randomUUID());
+        orderCreatedHeaders = new RecordHeaders();
+        orderCreatedBytes = serializer.serialize("order.created", orderCreatedHeaders, new OrderCreated(randomUUID(), "item-" + randomUUID()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializer.close();
+        deserializer.close();
+    }
+
+    @Benchmark
+    public byte[] serializeOrderDispatched() {
+        return serializer.serialize("order.dispatched", new RecordHeaders(), orderDispatched);
+    }
+
+    @Benchmark
+    public Object deserializeOrderCreated() {
+        return deserializer.deserialize("order.created", orderCreatedHeaders, orderCreatedBytes);
+    }
+}
@@ -0,0 +1,130 @@
+package dev.lydtech.dispatch.benchmark;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dev.lydtech.dispatch.DispatchConfiguration;
+import dev.lydtech.dispatch.client.StockServiceClient;
+import dev.lydtech.dispatch.client.StockServiceHttpConfiguration;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.prefilter.OrderCreatedPreFilter;
+import dev.lydtech.dispatch.service.DispatchService;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.mock.MockProducerFactory;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static dev.lydtech.dispatch.service.DispatchEvents.dispatchCompleted;
+import static dev.lydtech.dispatch.service.DispatchEvents.dispatchPreparing;
+import static dev.lydtech.dispatch.service.DispatchEvents.orderDispatched;
+import static java.util.UUID.randomUUID;
+
+/**
+ * The per order work of the listener thread, piece by piece, configured exactly as DispatchConfiguration builds it:
+ * - deserializeOrderCreated: ErrorHandlingDeserializer and its delegate from the consumer factory config
+ * - serializeOutboundEvents: the three outbound events through the producer factory's value serializer
+ * - process: DispatchService with an auto completing MockProducer and a stock client that always answers true
+ * - checkAvailability: StockServiceClient over the pooled HTTP client against a WireMock stub with no delay
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=DispatchHotPathBenchmark writes target/jmh-result.json,
+ * add exec:java@jmh-check to compare it with the committed baseline.
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchHotPathBenchmark {
+
+    private ErrorHandlingDeserializer<Object> orderCreatedDeserializer;
+    private JsonSerializer<Object> eventSerializer;
+    private byte[] orderCreatedJson;
+    private OrderCreated orderCreated;
+
+    private MockProducer<String, Object> mockProducer;
+    private DispatchService dispatchService;
+
+    private WireMockServer stockService;
+    private StockServiceClient stockServiceClient;
+
+    @Setup
+    public void setUp() {
+        DispatchConfiguration configuration = new DispatchConfiguration();
+        orderCreatedDeserializer = new ErrorHandlingDeserializer<>();
+        orderCreatedDeserializer.configure(configuration.consumerFactory("localhost:9092", false, "balanced", true,
+                new StaticListableBeanFactory().getBeanProvider(OrderCreatedPreFilter.class)).getConfigurationProperties(), false);
+        ProducerFactory<String, Object> producerFactory = configuration.producerFactory("localhost:9092", false, "", List.of(), "low-latency", "");
+        eventSerializer = new JsonSerializer<>();
+        eventSerializer.configure(producerFactory.getConfigurationProperties(), false);
+
+        orderCreated = OrderCreated.builder().orderId(randomUUID()).item("item-" + randomUUID()).build();
+        orderCreatedJson = ("{\"orderId\":\"" + orderCreated.getOrderId() + "\",\"item\":\"" + orderCreated.getItem() + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        mockProducer = new MockProducer<>(true, new StringSerializer(), eventSerializer);
+        KafkaTemplate<String, Object> kafkaTemplate = new KafkaTemplate<>(new MockProducerFactory<>(() -> mockProducer));
+        StockServiceClient alwaysAvailable = new StockServiceClient(null, "http://localhost/api/stock") {
+            @Override
+            public String checkAvailability(String item) {
+                return "true";
+            }
+        };
+        dispatchService = new DispatchService(kafkaTemplate, alwaysAvailable, true);
+
+        stockService = new WireMockServer(options().dynamicPort());
+        stockService.start();
+        stockService.stubFor(get(urlPathEqualTo("/api/stock")).willReturn(aResponse().withStatus(200).withBody("true")));
+        StockServiceHttpConfiguration http = new StockServiceHttpConfiguration();
+        stockServiceClient = new StockServiceClient(new RestTemplate(http.pooledStockServiceRequestFactory(
+                http.stockServiceConnectionManager(20, 20, 60_000L, 500L, 5_000L), 5_000L, 5_000L, 30_000L)),
+                "http://localhost:" + stockService.port() + "/api/stock");
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearSentRecords() {
+        mockProducer.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        orderCreatedDeserializer.close();
+        stockServiceClient.close();
+        stockService.stop();
+    }
+
+    @Benchmark
+    public Object deserializeOrderCreated() {
+        return orderCreatedDeserializer.deserialize("order.created", new RecordHeaders(), orderCreatedJson);
+    }
+
+    @Benchmark
+    public void serializeOutboundEvents(Blackhole blackhole) {
+        blackhole.consume(eventSerializer.serialize("dispatch.tracking", new RecordHeaders(), dispatchPreparing(orderCreated)));
+        blackhole.consume(eventSerializer.serialize("dispatch.tracking", new RecordHeaders(), dispatchCompleted(orderCreated)));
+        blackhole.consume(eventSerializer.serialize("order.dispatched", new RecordHeaders(), orderDispatched(orderCreated)));
+    }
+
+    @Benchmark
+    public void process() throws Exception {
+        dispatchService.process(orderCreated.getOrderId().toString(), orderCreated);
+    }
+
+    @Benchmark
+    public String checkAvailability() {
+        return stockServiceClient.checkAvailability(orderCreated.getItem());
+    }
+}
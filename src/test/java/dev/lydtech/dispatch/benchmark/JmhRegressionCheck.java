@@ -0,0 +1,88 @@
+package dev.lydtech.dispatch.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH json result with a baseline from an earlier run and fails if any benchmark present in both got
+ * worse by more than the tolerance. Throughput is better when higher, every other mode when lower.
+ * A missing baseline, or one without any of the benchmarks that ran, leaves nothing to check: that is reported and
+ * skipped, or fails when requireBaseline is true. No baseline is committed yet, so it is opt-in (-Djmh.requireBaseline=true)
+ * until one is recorded.
+ * Usage: JmhRegressionCheck result.json baseline.json tolerancePercent [requireBaseline]
+ * Create or refresh the baseline by copying a result file over it on the reference machine.
+ **/
+public final class JmhRegressionCheck {
+
+    private JmhRegressionCheck() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path result = Path.of(args[0]);
+        Path baseline = Path.of(args[1]);
+        double tolerance = Double.parseDouble(args[2]) / 100;
+        boolean requireBaseline = args.length > 3 && Boolean.parseBoolean(args[3]);
+        if (!Files.exists(baseline)) {
+            nothingToCheck(requireBaseline, "No JMH baseline at " + baseline + ", copy " + result + " there on the reference machine to create one");
+            return;
+        }
+        Map<String, JsonNode> current = read(result);
+        Map<String, JsonNode> previous = read(baseline);
+        int compared = 0;
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : new TreeMap<>(current).entrySet()) {
+            JsonNode before = previous.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            compared++;
+            double now = entry.getValue().path("primaryMetric").path("score").asDouble();
+            double then = before.path("primaryMetric").path("score").asDouble();
+            boolean higherIsBetter = "thrpt".equals(entry.getValue().path("mode").asText());
+            double change = then == 0 ? 0 : (now - then) / then;
+            boolean regressed = higherIsBetter ? change < -tolerance : change > tolerance;
+            System.out.printf("%s %s: %.3f -> %.3f %s (%+.1f%%)%n", regressed ? "REGRESSED" : "ok", entry.getKey(),
+                    then, now, entry.getValue().path("primaryMetric").path("scoreUnit").asText(), change * 100);
+            if (regressed) {
+                regressions++;
+            }
+        }
+        if (compared == 0) {
+            nothingToCheck(requireBaseline, "None of the benchmarks in " + result + " are in the baseline " + baseline);
+            return;
+        }
+        if (regressions > 0) {
+            // thrown rather than System.exit, exec:java runs inside the Maven JVM
+            throw new IllegalStateException(regressions + " benchmark(s) regressed by more than " + args[2] + "%");
+        }
+    }
+
+    private static void nothingToCheck(boolean requireBaseline, String reason) {
+        if (requireBaseline) {
+            throw new IllegalStateException(reason);
+        }
+        System.out.println(reason + ", regression check skipped");
+    }
+
+    private static Map<String, JsonNode> read(Path file) throws IOException {
+        Map<String, JsonNode> benchmarks = new LinkedHashMap<>();
+        for (JsonNode benchmark : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(benchmark.path("benchmark").asText()).append(" [").append(benchmark.path("mode").asText());
+            Iterator<Map.Entry<String, JsonNode>> params = benchmark.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(", ").append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            benchmarks.put(key.append(']').toString(), benchmark);
+        }
+        return benchmarks;
+    }
+}
@@ -0,0 +1,86 @@
+package dev.lydtech.dispatch.benchmark;
+
+import ch.qos.logback.classic.Level;
+import dev.lydtech.dispatch.logging.HotPathLog;
+import dev.lydtech.dispatch.message.OrderCreated;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.UUID.randomUUID;
+
+/**
+ * Cost of the per record "Payload received" line: the concatenated form the listener used to log against
+ * HotPathLog, with the hot path logger turned down to WARN, and in sampled mode once the per second budget is
+ * spent (so almost every call is suppressed). The benchmark profile runs with -prof gc (jmh.profiler), its
+ * gc.alloc.rate.norm column is the B/op to compare: it should read ~0 for everything but concatenatedDisabled.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=LoggingBenchmark
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private static final Logger concatenatedLog = LoggerFactory.getLogger(HotPathLog.LOGGER_NAME);
+
+    private HotPathLog fullLog;
+    private HotPathLog sampledLog;
+    private OrderCreated payload;
+    private String key;
+    private UUID processedById;
+
+    @Setup
+    public void setUp() {
+        fullLog = new HotPathLog(HotPathLog.Mode.FULL, 0);
+        sampledLog = new HotPathLog(HotPathLog.Mode.SAMPLED, 1);
+        payload = new OrderCreated(randomUUID(), "item-" + randomUUID());
+        key = randomUUID().toString();
+        processedById = randomUUID();
+    }
+
+    /**
+     * Each benchmark runs in its own fork, so the level set here holds for the whole trial.
+     **/
+    @State(Scope.Benchmark)
+    public static class InfoDisabled {
+        @Setup
+        public void setUp() {
+            level(Level.WARN);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class InfoEnabled {
+        @Setup
+        public void setUp() {
+            level(Level.INFO);
+        }
+    }
+
+    private static void level(Level level) {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(HotPathLog.LOGGER_NAME)).setLevel(level);
+    }
+
+    @Benchmark
+    public void concatenatedDisabled(InfoDisabled level) {
+        concatenatedLog.info("Payload received: parition: " + 3 + " - key: " + key + " - payload: " + payload);
+    }
+
+    @Benchmark
+    public void hotPathDisabled(InfoDisabled level) {
+        fullLog.received(3, key, payload);
+        fullLog.dispatched(key, payload.getOrderId(), processedById);
+    }
+
+    @Benchmark
+    public void hotPathSampled(InfoEnabled level) {
+        sampledLog.received(3, key, payload);
+        sampledLog.dispatched(key, payload.getOrderId(), processedById);
+    }
+}
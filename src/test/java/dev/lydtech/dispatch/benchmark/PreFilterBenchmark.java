@@ -0,0 +1,95 @@
+package dev.lydtech.dispatch.benchmark;
+
+import dev.lydtech.dispatch.codec.DispatchBinarySerializer;
+import dev.lydtech.dispatch.codec.MigratingDispatchDeserializer;
+import dev.lydtech.dispatch.codec.OrderCreatedScanner;
+import dev.lydtech.dispatch.dedup.ProcessedOrderStore;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.prefilter.OrderCreatedPreFilter;
+import dev.lydtech.dispatch.prefilter.PreFilteringDeserializer;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.UUID.randomUUID;
+
+/**
+ * A redelivered OrderCreated dropped by the pre-filter from its raw bytes against the full binding the listener
+ * would otherwise do before DispatchService skips it, plus the cost the scan adds to a record that passes. Run
+ * with -prof gc, a dropped record should allocate next to nothing.
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.includes=PreFilterBenchmark
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PreFilterBenchmark {
+
+    @Param({"json", "binary"})
+    public String codec;
+
+    private Deserializer<Object> fullBinding;
+    private Deserializer<Object> preFiltering;
+    private final OrderCreatedScanner scanner = new OrderCreatedScanner();
+    private byte[] duplicateBytes;
+    private RecordHeaders duplicateHeaders;
+    private byte[] newOrderBytes;
+    private RecordHeaders newOrderHeaders;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> config = Map.of(
+                JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName(),
+                JsonDeserializer.TRUSTED_PACKAGES, "dev.lydtech.dispatch.message");
+        fullBinding = new MigratingDispatchDeserializer();
+        fullBinding.configure(config, false);
+
+        UUID dispatchedOrderId = randomUUID();
+        ProcessedOrderStore processedOrderStore = new ProcessedOrderStore(100_000);
+        processedOrderStore.markProcessed(dispatchedOrderId);
+        preFiltering = new PreFilteringDeserializer(new MigratingDispatchDeserializer(), new OrderCreatedPreFilter(processedOrderStore, null));
+        preFiltering.configure(config, false);
+
+        try (Serializer<Object> serializer = "json".equals(codec) ? new JsonSerializer<>() : new DispatchBinarySerializer()) {
+            duplicateHeaders = new RecordHeaders();
+            duplicateBytes = serializer.serialize("order.created", duplicateHeaders, new OrderCreated(dispatchedOrderId, "item-" + randomUUID()));
+            newOrderHeaders = new RecordHeaders();
+            newOrderBytes = serializer.serialize("order.created", newOrderHeaders, new OrderCreated(randomUUID(), "item-" + randomUUID()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fullBinding.close();
+        preFiltering.close();
+    }
+
+    @Benchmark
+    public Object fullBindingDuplicate() {
+        return fullBinding.deserialize("order.created", duplicateHeaders, duplicateBytes);
+    }
+
+    @Benchmark
+    public Object preFilterDuplicate() {
+        return preFiltering.deserialize("order.created", duplicateHeaders, duplicateBytes);
+    }
+
+    @Benchmark
+    public Object preFilterNewOrder() {
+        return preFiltering.deserialize("order.created", newOrderHeaders, newOrderBytes);
+    }
+
+    @Benchmark
+    public boolean scanOnly() {
+        return scanner.scan(newOrderBytes);
+    }
+}
@@ -0,0 +1,87 @@
+package dev.lydtech.dispatch.benchmark;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import dev.lydtech.dispatch.client.StockServiceClient;
+import dev.lydtech.dispatch.client.StockServiceHttpConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Blocking stock service calls issued by many concurrent orders, on a fixed pool of platform threads versus one
+ * virtual thread per order, against a WireMock stock service answering after stockLatencyMs.
+ * The virtual variant needs a Java 21 runtime: mvn -Pbenchmark,java21 test-compile exec:exec -Djmh.includes=ThreadingModelBenchmark
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ThreadingModelBenchmark {
+
+    private static final int ORDERS = 500;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"32"})
+    public int platformThreads;
+
+    @Param({"20"})
+    public int stockLatencyMs;
+
+    private WireMockServer stockService;
+    private StockServiceClient stockServiceClient;
+    private Executor executor;
+
+    @Setup
+    public void setUp() {
+        stockService = new WireMockServer(options().dynamicPort()
+                .containerThreads(ORDERS + 50)
+                .asynchronousResponseEnabled(true)
+                .asynchronousResponseThreads(50));
+        stockService.start();
+        stockService.stubFor(get(urlPathEqualTo("/api/stock"))
+                .willReturn(aResponse().withStatus(200).withBody("true").withFixedDelay(stockLatencyMs)));
+
+        StockServiceHttpConfiguration http = new StockServiceHttpConfiguration();
+        ClientHttpRequestFactory requestFactory = http.pooledStockServiceRequestFactory(
+                http.stockServiceConnectionManager(ORDERS, ORDERS, 60_000L, 500L, 5_000L), 5_000L, 5_000L, 30_000L);
+        stockServiceClient = new StockServiceClient(new RestTemplate(requestFactory), "http://localhost:" + stockService.port() + "/api/stock");
+        executor = "virtual".equals(threads) ? new VirtualThreadTaskExecutor("benchmark-virtual-") : Executors.newFixedThreadPool(platformThreads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor instanceof ExecutorService platform) {
+            platform.shutdownNow();
+        }
+        stockServiceClient.close();
+        stockService.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public int checkAvailability() {
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            String item = "item-" + (i % 50);
+            calls[i] = CompletableFuture.supplyAsync(() -> stockServiceClient.checkAvailability(item), executor);
+        }
+        CompletableFuture.allOf(calls).join();
+        return calls.length;
+    }
+}
@@ -0,0 +1,134 @@
+package dev.lydtech.dispatch.benchmark;
+
+import dev.lydtech.dispatch.client.StockServiceClient;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.EmbeddedKafkaZKBroker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.UUID.randomUUID;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Cost of the exactly-once mode against an embedded broker: DispatchService publishing ORDERS orders with plain
+ * pipelined sends, with one transaction (sends plus consumer offset) per order, and with one transaction for the
+ * whole batch as the batch listener does with dispatch.producer.transactional=true.
+ * Throughput and per order latency: mvn -Pbenchmark test-compile exec:exec -Djmh.includes=TransactionalDispatchBenchmark
+ * nonTransactional is the reference: quote each transactional score as a ratio of it (thrpt ops/ms, and the
+ * sample mode p50 and p99 per order), the absolute figures depend on the machine running the embedded broker.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class TransactionalDispatchBenchmark {
+
+    private static final int ORDERS = 100;
+    private static final String ORDER_CREATED_TOPIC = "order.created";
+    private static final ConsumerGroupMetadata GROUP = new ConsumerGroupMetadata("dispatch.order.created.consumer");
+
+    private EmbeddedKafkaBroker broker;
+    private DefaultKafkaProducerFactory<String, Object> plainProducerFactory;
+    private DefaultKafkaProducerFactory<String, Object> transactionalProducerFactory;
+    private KafkaTemplate<String, Object> transactionalTemplate;
+    private DispatchService plainDispatchService;
+    private DispatchService transactionalDispatchService;
+    private OrderCreated[] orders;
+    private long offset;
+
+    @Setup
+    public void setUp() {
+        broker = new EmbeddedKafkaZKBroker(1, false, 1, ORDER_CREATED_TOPIC, "dispatch.tracking", "order.dispatched")
+                .brokerProperties(Map.of("transaction.state.log.replication.factor", "1", "transaction.state.log.min.isr", "1"));
+        broker.afterPropertiesSet();
+
+        Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString());
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        plainProducerFactory = new DefaultKafkaProducerFactory<>(config);
+        transactionalProducerFactory = new DefaultKafkaProducerFactory<>(config);
+        transactionalProducerFactory.setTransactionIdPrefix("dispatch-benchmark-tx-");
+        transactionalTemplate = new KafkaTemplate<>(transactionalProducerFactory);
+
+        StockServiceClient stockServiceClient = mock(StockServiceClient.class);
+        when(stockServiceClient.checkAvailability(anyString())).thenReturn("true");
+        plainDispatchService = new DispatchService(new KafkaTemplate<>(plainProducerFactory), stockServiceClient, true);
+        transactionalDispatchService = new DispatchService(transactionalTemplate, stockServiceClient, true);
+
+        orders = new OrderCreated[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            orders[i] = TestEventData.buildOrderCreatedEvent(randomUUID(), "item-" + i);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        plainProducerFactory.destroy();
+        transactionalProducerFactory.destroy();
+        broker.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public void nonTransactional() throws Exception {
+        for (OrderCreated order : orders) {
+            plainDispatchService.process(order.getOrderId().toString(), order);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public void transactionPerOrder() {
+        for (OrderCreated order : orders) {
+            transactionalTemplate.executeInTransaction(operations -> {
+                dispatch(order);
+                operations.sendOffsetsToTransaction(nextOffset(1), GROUP);
+                return null;
+            });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public void transactionPerBatch() {
+        transactionalTemplate.executeInTransaction(operations -> {
+            for (OrderCreated order : orders) {
+                dispatch(order);
+            }
+            operations.sendOffsetsToTransaction(nextOffset(ORDERS), GROUP);
+            return null;
+        });
+    }
+
+    private void dispatch(OrderCreated order) {
+        try {
+            transactionalDispatchService.process(order.getOrderId().toString(), order);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> nextOffset(int consumed) {
+        offset += consumed;
+        return Map.of(new TopicPartition(ORDER_CREATED_TOPIC, 0), new OffsetAndMetadata(offset));
+    }
+}
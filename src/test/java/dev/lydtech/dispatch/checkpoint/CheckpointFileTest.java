@@ -0,0 +1,126 @@
+package dev.lydtech.dispatch.checkpoint;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class CheckpointFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void read_ReturnsFramesInWriteOrder() throws IOException {
+        Path file = tempDir.resolve("checkpoint");
+        write(file, "first", "second", "third");
+
+        List<ByteBuffer> frames = CheckpointFile.read(file);
+
+        assertThat(frames.size(), equalTo(3));
+        assertThat(text(frames.get(0)), equalTo("first"));
+        assertThat(text(frames.get(1)), equalTo("second"));
+        assertThat(text(frames.get(2)), equalTo("third"));
+        assertThat(Files.exists(tempDir.resolve("checkpoint.tmp")), equalTo(false));
+    }
+
+    @Test
+    void write_SpansSeveralMappedRegions() throws IOException {
+        Path file = tempDir.resolve("checkpoint");
+        byte[] large = new byte[700 * 1024];
+        Arrays.fill(large, (byte) 7);
+        try (CheckpointFile.Writer writer = CheckpointFile.create(file)) {
+            for (int i = 0; i < 5; i++) {
+                writer.append(ByteBuffer.wrap(large));
+            }
+            writer.commit();
+        }
+
+        List<ByteBuffer> frames = CheckpointFile.read(file);
+
+        assertThat(frames.size(), equalTo(5));
+        assertThat(frames.get(4).remaining(), equalTo(large.length));
+        assertThat(frames.get(4).get(large.length - 1), equalTo((byte) 7));
+        assertThat(Files.size(file), equalTo(8L + 5 * (8 + large.length) + 8));
+    }
+
+    @Test
+    void read_MissingFileIsNoCheckpoint() throws IOException {
+        assertThat(CheckpointFile.read(tempDir.resolve("missing")), nullValue());
+    }
+
+    @Test
+    void read_RejectsEveryTruncation() throws IOException {
+        Path file = tempDir.resolve("checkpoint");
+        write(file, "first", "second");
+        byte[] complete = Files.readAllBytes(file);
+        Path truncated = tempDir.resolve("truncated");
+
+        for (int length = 0; length < complete.length; length++) {
+            Files.write(truncated, Arrays.copyOf(complete, length));
+            assertThat("truncated to " + length + " bytes", CheckpointFile.read(truncated), nullValue());
+        }
+    }
+
+    @Test
+    void read_RejectsCorruptFrame() throws IOException {
+        Path file = tempDir.resolve("checkpoint");
+        write(file, "first", "second");
+        byte[] bytes = Files.readAllBytes(file);
+        // a payload byte of the second frame
+        bytes[8 + 8 + 5 + 8 + 2] ^= 0x10;
+        Files.write(file, bytes);
+
+        assertThat(CheckpointFile.read(file), nullValue());
+    }
+
+    @Test
+    void read_RejectsTrailingBytes() throws IOException {
+        Path file = tempDir.resolve("checkpoint");
+        write(file, "first");
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        assertThat(CheckpointFile.read(file), nullValue());
+    }
+
+    @Test
+    void write_UncommittedLeavesPreviousCheckpoint() throws IOException {
+        Path file = tempDir.resolve("checkpoint");
+        write(file, "previous");
+        try (CheckpointFile.Writer writer = CheckpointFile.create(file)) {
+            writer.append(ByteBuffer.wrap("abandoned".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        List<ByteBuffer> frames = CheckpointFile.read(file);
+
+        assertThat(frames.size(), equalTo(1));
+        assertThat(text(frames.get(0)), equalTo("previous"));
+        assertThat(Files.exists(tempDir.resolve("checkpoint.tmp")), equalTo(false));
+    }
+
+    private static void write(Path file, String... frames) throws IOException {
+        try (CheckpointFile.Writer writer = CheckpointFile.create(file)) {
+            for (String frame : frames) {
+                writer.append(ByteBuffer.wrap(frame.getBytes(StandardCharsets.UTF_8)));
+            }
+            writer.commit();
+        }
+    }
+
+    private static String text(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,73 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StockAvailabilityBatcherTest {
+
+    private final List<List<String>> requestedBatches = new CopyOnWriteArrayList<>();
+    private StockAvailabilityBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        batcher.close();
+    }
+
+    @Test
+    void submit_WindowMergesItemsIntoOneRequest() throws Exception {
+        batcher = new StockAvailabilityBatcher(recording(items -> Map.of("item-1", true, "item-2", false)), 100L, 50);
+
+        CompletableFuture<Boolean> first = batcher.submit("item-1");
+        CompletableFuture<Boolean> second = batcher.submit("item-2");
+        CompletableFuture<Boolean> duplicate = batcher.submit("item-1");
+
+        assertThat(first.get(1, TimeUnit.SECONDS), equalTo(true));
+        assertThat(second.get(1, TimeUnit.SECONDS), equalTo(false));
+        assertThat(duplicate, sameInstance(first));
+        assertThat(requestedBatches, hasSize(1));
+        assertThat(requestedBatches.get(0), contains("item-1", "item-2"));
+    }
+
+    @Test
+    void submit_FullBatchIsSentWithoutWaitingForTheWindow() throws Exception {
+        batcher = new StockAvailabilityBatcher(recording(items -> Map.of()), 60_000L, 2);
+
+        CompletableFuture<Boolean> first = batcher.submit("item-1");
+        CompletableFuture<Boolean> second = batcher.submit("item-2");
+
+        assertThat(first.get(1, TimeUnit.SECONDS), equalTo(false));
+        assertThat(second.get(1, TimeUnit.SECONDS), equalTo(false));
+        assertThat(requestedBatches, hasSize(1));
+    }
+
+    @Test
+    void checkAvailability_BulkFailureIsRethrownToEveryCaller() {
+        batcher = new StockAvailabilityBatcher(recording(items -> {
+            throw new RetryableException("Service failure");
+        }), 10L, 50);
+
+        Exception exception = assertThrows(RetryableException.class, () -> batcher.checkAvailability("item-1"));
+        assertThat(exception.getMessage(), equalTo("Service failure"));
+    }
+
+    private Function<Collection<String>, Map<String, Boolean>> recording(Function<Collection<String>, Map<String, Boolean>> lookup) {
+        return items -> {
+            requestedBatches.add(new ArrayList<>(items));
+            return lookup.apply(items);
+        };
+    }
+}
@@ -0,0 +1,136 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StockAvailabilityCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private StockAvailabilityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new StockAvailabilityCache(2, 1000L, 100L, clock::get);
+    }
+
+    @Test
+    void get_HitWithinTtl() {
+        assertThat(cache.get("item-1", this::available), equalTo(true));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertThat(cache.get("item-1", this::available), equalTo(true));
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(cache.hits(), equalTo(1L));
+        assertThat(cache.misses(), equalTo(1L));
+    }
+
+    @Test
+    void get_NegativeAnswersExpireSooner() {
+        cache.get("item-1", this::unavailable);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        cache.get("item-1", this::unavailable);
+
+        assertThat(loads.get(), equalTo(2));
+        assertThat(cache.hits(), equalTo(0L));
+    }
+
+    @Test
+    void get_RetryableFailureIsNotCached() {
+        assertThrows(RetryableException.class, () -> cache.get("item-1", item -> {
+            loads.incrementAndGet();
+            throw new RetryableException("Service failure");
+        }));
+        assertThat(cache.get("item-1", this::available), equalTo(true));
+
+        assertThat(loads.get(), equalTo(2));
+        assertThat(cache.size(), equalTo(1));
+    }
+
+    @Test
+    void get_NotRetryableFailureIsCachedForTheNegativeTtl() {
+        NotRetryableException failure = new NotRetryableException(new IllegalArgumentException("Unknown item"));
+        assertThrows(NotRetryableException.class, () -> cache.get("item-1", item -> {
+            loads.incrementAndGet();
+            throw failure;
+        }));
+        assertThrows(NotRetryableException.class, () -> cache.get("item-1", this::available));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(cache.get("item-1", this::available), equalTo(true));
+
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    void get_EvictsOldestEntryBeyondMaximumSize() {
+        cache.get("item-1", this::available);
+        cache.get("item-2", this::available);
+        cache.get("item-3", this::available);
+        cache.get("item-1", this::available);
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.evictions(), equalTo(2L));
+        assertThat(loads.get(), equalTo(4));
+    }
+
+    @Test
+    void get_ConcurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService listenerThreads = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(CompletableFuture.supplyAsync(() -> cache.get("item-1", item -> {
+                    loads.incrementAndGet();
+                    awaitQuietly(release);
+                    return true;
+                }), listenerThreads));
+            }
+            await().atMost(2, TimeUnit.SECONDS).until(() -> cache.coalesced(), equalTo(3L));
+            release.countDown();
+
+            for (CompletableFuture<Boolean> result : results) {
+                assertThat(result.get(2, TimeUnit.SECONDS), equalTo(true));
+            }
+            assertThat(loads.get(), equalTo(1));
+            assertThat(cache.misses(), equalTo(1L));
+        } finally {
+            listenerThreads.shutdownNow();
+        }
+    }
+
+    private boolean available(String item) {
+        loads.incrementAndGet();
+        return true;
+    }
+
+    private boolean unavailable(String item) {
+        loads.incrementAndGet();
+        return false;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
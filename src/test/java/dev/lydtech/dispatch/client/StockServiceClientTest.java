@@ -1,6 +1,7 @@
 package dev.lydtech.dispatch.client;
 
 import dev.lydtech.dispatch.client.exception.RetryableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Assertions;
@@ -58,4 +59,43 @@ class StockServiceClientTest {
         assertThrows(Exception.class, () -> client.checkAvailability("my-item"));
         verify(restTemplateMock, times(1)).getForEntity(STOCK_SERVICE_QUERY, String.class);
     }
+
+    @Test
+    public void testCheckAvailability_TimedByOutcome() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        client.bindTo(registry);
+        when(restTemplateMock.getForEntity(STOCK_SERVICE_QUERY, String.class))
+                .thenReturn(new ResponseEntity<>("true", HttpStatusCode.valueOf(200)))
+                .thenReturn(new ResponseEntity<>("false", HttpStatusCode.valueOf(200)))
+                .thenThrow(new HttpServerErrorException(HttpStatusCode.valueOf(503)));
+
+        client.checkAvailability("my-item");
+        client.checkAvailability("my-item");
+        assertThrows(RetryableException.class, () -> client.checkAvailability("my-item"));
+
+        MatcherAssert.assertThat(registry.get("dispatch.stock.requests").tags("type", "single", "outcome", "available").timer().count(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(registry.get("dispatch.stock.requests").tags("type", "single", "outcome", "unavailable").timer().count(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(registry.get("dispatch.stock.requests").tags("type", "single", "outcome", "retryable").timer().count(), Matchers.equalTo(1L));
+        MatcherAssert.assertThat(registry.get("dispatch.stock.requests").tags("type", "single", "outcome", "not_retryable").timer().count(), Matchers.equalTo(0L));
+    }
+
+    @Test
+    public void testCheckAvailability_SnapshotHitSkipsRequest() {
+        StockSnapshot snapshotMock = mock(StockSnapshot.class);
+        when(snapshotMock.availability("my-item")).thenReturn(false);
+        client = new StockServiceClient(restTemplateMock, "endpoint", "endpoint/bulk", false, 0L, 0, false, 0, 0L, 0L, null, snapshotMock);
+
+        MatcherAssert.assertThat(client.checkAvailability("my-item"), Matchers.equalTo("false"));
+        verifyNoInteractions(restTemplateMock);
+    }
+
+    @Test
+    public void testCheckAvailability_SnapshotMissFallsBackToRequest() {
+        StockSnapshot snapshotMock = mock(StockSnapshot.class);
+        client = new StockServiceClient(restTemplateMock, "endpoint", "endpoint/bulk", false, 0L, 0, false, 0, 0L, 0L, null, snapshotMock);
+        when(restTemplateMock.getForEntity(STOCK_SERVICE_QUERY, String.class)).thenReturn(new ResponseEntity<>("true", HttpStatusCode.valueOf(200)));
+
+        MatcherAssert.assertThat(client.checkAvailability("my-item"), Matchers.equalTo("true"));
+        verify(restTemplateMock, times(1)).getForEntity(STOCK_SERVICE_QUERY, String.class);
+    }
 }
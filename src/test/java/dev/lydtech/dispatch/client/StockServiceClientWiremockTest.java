@@ -0,0 +1,160 @@
+package dev.lydtech.dispatch.client;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.http.Fault;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.integration.WiremockUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubWiremockJson;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StockServiceClientWiremockTest {
+
+    private static WireMockServer wireMockServer;
+    private String stockServiceEndpoint;
+
+    @BeforeAll
+    static void startWiremock() {
+        wireMockServer = new WireMockServer(options().dynamicPort());
+        wireMockServer.start();
+        WireMock.configureFor("localhost", wireMockServer.port());
+    }
+
+    @AfterAll
+    static void stopWiremock() {
+        wireMockServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        WiremockUtils.reset();
+        stockServiceEndpoint = "http://localhost:" + wireMockServer.port() + "/api/stock";
+    }
+
+    @Test
+    void checkAvailability_BulkRequest() {
+        stubWiremockJson("/api/stock/bulk?item=item-1&item=item-2&item=item-3", 200, "{\"item-1\":true,\"item-2\":false}");
+        StockServiceClient client = new StockServiceClient(new RestTemplate(), stockServiceEndpoint);
+
+        Map<String, Boolean> availability = client.checkAvailability(List.of("item-1", "item-2", "item-3"));
+
+        assertThat(availability, equalTo(Map.of("item-1", true, "item-2", false, "item-3", false)));
+    }
+
+    @Test
+    void checkAvailability_BulkServerErrorIsRetryable() {
+        stubWiremockJson("/api/stock/bulk?item=item-1", 503, "{}");
+        StockServiceClient client = new StockServiceClient(new RestTemplate(), stockServiceEndpoint);
+
+        assertThrows(RetryableException.class, () -> client.checkAvailability(List.of("item-1")));
+    }
+
+    @Test
+    void checkAvailability_ConcurrentSingleItemCallsAreMerged() throws Exception {
+        WireMock.stubFor(WireMock.get(WireMock.urlPathEqualTo("/api/stock/bulk"))
+                .willReturn(WireMock.aResponse().withStatus(200).withHeader("Content-Type", "application/json")
+                        .withBody("{\"item-1\":true,\"item-2\":false}")));
+        StockServiceClient client = new StockServiceClient(new RestTemplate(), stockServiceEndpoint,
+                stockServiceEndpoint + "/bulk", true, 200L, 50);
+        ExecutorService listenerThreads = Executors.newFixedThreadPool(3);
+        try {
+            CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> client.checkAvailability("item-1"), listenerThreads);
+            CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> client.checkAvailability("item-2"), listenerThreads);
+            CompletableFuture<String> third = CompletableFuture.supplyAsync(() -> client.checkAvailability("item-1"), listenerThreads);
+
+            assertThat(first.get(5, TimeUnit.SECONDS), equalTo("true"));
+            assertThat(second.get(5, TimeUnit.SECONDS), equalTo("false"));
+            assertThat(third.get(5, TimeUnit.SECONDS), equalTo("true"));
+            WireMock.verify(1, WireMock.getRequestedFor(WireMock.urlPathEqualTo("/api/stock/bulk")));
+        } finally {
+            listenerThreads.shutdownNow();
+            client.close();
+        }
+    }
+
+    @Test
+    void checkAvailability_ReadTimeoutIsRetryable() {
+        WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/api/stock?item=item-1"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("true").withFixedDelay(1000)));
+        StockServiceClient client = new StockServiceClient(new RestTemplate(pooledRequestFactory(10, 200L, 100L)), stockServiceEndpoint);
+
+        assertThrows(RetryableException.class, () -> client.checkAvailability("item-1"));
+    }
+
+    @Test
+    void checkAvailability_PoolAcquireTimeoutIsRetryable() throws Exception {
+        WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/api/stock?item=slow-item"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("true").withFixedDelay(1000)));
+        WiremockUtils.stubWiremock("/api/stock?item=item-1", 200, "true");
+        StockServiceClient client = new StockServiceClient(new RestTemplate(pooledRequestFactory(1, 50L, 2000L)), stockServiceEndpoint);
+        ExecutorService listenerThreads = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> client.checkAvailability("slow-item"), listenerThreads);
+            await().atMost(1, TimeUnit.SECONDS).until(() -> !WireMock.findAll(WireMock.getRequestedFor(WireMock.urlEqualTo("/api/stock?item=slow-item"))).isEmpty());
+
+            assertThrows(RetryableException.class, () -> client.checkAvailability("item-1"));
+            assertThat(slow.get(5, TimeUnit.SECONDS), equalTo("true"));
+        } finally {
+            listenerThreads.shutdownNow();
+        }
+    }
+
+    @Test
+    void checkAvailability_GuardOpensCircuitOnFaultsAndStopsCalling() {
+        WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/api/stock?item=item-1"))
+                .willReturn(WireMock.aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+        StockServiceGuard guard = new StockServiceGuard(10, 5, 0.5, 60_000L, 1, 10, 1, 10, 500L, 0.9, 0L);
+        StockServiceClient client = new StockServiceClient(new RestTemplate(), stockServiceEndpoint, stockServiceEndpoint + "/bulk",
+                false, 0L, 0, false, 0, 0L, 0L, guard, null);
+
+        for (int i = 0; i < 20; i++) {
+            assertThrows(RetryableException.class, () -> client.checkAvailability("item-1"));
+        }
+
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.OPEN));
+        WireMock.verify(5, WireMock.getRequestedFor(WireMock.urlEqualTo("/api/stock?item=item-1")));
+    }
+
+    @Test
+    void checkAvailability_GuardClosesOnceServiceRecovers() throws Exception {
+        WiremockUtils.stubWiremock("/api/stock?item=item-1", 503, "Service unavailable");
+        StockServiceGuard guard = new StockServiceGuard(10, 2, 0.5, 200L, 1, 10, 1, 10, 500L, 0.9, 0L);
+        StockServiceClient client = new StockServiceClient(new RestTemplate(), stockServiceEndpoint, stockServiceEndpoint + "/bulk",
+                false, 0L, 0, false, 0, 0L, 0L, guard, null);
+        assertThrows(RetryableException.class, () -> client.checkAvailability("item-1"));
+        assertThrows(RetryableException.class, () -> client.checkAvailability("item-1"));
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.OPEN));
+
+        WiremockUtils.stubWiremock("/api/stock?item=item-1", 200, "true");
+        await().atMost(2, TimeUnit.SECONDS).pollDelay(250, TimeUnit.MILLISECONDS)
+                .untilAsserted(() -> assertThat(client.checkAvailability("item-1"), equalTo("true")));
+
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.CLOSED));
+    }
+
+    private ClientHttpRequestFactory pooledRequestFactory(int maxConnections, long acquireTimeoutMs, long readTimeoutMs) {
+        StockServiceHttpConfiguration configuration = new StockServiceHttpConfiguration();
+        PoolingHttpClientConnectionManager connectionManager = configuration.stockServiceConnectionManager(
+                maxConnections, maxConnections, 60_000L, 500L, readTimeoutMs);
+        return configuration.pooledStockServiceRequestFactory(connectionManager, acquireTimeoutMs, readTimeoutMs, 30_000L);
+    }
+}
@@ -0,0 +1,158 @@
+package dev.lydtech.dispatch.client;
+
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.client.exception.StockServiceRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.backoff.BackOffExecution;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StockServiceGuardTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private StockServiceGuard guard;
+
+    @BeforeEach
+    void setUp() {
+        // window of 10, opens at 50% after 4 calls, 1s open, 2 probes; limit 4 (2..8), 100ms latency threshold
+        guard = new StockServiceGuard(10, 4, 0.5, 1000L, 2, 4, 2, 8, 100L, 0.5, 0L, clock::get);
+    }
+
+    @Test
+    void circuit_OpensOnFailureRateAndFailsFast() {
+        call(false);
+        call(false);
+        call(true);
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.CLOSED));
+        call(true);
+
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.OPEN));
+        RetryableException exception = assertThrows(RetryableException.class, guard::acquire);
+        assertThat(exception.getMessage(), equalTo("Stock service circuit is open"));
+    }
+
+    @Test
+    void circuit_BelowMinimumCallsStaysClosed() {
+        call(true);
+        call(true);
+        call(true);
+
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.CLOSED));
+    }
+
+    @Test
+    void circuit_HalfOpenClosesAfterSuccessfulProbes() {
+        open();
+        advance(1000);
+
+        StockServiceGuard.Permit first = guard.acquire();
+        StockServiceGuard.Permit second = guard.acquire();
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.HALF_OPEN));
+        // only halfOpenProbes requests get through
+        assertThrows(RetryableException.class, guard::acquire);
+
+        guard.release(first, false);
+        guard.release(second, false);
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.CLOSED));
+    }
+
+    @Test
+    void circuit_HalfOpenReopensOnFailedProbe() {
+        open();
+        advance(1000);
+
+        guard.release(guard.acquire(), true);
+
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.OPEN));
+        assertThrows(RetryableException.class, guard::acquire);
+    }
+
+    @Test
+    void limit_GrowsOnFastAnswersAndHalvesOnSlowOnes() {
+        for (int i = 0; i < 20; i++) {
+            call(false);
+        }
+        assertThat(guard.limit(), greaterThan(4));
+
+        StockServiceGuard.Permit slow = guard.acquire();
+        advance(200);
+        guard.release(slow, false);
+        assertThat(guard.limit(), lessThan(5));
+    }
+
+    @Test
+    void limit_RejectsBeyondLimit() {
+        for (int i = 0; i < 4; i++) {
+            guard.acquire();
+        }
+        assertThat(guard.inFlight(), equalTo(4));
+
+        RetryableException exception = assertThrows(RetryableException.class, guard::acquire);
+        assertThat(exception.getMessage(), equalTo("Stock service concurrency limit of 4 reached"));
+    }
+
+    @Test
+    void rejectingForMs_RestOfTheOpenCircuitThenProbes() {
+        assertThat(guard.rejectingForMs(), equalTo(0L));
+        open();
+        advance(300);
+        assertThat(guard.rejectingForMs(), equalTo(700L));
+        assertThrows(StockServiceRejectedException.class, guard::acquire);
+
+        advance(700);
+        assertThat(guard.rejectingForMs(), equalTo(0L));
+        guard.acquire();
+        guard.acquire();
+        // both probes taken, the next request waits about one answer
+        assertThat(guard.rejectingForMs(), equalTo(100L));
+    }
+
+    @Test
+    void backOff_WaitsForTheGuardWithoutUsingUpRetries() {
+        BackOffExecution backOff = new StockServiceGuardBackOff(new FixedBackOff(100L, 1L), guard).start();
+        open();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(backOff.nextBackOff(), equalTo(1000L));
+        }
+        advance(1000);
+        assertThat(backOff.nextBackOff(), equalTo(100L));
+        assertThat(backOff.nextBackOff(), equalTo(BackOffExecution.STOP));
+    }
+
+    @Test
+    void bindTo_ExposesStateAndLimit() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        guard.bindTo(registry);
+        open();
+
+        assertThat(registry.get("dispatch.stock.circuit.state").tag("state", "open").gauge().value(), equalTo(1.0));
+        assertThat(registry.get("dispatch.stock.circuit.state").tag("state", "closed").gauge().value(), equalTo(0.0));
+        assertThat(registry.get("dispatch.stock.concurrency.limit").gauge().value(), equalTo((double) guard.limit()));
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        assertThat(guard.state(), equalTo(StockServiceGuard.State.OPEN));
+    }
+
+    private void call(boolean failed) {
+        guard.release(guard.acquire(), failed);
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,227 @@
+package dev.lydtech.dispatch.client;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.EmbeddedKafkaZKBroker;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+class StockSnapshotTest {
+
+    private static final String TOPIC = "stock.events";
+
+    @TempDir
+    Path tempDir;
+
+    private EmbeddedKafkaBroker broker;
+    private KafkaProducer<String, String> producer;
+    private StockSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        broker = new EmbeddedKafkaZKBroker(1, false, 4, TOPIC);
+        broker.afterPropertiesSet();
+        producer = new KafkaProducer<>(Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (snapshot != null) {
+            snapshot.stop();
+        }
+        producer.close();
+        broker.destroy();
+    }
+
+    @Test
+    void start_ReplaysTopicBeforeReturning() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            send("item-" + i, String.valueOf(i % 2 == 0));
+        }
+        // the latest value of a key wins
+        send("item-1", "true");
+        producer.flush();
+
+        snapshot = new StockSnapshot(broker.getBrokersAsString(), TOPIC, 2, 10_000L);
+        snapshot.start();
+
+        assertThat(snapshot.loaded(), equalTo(true));
+        assertThat(snapshot.size(), equalTo(1000));
+        assertThat(snapshot.availability("item-0"), equalTo(true));
+        assertThat(snapshot.availability("item-1"), equalTo(true));
+        assertThat(snapshot.availability("item-3"), equalTo(false));
+        assertThat(snapshot.availability("unknown-item"), nullValue());
+    }
+
+    @Test
+    void start_EmptyTopicIsLoaded() {
+        snapshot = new StockSnapshot(broker.getBrokersAsString(), TOPIC, 4, 10_000L);
+        snapshot.start();
+
+        assertThat(snapshot.loaded(), equalTo(true));
+        assertThat(snapshot.size(), equalTo(0));
+    }
+
+    @Test
+    void tailsUpdatesAndTombstones() throws Exception {
+        send("item-1", "true");
+        producer.flush();
+        snapshot = new StockSnapshot(broker.getBrokersAsString(), TOPIC, 4, 10_000L);
+        snapshot.start();
+
+        send("item-1", "false");
+        send("item-2", "true");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> Boolean.FALSE.equals(snapshot.availability("item-1")));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> Boolean.TRUE.equals(snapshot.availability("item-2")));
+
+        send("item-2", null);
+        await().atMost(5, TimeUnit.SECONDS).until(() -> snapshot.availability("item-2") == null);
+    }
+
+    @Test
+    void checkpoint_RestartOnlyReplaysRecordsSinceIt() throws Exception {
+        Path checkpoint = tempDir.resolve("stock-snapshot");
+        for (int i = 0; i < 1000; i++) {
+            send("item-" + i, "true");
+        }
+        snapshot = checkpointed(checkpoint);
+        snapshot.start();
+        // stopping writes the final checkpoint
+        snapshot.stop();
+        assertThat(Files.exists(checkpoint), equalTo(true));
+
+        send("item-1", "false");
+        send("item-2", null);
+        send("item-new", "true");
+        snapshot = checkpointed(checkpoint);
+        snapshot.start();
+
+        assertThat(snapshot.loaded(), equalTo(true));
+        assertThat(snapshot.restored(), equalTo(1000));
+        assertThat(snapshot.size(), equalTo(1000));
+        assertThat(snapshot.availability("item-0"), equalTo(true));
+        assertThat(snapshot.availability("item-1"), equalTo(false));
+        assertThat(snapshot.availability("item-2"), nullValue());
+        assertThat(snapshot.availability("item-new"), equalTo(true));
+    }
+
+    @Test
+    void checkpoint_TruncatedFileReplaysTopicFromTheBeginning() throws Exception {
+        Path checkpoint = tempDir.resolve("stock-snapshot");
+        for (int i = 0; i < 1000; i++) {
+            send("item-" + i, "true");
+        }
+        snapshot = checkpointed(checkpoint);
+        snapshot.start();
+        snapshot.stop();
+        byte[] bytes = Files.readAllBytes(checkpoint);
+        Files.write(checkpoint, Arrays.copyOf(bytes, bytes.length / 2));
+
+        send("item-1", "false");
+        snapshot = checkpointed(checkpoint);
+        snapshot.start();
+
+        assertThat(snapshot.loaded(), equalTo(true));
+        assertThat(snapshot.restored(), equalTo(0));
+        assertThat(snapshot.size(), equalTo(1000));
+        assertThat(snapshot.availability("item-1"), equalTo(false));
+    }
+
+    @Test
+    void checkpoint_ExpiredIsIgnored() throws Exception {
+        Path checkpoint = tempDir.resolve("stock-snapshot");
+        send("item-1", "true");
+        snapshot = checkpointed(checkpoint);
+        snapshot.start();
+        snapshot.stop();
+
+        snapshot = new StockSnapshot(broker.getBrokersAsString(), TOPIC, 4, 10_000L, checkpoint, 60_000L, -1L);
+        snapshot.start();
+
+        assertThat(snapshot.restored(), equalTo(0));
+        assertThat(snapshot.availability("item-1"), equalTo(true));
+    }
+
+    @Test
+    void start_FailingReplayConsumerLeavesTheSnapshotNotLoaded() throws Exception {
+        send("item-1", "true");
+        AtomicInteger created = new AtomicInteger();
+        // the first consumer only reads the partitions, every replay consumer fails
+        snapshot = new StockSnapshot(() -> created.getAndIncrement() == 0 ? consumer() : failingConsumer(), TOPIC, 1, 2_500L,
+                null, 0L, 0L, System::currentTimeMillis);
+        snapshot.start();
+
+        assertThat(snapshot.loaded(), equalTo(false));
+        assertThat(created.get(), greaterThan(2));
+    }
+
+    @Test
+    void start_FailedReplayConsumerIsRestartedAndKeepsTailing() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            send("item-" + i, "true");
+        }
+        AtomicInteger created = new AtomicInteger();
+        snapshot = new StockSnapshot(() -> created.getAndIncrement() == 1 ? failingConsumer() : consumer(), TOPIC, 1, 10_000L,
+                null, 0L, 0L, System::currentTimeMillis);
+        snapshot.start();
+
+        assertThat(snapshot.loaded(), equalTo(true));
+        assertThat(snapshot.size(), equalTo(1000));
+        assertThat(created.get(), equalTo(3));
+
+        send("item-1", "false");
+        await().atMost(5, TimeUnit.SECONDS).until(() -> Boolean.FALSE.equals(snapshot.availability("item-1")));
+    }
+
+    private Consumer<String, String> consumer() {
+        return new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false,
+                ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+                ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class));
+    }
+
+    private Consumer<String, String> failingConsumer() {
+        Consumer<String, String> consumer = spy(consumer());
+        doThrow(new KafkaException("Broker connection lost")).when(consumer).poll(any(Duration.class));
+        return consumer;
+    }
+
+    private StockSnapshot checkpointed(Path checkpoint) {
+        return new StockSnapshot(broker.getBrokersAsString(), TOPIC, 4, 10_000L, checkpoint, 60_000L, 60_000L);
+    }
+
+    private void send(String item, String availability) throws Exception {
+        producer.send(new ProducerRecord<>(TOPIC, item, availability)).get();
+    }
+}
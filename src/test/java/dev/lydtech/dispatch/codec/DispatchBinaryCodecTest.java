@@ -0,0 +1,85 @@
+package dev.lydtech.dispatch.codec;
+
+import dev.lydtech.dispatch.message.DispatchCompleted;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DispatchBinaryCodecTest {
+
+    @Test
+    void roundTrip_EveryMessageType() {
+        OrderCreated orderCreated = new OrderCreated(randomUUID(), "item-1");
+        DispatchPreparing dispatchPreparing = new DispatchPreparing(randomUUID());
+        DispatchCompleted dispatchCompleted = new DispatchCompleted(randomUUID(), "2024-05-01T10:15:30.123");
+        OrderDispatched orderDispatched = new OrderDispatched(randomUUID(), randomUUID(), "Dispatched: item-1");
+
+        assertThat(DispatchBinaryCodec.decode(DispatchBinaryCodec.encode(orderCreated)), equalTo(orderCreated));
+        assertThat(DispatchBinaryCodec.decode(DispatchBinaryCodec.encode(dispatchPreparing)), equalTo(dispatchPreparing));
+        assertThat(DispatchBinaryCodec.decode(DispatchBinaryCodec.encode(dispatchCompleted)), equalTo(dispatchCompleted));
+        assertThat(DispatchBinaryCodec.decode(DispatchBinaryCodec.encode(orderDispatched)), equalTo(orderDispatched));
+    }
+
+    @Test
+    void roundTrip_NullsAndNonAsciiText() {
+        OrderDispatched orderDispatched = new OrderDispatched(randomUUID(), null, "Dispatched: café 📦");
+        OrderCreated orderCreated = new OrderCreated(null, null);
+
+        assertThat(DispatchBinaryCodec.decode(DispatchBinaryCodec.encode(orderDispatched)), equalTo(orderDispatched));
+        assertThat(DispatchBinaryCodec.decode(DispatchBinaryCodec.encode(orderCreated)), equalTo(orderCreated));
+    }
+
+    @Test
+    void encode_UuidIsSixteenRawBytes() {
+        byte[] encoded = DispatchBinaryCodec.encode(new DispatchPreparing(randomUUID()));
+
+        // header, presence byte, two longs
+        assertThat(encoded.length, equalTo(3 + 1 + 16));
+        assertThat(encoded[0], equalTo(DispatchBinaryCodec.MAGIC));
+    }
+
+    @Test
+    void decode_IgnoresFieldsAppendedByLaterWriters() {
+        OrderCreated orderCreated = new OrderCreated(randomUUID(), "item-1");
+        byte[] encoded = DispatchBinaryCodec.encode(orderCreated);
+        byte[] extended = Arrays.copyOf(encoded, encoded.length + 4);
+
+        assertThat(DispatchBinaryCodec.decode(extended), equalTo(orderCreated));
+    }
+
+    @Test
+    void decode_ReadsLaterVersionIgnoringAppendedFields() {
+        OrderCreated orderCreated = new OrderCreated(randomUUID(), "item-1");
+        byte[] encoded = DispatchBinaryCodec.encode(orderCreated);
+        byte[] laterVersion = Arrays.copyOf(encoded, encoded.length + 5);
+        laterVersion[1] = (byte) (DispatchBinaryCodec.VERSION + 1);
+        laterVersion[encoded.length] = 5;
+
+        assertThat(DispatchBinaryCodec.decode(laterVersion), equalTo(orderCreated));
+    }
+
+    @Test
+    void decode_RejectsInvalidVersionAndTruncatedPayload() {
+        byte[] encoded = DispatchBinaryCodec.encode(new OrderCreated(randomUUID(), "item-1"));
+        byte[] noVersion = encoded.clone();
+        noVersion[1] = 0;
+
+        assertThrows(SerializationException.class, () -> DispatchBinaryCodec.decode(noVersion));
+        assertThrows(SerializationException.class, () -> DispatchBinaryCodec.decode(Arrays.copyOf(encoded, encoded.length - 2)));
+        assertThrows(SerializationException.class, () -> DispatchBinaryCodec.decode("{\"orderId\":null}".getBytes()));
+    }
+
+    @Test
+    void encode_RejectsUnknownType() {
+        assertThrows(SerializationException.class, () -> DispatchBinaryCodec.encode("not a dispatch message"));
+    }
+}
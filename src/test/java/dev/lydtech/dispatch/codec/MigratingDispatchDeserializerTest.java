@@ -0,0 +1,63 @@
+package dev.lydtech.dispatch.codec;
+
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Map;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class MigratingDispatchDeserializerTest {
+
+    private MigratingDispatchDeserializer deserializer;
+
+    @BeforeEach
+    void setUp() {
+        deserializer = new MigratingDispatchDeserializer();
+        deserializer.configure(Map.of(
+                JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName(),
+                JsonDeserializer.TRUSTED_PACKAGES, "dev.lydtech.dispatch.message"), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deserializer.close();
+    }
+
+    @Test
+    void deserialize_Json() {
+        OrderDispatched orderDispatched = new OrderDispatched(randomUUID(), randomUUID(), "Dispatched: item-1");
+        RecordHeaders headers = new RecordHeaders();
+        try (JsonSerializer<Object> jsonSerializer = new JsonSerializer<>()) {
+            byte[] json = jsonSerializer.serialize("order.dispatched", headers, orderDispatched);
+
+            assertThat(deserializer.deserialize("order.dispatched", headers, json), equalTo(orderDispatched));
+        }
+    }
+
+    @Test
+    void deserialize_JsonWithoutTypeHeaderUsesDefaultType() {
+        OrderCreated orderCreated = new OrderCreated(randomUUID(), "item-1");
+        try (JsonSerializer<Object> jsonSerializer = new JsonSerializer<>()) {
+            byte[] json = jsonSerializer.serialize("order.created", orderCreated);
+
+            assertThat(deserializer.deserialize("order.created", new RecordHeaders(), json), equalTo(orderCreated));
+        }
+    }
+
+    @Test
+    void deserialize_Binary() {
+        OrderCreated orderCreated = new OrderCreated(randomUUID(), "item-1");
+        byte[] binary = new DispatchBinarySerializer().serialize("order.created", orderCreated);
+
+        assertThat(deserializer.deserialize("order.created", new RecordHeaders(), binary), equalTo(orderCreated));
+    }
+}
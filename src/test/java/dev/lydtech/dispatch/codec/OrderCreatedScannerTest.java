@@ -0,0 +1,122 @@
+package dev.lydtech.dispatch.codec;
+
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderCreated;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class OrderCreatedScannerTest {
+
+    private final OrderCreatedScanner scanner = new OrderCreatedScanner();
+
+    @Test
+    void scan_Json() {
+        UUID orderId = randomUUID();
+        try (JsonSerializer<Object> jsonSerializer = new JsonSerializer<>()) {
+            byte[] json = jsonSerializer.serialize("order.created", new OrderCreated(orderId, "item-€1"));
+
+            assertThat(scanner.scan(json), equalTo(true));
+            assertThat(new UUID(scanner.orderIdMsb(), scanner.orderIdLsb()), equalTo(orderId));
+            assertThat(scanner.item(), equalTo("item-€1"));
+        }
+    }
+
+    @Test
+    void scan_Binary() {
+        UUID orderId = randomUUID();
+        byte[] binary = DispatchBinaryCodec.encode(new OrderCreated(orderId, "item-1"));
+
+        assertThat(scanner.scan(binary), equalTo(true));
+        assertThat(new UUID(scanner.orderIdMsb(), scanner.orderIdLsb()), equalTo(orderId));
+        assertThat(scanner.item(), equalTo("item-1"));
+
+        byte[] laterVersion = Arrays.copyOf(binary, binary.length + 3);
+        laterVersion[1] = (byte) (DispatchBinaryCodec.VERSION + 1);
+        assertThat(scanner.scan(laterVersion), equalTo(true));
+        assertThat(new UUID(scanner.orderIdMsb(), scanner.orderIdLsb()), equalTo(orderId));
+        assertThat(scanner.item(), equalTo("item-1"));
+
+        assertThat(scanner.scan(DispatchBinaryCodec.encode(new OrderCreated(null, null))), equalTo(true));
+        assertThat(scanner.hasOrderId(), equalTo(false));
+        assertThat(scanner.item(), nullValue());
+    }
+
+    @Test
+    void scan_JsonSkipsOtherFieldsAndTakesTheLastRepeat() {
+        String json = " { \"notes\" : {\"orderId\": \"x\", \"list\": [1, \"]\", {}]},\"item\":\"first\", \"quantity\": -1.5e3,"
+                + " \"orderId\":\"8F0B4A0C-1D2E-4F3A-9B8C-7D6E5F4A3B2C\", \"gift\" : true, \"item\" : \"second\" }\n";
+
+        assertThat(scanner.scan(bytes(json)), equalTo(true));
+        assertThat(new UUID(scanner.orderIdMsb(), scanner.orderIdLsb()), equalTo(UUID.fromString("8f0b4a0c-1d2e-4f3a-9b8c-7d6e5f4a3b2c")));
+        assertThat(scanner.item(), equalTo("second"));
+    }
+
+    @Test
+    void scan_JsonNullsAndMissingFields() {
+        assertThat(scanner.scan(bytes("{\"orderId\":null,\"item\":null}")), equalTo(true));
+        assertThat(scanner.hasOrderId(), equalTo(false));
+        assertThat(scanner.hasItem(), equalTo(false));
+
+        assertThat(scanner.scan(bytes("{}")), equalTo(true));
+        assertThat(scanner.hasOrderId(), equalTo(false));
+        assertThat(scanner.hasItem(), equalTo(false));
+    }
+
+    @Test
+    void scan_NotSureOfWhatJacksonWouldRead() {
+        String orderId = randomUUID().toString();
+        // escapes, a non canonical id, an item Jackson would coerce, and malformed documents
+        assertThat(scanner.scan(bytes("{\"orderId\":\"" + orderId + "\",\"item\":\"item\\u002d1\"}")), equalTo(false));
+        assertThat(scanner.scan(bytes("{\"order\\u0049d\":\"" + orderId + "\"}")), equalTo(false));
+        assertThat(scanner.scan(bytes("{\"orderId\":\"" + orderId.replace("-", "") + "\"}")), equalTo(false));
+        assertThat(scanner.scan(bytes("{\"orderId\":\"" + orderId + "\",\"item\":42}")), equalTo(false));
+        assertThat(scanner.scan(bytes("[\"" + orderId + "\"]")), equalTo(false));
+        assertThat(scanner.scan(bytes("{\"orderId\":\"" + orderId + "\",\"item\":\"item-1\"} trailing")), equalTo(false));
+        assertThat(scanner.scan(bytes("")), equalTo(false));
+        assertThat(scanner.scan(null), equalTo(false));
+        // another binary message type
+        assertThat(scanner.scan(DispatchBinaryCodec.encode(new DispatchPreparing(randomUUID()))), equalTo(false));
+    }
+
+    @Test
+    void scan_SkippedValuesJacksonWouldReject() {
+        String fields = "{\"orderId\":\"" + randomUUID() + "\",\"item\":\"item-1\",\"extra\":";
+        assertThat(scanner.scan(bytes(fields + "true,\"more\":[0,-0.5e-3,\"\\u00e9\\n\",null,false,{}]}")), equalTo(true));
+
+        for (String extra : new String[]{"tru", "nul", "truex", "01", "+1", "1.", "-", "NaN", "[1,]", "{\"a\":1,}", "[1 2]",
+                "{1:2}", "\"\\q\"", "\"tab\tinside\"", "[".repeat(65) + "]".repeat(65)}) {
+            assertThat(extra, scanner.scan(bytes(fields + extra + "}")), equalTo(false));
+        }
+        // overlong UTF-8 in a skipped string
+        byte[] overlong = bytes(fields + "\"..\"}");
+        overlong[overlong.length - 4] = (byte) 0xC0;
+        overlong[overlong.length - 3] = (byte) 0x80;
+        assertThat(scanner.scan(overlong), equalTo(false));
+    }
+
+    @Test
+    void scan_RejectsEveryTruncation() {
+        byte[] json = bytes("{\"orderId\":\"" + randomUUID() + "\",\"item\":\"item-1\",\"notes\":{\"a\":[1,2]}}");
+        byte[] binary = DispatchBinaryCodec.encode(new OrderCreated(randomUUID(), "item-1"));
+
+        for (int length = 0; length < json.length; length++) {
+            assertThat("JSON cut at " + length, scanner.scan(Arrays.copyOf(json, length)), equalTo(false));
+        }
+        for (int length = 0; length < binary.length; length++) {
+            assertThat("binary cut at " + length, scanner.scan(Arrays.copyOf(binary, length)), equalTo(false));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
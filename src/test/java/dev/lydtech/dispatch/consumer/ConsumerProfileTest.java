@@ -0,0 +1,30 @@
+package dev.lydtech.dispatch.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConsumerProfileTest {
+
+    @Test
+    void of_AcceptsPropertyNames() {
+        assertThat(ConsumerProfile.of("low-latency"), equalTo(ConsumerProfile.LOW_LATENCY));
+        assertThat(ConsumerProfile.of("balanced"), equalTo(ConsumerProfile.BALANCED));
+        assertThat(ConsumerProfile.of("HIGH-THROUGHPUT"), equalTo(ConsumerProfile.HIGH_THROUGHPUT));
+        assertThrows(IllegalArgumentException.class, () -> ConsumerProfile.of("turbo"));
+    }
+
+    @Test
+    void config_HighThroughputWaitsForFullerFetches() {
+        Map<String, Object> config = ConsumerProfile.HIGH_THROUGHPUT.config();
+
+        assertThat(config.get(ConsumerConfig.FETCH_MIN_BYTES_CONFIG), equalTo(64 * 1024));
+        assertThat(config.get(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG), equalTo(500));
+        assertThat(config.get(ConsumerConfig.MAX_POLL_RECORDS_CONFIG), equalTo(1000));
+    }
+}
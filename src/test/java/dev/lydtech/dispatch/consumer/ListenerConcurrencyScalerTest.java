@@ -0,0 +1,86 @@
+package dev.lydtech.dispatch.consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ListenerConcurrencyScalerTest {
+
+    private KafkaListenerEndpointRegistry registryMock;
+    private ConcurrentMessageListenerContainer<?, ?> containerMock;
+    private AtomicInteger partitions;
+    private ListenerConcurrencyScaler scaler;
+
+    @BeforeEach
+    void setUp() {
+        registryMock = mock(KafkaListenerEndpointRegistry.class);
+        containerMock = mock(ConcurrentMessageListenerContainer.class);
+        when(registryMock.getListenerContainer(ListenerConcurrencyScaler.LISTENER_ID)).thenReturn(containerMock);
+        when(containerMock.isRunning()).thenReturn(true);
+        partitions = new AtomicInteger(4);
+        scaler = new ListenerConcurrencyScaler(registryMock, partitions::get, null, 2, 6, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scaler.close();
+    }
+
+    @Test
+    void targetConcurrency_FollowsPartitionCountWithinLimits() {
+        assertThat(scaler.targetConcurrency(), equalTo(4));
+        partitions.set(1);
+        assertThat(scaler.targetConcurrency(), equalTo(2));
+        partitions.set(24);
+        assertThat(scaler.targetConcurrency(), equalTo(6));
+    }
+
+    @Test
+    void targetConcurrency_KeepsCurrentWhenPartitionCountUnavailable() {
+        assertThat(scaler.targetConcurrency(), equalTo(4));
+        ListenerConcurrencyScaler failing = new ListenerConcurrencyScaler(registryMock, () -> {
+            throw new IllegalStateException("broker down");
+        }, null, 3, 6, 0);
+        assertThat(failing.targetConcurrency(), equalTo(3));
+        failing.close();
+    }
+
+    @Test
+    void rescale_RestartsContainerWhenPartitionsAdded() {
+        when(containerMock.getConcurrency()).thenReturn(4);
+        partitions.set(6);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(containerMock).stop(any(Runnable.class));
+
+        scaler.rescale();
+
+        verify(containerMock, timeout(5000)).setConcurrency(6);
+        verify(containerMock, timeout(5000)).start();
+    }
+
+    @Test
+    void rescale_NoChange() {
+        when(containerMock.getConcurrency()).thenReturn(4);
+
+        scaler.rescale();
+
+        verify(containerMock, never()).stop(any(Runnable.class));
+    }
+
+    @Test
+    void constructor_RejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new ListenerConcurrencyScaler(registryMock, partitions::get, null, 4, 2, 0));
+    }
+}
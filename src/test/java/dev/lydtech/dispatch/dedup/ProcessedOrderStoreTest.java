@@ -0,0 +1,105 @@
+package dev.lydtech.dispatch.dedup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class ProcessedOrderStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void markProcessed_RemembersOrder() {
+        ProcessedOrderStore store = new ProcessedOrderStore(10);
+        UUID orderId = randomUUID();
+
+        assertThat(store.markProcessed(orderId), equalTo(true));
+        assertThat(store.markProcessed(orderId), equalTo(false));
+        assertThat(store.contains(orderId), equalTo(true));
+        assertThat(store.contains(randomUUID()), equalTo(false));
+        assertThat(store.size(), equalTo(1));
+    }
+
+    @Test
+    void markProcessed_EvictsOldestOnceFull() {
+        ProcessedOrderStore store = new ProcessedOrderStore(1000);
+        List<UUID> orderIds = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            UUID orderId = randomUUID();
+            orderIds.add(orderId);
+            store.markProcessed(orderId);
+        }
+
+        assertThat(store.size(), equalTo(1000));
+        // every id still held must stay reachable after the deletions shifted the table
+        for (int i = 0; i < orderIds.size(); i++) {
+            assertThat(store.contains(orderIds.get(i)), equalTo(i >= 4000));
+        }
+    }
+
+    @Test
+    void file_SurvivesRestart() {
+        Path file = tempDir.resolve("processed-orders");
+        UUID first = randomUUID();
+        UUID second = randomUUID();
+        try (ProcessedOrderStore store = new ProcessedOrderStore(10, file)) {
+            store.markProcessed(first);
+            store.markProcessed(second);
+        }
+
+        try (ProcessedOrderStore store = new ProcessedOrderStore(10, file)) {
+            assertThat(store.contains(first), equalTo(true));
+            assertThat(store.contains(second), equalTo(true));
+            assertThat(store.size(), equalTo(2));
+        }
+    }
+
+    @Test
+    void file_IsCompactedToTheRememberedOrders() throws IOException {
+        Path file = tempDir.resolve("processed-orders");
+        List<UUID> orderIds = new ArrayList<>();
+        try (ProcessedOrderStore store = new ProcessedOrderStore(100, file)) {
+            for (int i = 0; i < 1000; i++) {
+                UUID orderId = randomUUID();
+                orderIds.add(orderId);
+                store.markProcessed(orderId);
+            }
+        }
+        assertThat(Files.size(file), lessThanOrEqualTo(2L * 100 * 16));
+
+        try (ProcessedOrderStore store = new ProcessedOrderStore(100, file)) {
+            assertThat(store.size(), equalTo(100));
+            assertThat(store.contains(orderIds.get(999)), equalTo(true));
+            assertThat(store.contains(orderIds.get(899)), equalTo(false));
+        }
+    }
+
+    @Test
+    void file_TornTrailingRecordIsDropped() throws IOException {
+        Path file = tempDir.resolve("processed-orders");
+        UUID orderId = randomUUID();
+        try (ProcessedOrderStore store = new ProcessedOrderStore(10, file)) {
+            store.markProcessed(orderId);
+        }
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (ProcessedOrderStore store = new ProcessedOrderStore(10, file)) {
+            assertThat(store.size(), equalTo(1));
+            assertThat(store.contains(orderId), equalTo(true));
+        }
+        assertThat(Files.size(file), equalTo(16L));
+    }
+}
@@ -0,0 +1,104 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.lanes.RetryingRecordProcessor;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.prefilter.PreFiltered;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+import java.util.List;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OrderCreatedBatchHandlerTest {
+
+    private OrderCreatedBatchHandler handler;
+    private DispatchService dispatchServiceMock;
+    private RetryingRecordProcessor retryingRecordProcessorMock;
+
+    @BeforeEach
+    void setUp() {
+        dispatchServiceMock = mock(DispatchService.class);
+        retryingRecordProcessorMock = mock(RetryingRecordProcessor.class);
+        handler = new OrderCreatedBatchHandler(dispatchServiceMock, retryingRecordProcessorMock, new DispatchMetrics(new SimpleMeterRegistry()), false);
+    }
+
+    @Test
+    void listen_Success() {
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1));
+        handler.listen(records);
+        verify(dispatchServiceMock, times(1)).processBatch(records);
+    }
+
+    @Test
+    void listen_ServiceReportsFailedRecord() {
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1));
+        doThrow(new BatchListenerFailedException("Failed to process order", new RetryableException("Service failure"), 1))
+                .when(dispatchServiceMock).processBatch(records);
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(records));
+        assertThat(exception.getIndex(), equalTo(1));
+        verify(dispatchServiceMock, times(1)).processBatch(records);
+        verifyNoInteractions(retryingRecordProcessorMock);
+    }
+
+    @Test
+    void listen_Transactional_FailedRecordRecoveredInsideTheBatch() {
+        handler = new OrderCreatedBatchHandler(dispatchServiceMock, retryingRecordProcessorMock, new DispatchMetrics(new SimpleMeterRegistry()), true);
+        ConsumerRecord<String, OrderCreated> failed = buildRecord(1);
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), failed, buildRecord(2));
+        doThrow(new BatchListenerFailedException("Failed to process order", new RetryableException("Service failure"), 1))
+                .when(dispatchServiceMock).processBatch(records);
+        when(retryingRecordProcessorMock.process(eq(failed), any())).thenReturn(true);
+
+        handler.listen(records);
+
+        verify(retryingRecordProcessorMock, times(1)).process(eq(failed), any());
+        verify(dispatchServiceMock, times(1)).processBatch(records.subList(2, 3));
+    }
+
+    @Test
+    void listen_Transactional_DeadLetterFailureRollsBackTheBatch() {
+        handler = new OrderCreatedBatchHandler(dispatchServiceMock, retryingRecordProcessorMock, new DispatchMetrics(new SimpleMeterRegistry()), true);
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(buildRecord(0), buildRecord(1));
+        doThrow(new BatchListenerFailedException("Failed to process order", new RetryableException("Service failure"), 0))
+                .when(dispatchServiceMock).processBatch(records);
+        when(retryingRecordProcessorMock.process(eq(records.get(0)), any())).thenReturn(false);
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(records));
+        assertThat(exception.getIndex(), equalTo(0));
+        verify(dispatchServiceMock, times(1)).processBatch(any());
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void listen_PreFilteredRecordsLeftOutAndFailureIndexGivenInThePoll() {
+        ConsumerRecord<String, OrderCreated> dropped = (ConsumerRecord) new ConsumerRecord<>("order.created", 0, 1L, "key", PreFiltered.DUPLICATE);
+        List<ConsumerRecord<String, OrderCreated>> polled = List.of(buildRecord(0), dropped, buildRecord(2));
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(polled.get(0), polled.get(2));
+        doThrow(new BatchListenerFailedException("Failed to process order", new RetryableException("Service failure"), 1))
+                .when(dispatchServiceMock).processBatch(records);
+
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> handler.listen(polled));
+        assertThat(exception.getIndex(), equalTo(2));
+        verify(dispatchServiceMock, times(1)).processBatch(records);
+    }
+
+    private ConsumerRecord<String, OrderCreated> buildRecord(long offset) {
+        return new ConsumerRecord<>("order.created", 0, offset, randomUUID().toString(),
+                TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString()));
+    }
+}
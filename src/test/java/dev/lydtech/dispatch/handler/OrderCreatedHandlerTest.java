@@ -2,9 +2,12 @@ package dev.lydtech.dispatch.handler;
 
 import dev.lydtech.dispatch.client.exception.NotRetryableException;
 import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.logging.HotPathLog;
 import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
 import dev.lydtech.dispatch.service.DispatchService;
 import dev.lydtech.dispatch.util.TestEventData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -22,14 +25,14 @@ class OrderCreatedHandlerTest {
     @BeforeEach
     void setUp() {
         dispatchServiceMock = mock(DispatchService.class);
-        handler = new OrderCreatedHandler(dispatchServiceMock);
+        handler = new OrderCreatedHandler(dispatchServiceMock, new DispatchMetrics(new SimpleMeterRegistry()), new HotPathLog());
     }
 
     @Test
     void listen_Success() throws Exception {
         String key = randomUUID().toString();
         OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
-        handler.listen(0 , key, testEvent);
+        handler.listen(0, key, 0L, testEvent);
         verify(dispatchServiceMock, times(1)).process(key, testEvent);
     }
 
@@ -39,7 +42,7 @@ class OrderCreatedHandlerTest {
         OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
         doThrow(new RuntimeException("Service failure")).when(dispatchServiceMock).process(key, testEvent);
 
-        Exception exception = assertThrows(NotRetryableException.class, () -> handler.listen(0 , key, testEvent));
+        Exception exception = assertThrows(NotRetryableException.class, () -> handler.listen(0, key, 0L, testEvent));
         assertThat(exception.getMessage(), equalTo("java.lang.RuntimeException: Service failure"));
         verify(dispatchServiceMock, times(1)).process(key, testEvent);
     }
@@ -50,7 +53,7 @@ class OrderCreatedHandlerTest {
         OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
         doThrow(new RetryableException("Service failure")).when(dispatchServiceMock).process(key, testEvent);
 
-        Exception exception = assertThrows(RetryableException.class, () -> handler.listen(0, key, testEvent));
+        Exception exception = assertThrows(RetryableException.class, () -> handler.listen(0, key, 0L, testEvent));
         assertThat(exception.getMessage(), equalTo("Service failure"));
         verify(dispatchServiceMock, times(1)).process(key, testEvent);
     }
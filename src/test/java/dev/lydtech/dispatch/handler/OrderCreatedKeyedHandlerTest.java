@@ -0,0 +1,110 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.lanes.KeyedLaneExecutor;
+import dev.lydtech.dispatch.lanes.RetryingRecordProcessor;
+import dev.lydtech.dispatch.logging.HotPathLog;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.util.TestEventData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.util.backoff.FixedBackOff;
+
+import static java.util.UUID.randomUUID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OrderCreatedKeyedHandlerTest {
+
+    private DispatchService dispatchServiceMock;
+    private KeyedLaneExecutor keyedLaneExecutorMock;
+    private ConsumerRecordRecoverer recovererMock;
+    private Acknowledgment acknowledgmentMock;
+    private ConsumerRecord<String, OrderCreated> record;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dispatchServiceMock = mock(DispatchService.class);
+        keyedLaneExecutorMock = mock(KeyedLaneExecutor.class);
+        recovererMock = mock(ConsumerRecordRecoverer.class);
+        acknowledgmentMock = mock(Acknowledgment.class);
+        record = new ConsumerRecord<>("order.created", 0, 0L, randomUUID().toString(),
+                TestEventData.buildOrderCreatedEvent(randomUUID(), "my-item"));
+        // the lane runs the task on the calling thread
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(keyedLaneExecutorMock).submit(any(), any(Runnable.class));
+    }
+
+    @Test
+    void listen_DispatchesOnTheLaneOfTheKeyThenAcknowledges() throws Exception {
+        handler(new RetryingRecordProcessor(new FixedBackOff(0L, 3L), recovererMock)).listen(record, acknowledgmentMock);
+
+        InOrder inOrder = inOrder(keyedLaneExecutorMock, dispatchServiceMock, acknowledgmentMock);
+        inOrder.verify(keyedLaneExecutorMock).submit(eq(record.key()), any(Runnable.class));
+        inOrder.verify(dispatchServiceMock).process(record.key(), record.value());
+        inOrder.verify(acknowledgmentMock).acknowledge();
+        verifyNoInteractions(recovererMock);
+    }
+
+    @Test
+    void listen_AcknowledgesOnlyOnceTheProcessorReturnsTrue() throws Exception {
+        RetryingRecordProcessor retryingRecordProcessorMock = mock(RetryingRecordProcessor.class);
+        when(retryingRecordProcessorMock.process(eq(record), any())).thenAnswer(invocation -> {
+            verify(acknowledgmentMock, never()).acknowledge();
+            return true;
+        });
+
+        handler(retryingRecordProcessorMock).listen(record, acknowledgmentMock);
+
+        verify(retryingRecordProcessorMock, times(1)).process(eq(record), any());
+        verify(acknowledgmentMock, times(1)).acknowledge();
+    }
+
+    @Test
+    void listen_NotAcknowledgedWhenTheProcessorReturnsFalse() throws Exception {
+        RetryingRecordProcessor retryingRecordProcessorMock = mock(RetryingRecordProcessor.class);
+        when(retryingRecordProcessorMock.process(eq(record), any())).thenReturn(false);
+
+        handler(retryingRecordProcessorMock).listen(record, acknowledgmentMock);
+
+        verify(acknowledgmentMock, never()).acknowledge();
+    }
+
+    @Test
+    void listen_DeadLetteredRecordIsAcknowledged() throws Exception {
+        doThrow(new NotRetryableException(new RuntimeException("Service failure"))).when(dispatchServiceMock).process(record.key(), record.value());
+
+        handler(new RetryingRecordProcessor(new FixedBackOff(0L, 3L), recovererMock)).listen(record, acknowledgmentMock);
+
+        InOrder inOrder = inOrder(recovererMock, acknowledgmentMock);
+        inOrder.verify(recovererMock).accept(eq(record), any(NotRetryableException.class));
+        inOrder.verify(acknowledgmentMock).acknowledge();
+    }
+
+    @Test
+    void listen_DeadLetterFailureLeavesTheOffsetUnacknowledged() throws Exception {
+        doThrow(new NotRetryableException(new RuntimeException("Service failure"))).when(dispatchServiceMock).process(record.key(), record.value());
+        doThrow(new KafkaException("Dead letter send failed")).when(recovererMock).accept(any(), any());
+
+        handler(new RetryingRecordProcessor(new FixedBackOff(0L, 3L), recovererMock)).listen(record, acknowledgmentMock);
+
+        verify(recovererMock, times(1)).accept(eq(record), any(NotRetryableException.class));
+        verify(acknowledgmentMock, never()).acknowledge();
+    }
+
+    private OrderCreatedKeyedHandler handler(RetryingRecordProcessor retryingRecordProcessor) {
+        return new OrderCreatedKeyedHandler(keyedLaneExecutorMock, new LaneRecordDispatcher(dispatchServiceMock, retryingRecordProcessor,
+                new DispatchMetrics(new SimpleMeterRegistry()), new HotPathLog()));
+    }
+}
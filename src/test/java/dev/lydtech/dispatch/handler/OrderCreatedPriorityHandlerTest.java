@@ -0,0 +1,104 @@
+package dev.lydtech.dispatch.handler;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.lanes.OrderPriorityClassifier;
+import dev.lydtech.dispatch.lanes.PriorityLaneScheduler;
+import dev.lydtech.dispatch.lanes.RetryingRecordProcessor;
+import dev.lydtech.dispatch.logging.HotPathLog;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.metrics.DispatchMetrics;
+import dev.lydtech.dispatch.service.DispatchService;
+import dev.lydtech.dispatch.util.TestEventData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static java.util.UUID.randomUUID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OrderCreatedPriorityHandlerTest {
+
+    private DispatchService dispatchServiceMock;
+    private PriorityLaneScheduler priorityLaneSchedulerMock;
+    private ConsumerRecordRecoverer recovererMock;
+    private Acknowledgment acknowledgmentMock;
+    private OrderCreatedPriorityHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dispatchServiceMock = mock(DispatchService.class);
+        priorityLaneSchedulerMock = mock(PriorityLaneScheduler.class);
+        recovererMock = mock(ConsumerRecordRecoverer.class);
+        acknowledgmentMock = mock(Acknowledgment.class);
+        // the scheduler runs the task on the calling thread
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(2).run();
+            return null;
+        }).when(priorityLaneSchedulerMock).submit(anyInt(), anyLong(), any(Runnable.class));
+        OrderPriorityClassifier classifier = new OrderPriorityClassifier(List.of("express", "standard", "bulk"), "standard",
+                "dispatch-priority", "bulk=bulk-");
+        LaneRecordDispatcher laneRecordDispatcher = new LaneRecordDispatcher(dispatchServiceMock,
+                new RetryingRecordProcessor(new FixedBackOff(0L, 3L), recovererMock), new DispatchMetrics(new SimpleMeterRegistry()), new HotPathLog());
+        handler = new OrderCreatedPriorityHandler(classifier, priorityLaneSchedulerMock, laneRecordDispatcher);
+    }
+
+    @Test
+    void listen_QueuesOnTheClassifiedLaneThenAcknowledges() throws Exception {
+        ConsumerRecord<String, OrderCreated> express = buildRecord(0, "item-1");
+        express.headers().add("dispatch-priority", "express".getBytes(StandardCharsets.UTF_8));
+        ConsumerRecord<String, OrderCreated> bulk = buildRecord(1, "bulk-item");
+        ConsumerRecord<String, OrderCreated> standard = buildRecord(2, "item-2");
+
+        handler.listen(express, acknowledgmentMock);
+        handler.listen(bulk, acknowledgmentMock);
+        handler.listen(standard, acknowledgmentMock);
+
+        verify(priorityLaneSchedulerMock).submit(eq(0), eq(express.timestamp()), any(Runnable.class));
+        verify(priorityLaneSchedulerMock).submit(eq(2), eq(bulk.timestamp()), any(Runnable.class));
+        verify(priorityLaneSchedulerMock).submit(eq(1), eq(standard.timestamp()), any(Runnable.class));
+        verify(dispatchServiceMock, times(1)).process(express.key(), express.value());
+        verify(acknowledgmentMock, times(3)).acknowledge();
+    }
+
+    @Test
+    void listen_DeadLetteredRecordIsAcknowledged() throws Exception {
+        ConsumerRecord<String, OrderCreated> record = buildRecord(0, "item-1");
+        doThrow(new NotRetryableException(new RuntimeException("Service failure"))).when(dispatchServiceMock).process(record.key(), record.value());
+
+        handler.listen(record, acknowledgmentMock);
+
+        InOrder inOrder = inOrder(recovererMock, acknowledgmentMock);
+        inOrder.verify(recovererMock).accept(eq(record), any(NotRetryableException.class));
+        inOrder.verify(acknowledgmentMock).acknowledge();
+    }
+
+    @Test
+    void listen_DeadLetterFailureLeavesTheOffsetUnacknowledged() throws Exception {
+        ConsumerRecord<String, OrderCreated> record = buildRecord(0, "item-1");
+        doThrow(new NotRetryableException(new RuntimeException("Service failure"))).when(dispatchServiceMock).process(record.key(), record.value());
+        doThrow(new KafkaException("Dead letter send failed")).when(recovererMock).accept(any(), any());
+
+        handler.listen(record, acknowledgmentMock);
+
+        verify(recovererMock, times(1)).accept(eq(record), any(NotRetryableException.class));
+        verify(acknowledgmentMock, never()).acknowledge();
+    }
+
+    private ConsumerRecord<String, OrderCreated> buildRecord(long offset, String item) {
+        return new ConsumerRecord<>("order.created", 0, offset, randomUUID().toString(),
+                TestEventData.buildOrderCreatedEvent(randomUUID(), item));
+    }
+}
@@ -0,0 +1,61 @@
+package dev.lydtech.dispatch.integration;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import dev.lydtech.dispatch.backpressure.BackpressureController;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubWiremock;
+import static java.util.UUID.randomUUID;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Runs the dispatch flows of DispatchOrderIntegrationTest with backpressure enabled and checks a pause stops the
+ * listener within the poll. Sampling is off, the test pauses the container the way BackpressureController does.
+ **/
+@TestPropertySource(properties = {"dispatch.backpressure.enabled=true", "dispatch.backpressure.sampleMs=0"})
+public class BackpressureDispatchOrderIntegrationTest extends DispatchOrderIntegrationTest {
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Test
+    public void testOrderDispatchFlow_PauseStopsTheRestOfThePoll() throws Exception {
+        WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/api/stock?item=slow-item"))
+                .willReturn(WireMock.aResponse().withStatus(200).withHeader("Content-Type", "text/plain").withBody("true").withFixedDelay(1000)));
+        stubWiremock("/api/stock?item=my-item", 200, "true");
+        MessageListenerContainer container = registry.getListenerContainer(BackpressureController.LISTENER_ID);
+
+        // paused while sending so the three records arrive in one poll, all on the partition of the key
+        container.pause();
+        await().atMost(5, TimeUnit.SECONDS).until(container::isPauseRequested);
+        String key = UUID.randomUUID().toString();
+        sendMessage("order.created", key, TestEventData.buildOrderCreatedEvent(randomUUID(), "slow-item"));
+        sendMessage("order.created", key, TestEventData.buildOrderCreatedEvent(randomUUID(), "my-item"));
+        sendMessage("order.created", key, TestEventData.buildOrderCreatedEvent(randomUUID(), "my-item"));
+        container.resume();
+
+        // pause while the first record waits on the stock service
+        await().atMost(5, TimeUnit.SECONDS).pollDelay(50, TimeUnit.MILLISECONDS)
+                .until(() -> WireMock.findAll(WireMock.getRequestedFor(WireMock.urlEqualTo("/api/stock?item=slow-item"))).size(), greaterThanOrEqualTo(1));
+        container.pause();
+
+        await().atMost(5, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(kafkaTestListener.orderDispatchedCounter::get, equalTo(1));
+        await().during(1, TimeUnit.SECONDS).atMost(2, TimeUnit.SECONDS)
+                .until(kafkaTestListener.orderDispatchedCounter::get, equalTo(1));
+
+        container.resume();
+        await().atMost(5, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(kafkaTestListener.orderDispatchedCounter::get, equalTo(3));
+    }
+}
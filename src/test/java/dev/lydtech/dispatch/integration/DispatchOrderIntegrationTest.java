@@ -54,9 +54,9 @@ public class DispatchOrderIntegrationTest {
     private final static String ORDER_CREATED_DLT_TOPIC = "order.created.DLT";
 
     @Autowired
-    private KafkaTemplate kafkaTemplate;
+    protected KafkaTemplate kafkaTemplate;
     @Autowired
-    private KafkaTestListener kafkaTestListener;
+    protected KafkaTestListener kafkaTestListener;
     @Autowired
     private EmbeddedKafkaBroker embeddedKafkaBroker;
     @Autowired
@@ -192,7 +192,7 @@ public class DispatchOrderIntegrationTest {
         assertThat(kafkaTestListener.dispatchCompletedCounter.get(), equalTo(0));
     }
 
-    private void sendMessage(String topic, String key, Object data) throws Exception {
+    protected void sendMessage(String topic, String key, Object data) throws Exception {
         kafkaTemplate.send(MessageBuilder
                 .withPayload(data)
                 .setHeader(KafkaHeaders.KEY, key)
@@ -0,0 +1,48 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubWiremock;
+import static java.util.UUID.randomUUID;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Runs the dispatch flows of DispatchOrderIntegrationTest with retry topics (order.created.retry-1000 and -2000)
+ * instead of retrying on the listener thread.
+ **/
+@TestPropertySource(properties = {
+        "dispatch.retry.nonBlocking=true",
+        "dispatch.retry.maxAttempts=3",
+        "dispatch.retry.initialDelayMs=1000",
+        "dispatch.retry.multiplier=2.0"})
+public class NonBlockingRetryDispatchOrderIntegrationTest extends DispatchOrderIntegrationTest {
+
+    @Test
+    public void testOrderDispatchFlow_RetryingOrderDoesNotBlockPartition() throws Exception {
+        stubWiremock("/api/stock?item=unhealthy-item", 503, "Service unavailable");
+        stubWiremock("/api/stock?item=healthy-item", 200, "true");
+
+        // same key, same partition: with in-thread retries the second order would wait for the first to be dead lettered
+        String key = UUID.randomUUID().toString();
+        OrderCreated retrying = TestEventData.buildOrderCreatedEvent(randomUUID(), "unhealthy-item");
+        OrderCreated healthy = TestEventData.buildOrderCreatedEvent(randomUUID(), "healthy-item");
+        sendMessage("order.created", key, retrying);
+        sendMessage("order.created", key, healthy);
+
+        await().atMost(1, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(() -> kafkaTestListener.orderDispatchedCounter.get(), equalTo(1));
+        assertThat(kafkaTestListener.orderCreatedDLTCounter.get(), equalTo(0));
+
+        await().atMost(6, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(() -> kafkaTestListener.orderCreatedDLTCounter.get(), equalTo(1));
+        assertThat(kafkaTestListener.orderDispatchedCounter.get(), equalTo(1));
+    }
+}
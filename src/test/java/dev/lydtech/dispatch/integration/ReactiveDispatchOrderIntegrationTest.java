@@ -0,0 +1,76 @@
+package dev.lydtech.dispatch.integration;
+
+import dev.lydtech.dispatch.reactive.ReactiveDispatchEngine;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.UUID.randomUUID;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Runs the dispatch flows of DispatchOrderIntegrationTest against the reactive engine.
+ **/
+@TestPropertySource(properties = "dispatch.engine=reactive")
+public class ReactiveDispatchOrderIntegrationTest extends DispatchOrderIntegrationTest {
+
+    @Autowired
+    private ReactiveDispatchEngine reactiveDispatchEngine;
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @BeforeEach
+    public void waitForReactiveAssignment() {
+        await().atMost(10, TimeUnit.SECONDS).pollDelay(100, TimeUnit.MILLISECONDS)
+                .until(reactiveDispatchEngine::assignedPartitions, equalTo(embeddedKafkaBroker.getPartitionsPerTopic()));
+    }
+
+    @Test
+    public void testOrderCreatedFlow_PoisonPillDeadLetteredWithItsBytes() throws Exception {
+        byte[] poison = "not an order".getBytes(StandardCharsets.UTF_8);
+        String key = randomUUID().toString();
+        Map<String, Object> producerProps = KafkaTestUtils.producerProps(embeddedKafkaBroker);
+        try (Producer<String, byte[]> producer = new KafkaProducer<>(producerProps, new StringSerializer(), new ByteArraySerializer())) {
+            producer.send(new ProducerRecord<>("order.created", key, poison)).get();
+        }
+
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("ReactivePoisonPillTest", "false", embeddedKafkaBroker);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        try (Consumer<String, byte[]> consumer = new KafkaConsumer<>(consumerProps, new StringDeserializer(), new ByteArrayDeserializer())) {
+            consumer.subscribe(List.of("order.created.DLT"));
+            ConsumerRecord<String, byte[]> deadLettered = await().atMost(10, TimeUnit.SECONDS)
+                    .until(() -> {
+                        for (ConsumerRecord<String, byte[]> record : consumer.poll(Duration.ofMillis(200))) {
+                            if (key.equals(record.key())) {
+                                return record;
+                            }
+                        }
+                        return null;
+                    }, Objects::nonNull);
+            assertThat(deadLettered.value(), equalTo(poison));
+        }
+    }
+}
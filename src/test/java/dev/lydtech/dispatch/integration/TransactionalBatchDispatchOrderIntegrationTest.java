@@ -0,0 +1,10 @@
+package dev.lydtech.dispatch.integration;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Exactly-once mode with one transaction per poll.
+ **/
+@TestPropertySource(properties = "dispatch.listener.mode=batch")
+public class TransactionalBatchDispatchOrderIntegrationTest extends TransactionalDispatchOrderIntegrationTest {
+}
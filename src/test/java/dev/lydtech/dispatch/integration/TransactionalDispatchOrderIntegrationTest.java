@@ -0,0 +1,25 @@
+package dev.lydtech.dispatch.integration;
+
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the dispatch flows of DispatchOrderIntegrationTest in exactly-once mode. The test listener reads committed,
+ * so the zero counts asserted for the failure flows also cover events from rolled back attempts.
+ **/
+@TestPropertySource(properties = "dispatch.producer.transactional=true")
+@EmbeddedKafka(controlledShutdown = true, brokerProperties = {"transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
+public class TransactionalDispatchOrderIntegrationTest extends DispatchOrderIntegrationTest {
+
+    @Override
+    protected void sendMessage(String topic, String key, Object data) {
+        // the shared template is transactional in this mode
+        kafkaTemplate.executeInTransaction(operations -> operations.send(MessageBuilder
+                .withPayload(data)
+                .setHeader(KafkaHeaders.KEY, key)
+                .setHeader(KafkaHeaders.TOPIC, topic)
+                .build()));
+    }
+}
@@ -30,4 +30,9 @@ public class WiremockUtils {
         }
 
     }
+
+    public static void stubWiremockJson(String url, int httpStatusResponse, String body) {
+        WireMock.stubFor(WireMock.get(WireMock.urlEqualTo(url))
+                .willReturn(WireMock.aResponse().withStatus(httpStatusResponse).withHeader("Content-Type", "application/json").withBody(body)));
+    }
 }
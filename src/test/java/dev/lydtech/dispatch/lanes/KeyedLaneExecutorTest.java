@@ -0,0 +1,99 @@
+package dev.lydtech.dispatch.lanes;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class KeyedLaneExecutorTest {
+
+    private KeyedLaneExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void submit_SameKeyRunsInSubmissionOrder() {
+        executor = new KeyedLaneExecutor(8, 100, Executors.defaultThreadFactory());
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < 50; i++) {
+            int sequence = i;
+            submit("order-1", () -> processed.add(sequence));
+        }
+
+        await().atMost(2, TimeUnit.SECONDS).until(processed::size, equalTo(50));
+        for (int i = 0; i < 50; i++) {
+            assertThat(processed.get(i), equalTo(i));
+        }
+    }
+
+    @Test
+    void submit_DifferentLanesRunInParallel() throws Exception {
+        executor = new KeyedLaneExecutor(8, 100, Executors.defaultThreadFactory());
+        String blockedKey = "order-1";
+        String otherKey = keyOnAnotherLane(blockedKey);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+
+        submit(blockedKey, () -> awaitQuietly(release));
+        submit(otherKey, otherDone::countDown);
+
+        assertThat(otherDone.await(2, TimeUnit.SECONDS), equalTo(true));
+        release.countDown();
+    }
+
+    @Test
+    void submit_BlocksOnceMaxInFlightIsReached() throws Exception {
+        executor = new KeyedLaneExecutor(2, 2, Executors.defaultThreadFactory());
+        CountDownLatch release = new CountDownLatch(1);
+        submit("order-1", () -> awaitQuietly(release));
+        submit("order-1", () -> awaitQuietly(release));
+        assertThat(executor.inFlight(), equalTo(2));
+
+        Thread consumer = new Thread(() -> submit("order-2", () -> { }));
+        consumer.start();
+        await().atMost(2, TimeUnit.SECONDS).until(consumer::getState, equalTo(Thread.State.WAITING));
+
+        release.countDown();
+        consumer.join(2000);
+        await().atMost(2, TimeUnit.SECONDS).until(executor::inFlight, equalTo(0));
+    }
+
+    private String keyOnAnotherLane(String key) {
+        int lane = executor.laneOf(key);
+        for (int i = 2; ; i++) {
+            String candidate = "order-" + i;
+            if (executor.laneOf(candidate) != lane) {
+                return candidate;
+            }
+        }
+    }
+
+    private void submit(String key, Runnable task) {
+        try {
+            executor.submit(key, task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dev.lydtech.dispatch.lanes;
+
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OrderPriorityClassifierTest {
+
+    private final OrderPriorityClassifier classifier = new OrderPriorityClassifier(
+            List.of("express", "standard", "bulk"), "standard", "dispatch-priority", "express=express-|exp-,bulk=bulk-");
+
+    @Test
+    void classify_ByItemPrefix() {
+        assertThat(classifier.classify(record("express-kettle")), equalTo(0));
+        assertThat(classifier.classify(record("exp-toaster")), equalTo(0));
+        assertThat(classifier.classify(record("bulk-paper")), equalTo(2));
+        assertThat(classifier.classify(record("kettle")), equalTo(1));
+    }
+
+    @Test
+    void classify_HeaderWinsOverItemClass() {
+        ConsumerRecord<String, OrderCreated> record = record("bulk-paper");
+        record.headers().add("dispatch-priority", "express".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(classifier.classify(record), equalTo(0));
+    }
+
+    @Test
+    void classify_UnknownHeaderFallsBackToItemClass() {
+        ConsumerRecord<String, OrderCreated> record = record("bulk-paper");
+        record.headers().add("dispatch-priority", "urgent".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(classifier.classify(record), equalTo(2));
+    }
+
+    @Test
+    void classify_NoPayloadGoesToDefaultLane() {
+        assertThat(classifier.classify(new ConsumerRecord<>("order.created", 0, 0L, "key", null)), equalTo(1));
+    }
+
+    @Test
+    void constructor_RejectsUnknownLane() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new OrderPriorityClassifier(List.of("express", "bulk"), "standard", "dispatch-priority", ""));
+        assertThrows(IllegalArgumentException.class,
+                () -> new OrderPriorityClassifier(List.of("express", "bulk"), "bulk", "dispatch-priority", "vip=vip-"));
+    }
+
+    private static ConsumerRecord<String, OrderCreated> record(String item) {
+        return new ConsumerRecord<>("order.created", 0, 0L, "key", TestEventData.buildOrderCreatedEvent(randomUUID(), item));
+    }
+}
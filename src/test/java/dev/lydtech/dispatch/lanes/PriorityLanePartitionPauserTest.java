@@ -0,0 +1,37 @@
+package dev.lydtech.dispatch.lanes;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+class PriorityLanePartitionPauserTest {
+
+    @Test
+    void saturated_PausesTheAssignedPartitionsUntilDrained() {
+        KafkaListenerEndpointRegistry registryMock = mock(KafkaListenerEndpointRegistry.class);
+        MessageListenerContainer containerMock = mock(MessageListenerContainer.class);
+        when(registryMock.getListenerContainer("orderConsumerClient")).thenReturn(containerMock);
+        TopicPartition partition0 = new TopicPartition("order.created", 0);
+        TopicPartition partition1 = new TopicPartition("order.created", 1);
+        when(containerMock.getAssignedPartitions()).thenReturn(List.of(partition0, partition1));
+        PriorityLanePartitionPauser pauser = new PriorityLanePartitionPauser(registryMock, "orderConsumerClient");
+
+        pauser.saturated("bulk");
+
+        verify(containerMock).pausePartition(partition0);
+        verify(containerMock).pausePartition(partition1);
+        verify(containerMock, never()).pause();
+        verify(containerMock, never()).resumePartition(any());
+
+        pauser.drained();
+        pauser.drained();
+
+        verify(containerMock, times(1)).resumePartition(partition0);
+        verify(containerMock, times(1)).resumePartition(partition1);
+    }
+}
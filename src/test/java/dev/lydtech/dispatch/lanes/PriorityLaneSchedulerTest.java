@@ -0,0 +1,150 @@
+package dev.lydtech.dispatch.lanes;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class PriorityLaneSchedulerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private PriorityLaneScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.close();
+    }
+
+    @Test
+    void parse_ReadsWeightsAndCapacities() {
+        List<PriorityLaneScheduler.LaneSpec> lanes = PriorityLaneScheduler.parse("express:8, standard:3,bulk:1:5000", 100);
+
+        assertThat(lanes, contains(
+                new PriorityLaneScheduler.LaneSpec("express", 8, 100),
+                new PriorityLaneScheduler.LaneSpec("standard", 3, 100),
+                new PriorityLaneScheduler.LaneSpec("bulk", 1, 5000)));
+        assertThrows(IllegalArgumentException.class, () -> PriorityLaneScheduler.parse("express", 100));
+    }
+
+    @Test
+    void submit_BusyLanesShareWorkersByWeight() throws Exception {
+        scheduler = new PriorityLaneScheduler(PriorityLaneScheduler.parse("express:3,bulk:1", 100), 1, Executors.defaultThreadFactory(), registry);
+        CountDownLatch release = blockWorker();
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 40; i++) {
+            scheduler.submit(1, System.currentTimeMillis(), () -> processed.add(1));
+        }
+        for (int i = 0; i < 40; i++) {
+            scheduler.submit(0, System.currentTimeMillis(), () -> processed.add(0));
+        }
+
+        release.countDown();
+
+        await().atMost(2, TimeUnit.SECONDS).until(processed::size, equalTo(80));
+        long bulkInFirst20 = processed.subList(0, 20).stream().filter(lane -> lane == 1).count();
+        assertThat(bulkInFirst20, allOf(greaterThanOrEqualTo(4L), lessThanOrEqualTo(6L)));
+    }
+
+    @Test
+    void submit_IdleLaneGetsNoCredit() throws Exception {
+        scheduler = new PriorityLaneScheduler(PriorityLaneScheduler.parse("express:1,bulk:1", 100), 1, Executors.defaultThreadFactory(), registry);
+        // bulk runs alone for a while, express stays idle
+        for (int i = 0; i < 50; i++) {
+            scheduler.submit(1, System.currentTimeMillis(), () -> { });
+        }
+        await().atMost(2, TimeUnit.SECONDS).until(() -> scheduler.depth(1), equalTo(0));
+        CountDownLatch release = blockWorker();
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit(0, System.currentTimeMillis(), () -> processed.add(0));
+            scheduler.submit(1, System.currentTimeMillis(), () -> processed.add(1));
+        }
+
+        release.countDown();
+
+        await().atMost(2, TimeUnit.SECONDS).until(processed::size, equalTo(20));
+        // equal weights alternate, express doesn't catch up on the 50 bulk tasks
+        long bulkInFirst10 = processed.subList(0, 10).stream().filter(lane -> lane == 1).count();
+        assertThat(bulkInFirst10, allOf(greaterThanOrEqualTo(4L), lessThanOrEqualTo(6L)));
+    }
+
+    @Test
+    void submit_FullBulkLaneDoesNotDelayExpress() throws Exception {
+        scheduler = new PriorityLaneScheduler(PriorityLaneScheduler.parse("express:1:4,bulk:1:2", 100), 1, Executors.defaultThreadFactory(), registry);
+        List<String> signals = Collections.synchronizedList(new ArrayList<>());
+        scheduler.setSaturationListener(new PriorityLaneScheduler.SaturationListener() {
+            @Override
+            public void saturated(String lane) {
+                signals.add("saturated " + lane);
+            }
+
+            @Override
+            public void drained() {
+                signals.add("drained");
+            }
+        });
+        CountDownLatch release = blockWorker();
+
+        // the consumer hands over the whole poll without waiting, bulk past its capacity and express behind it
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            for (int i = 0; i < 5; i++) {
+                scheduler.submit(1, System.currentTimeMillis(), () -> { });
+            }
+            scheduler.submit(0, System.currentTimeMillis(), () -> { });
+        });
+        assertThat(scheduler.depth(1), equalTo(5));
+        assertThat(scheduler.depth(0), equalTo(1));
+        assertThat(signals, contains("saturated bulk"));
+
+        release.countDown();
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> scheduler.depth(0) + scheduler.depth(1), equalTo(0));
+        assertThat(signals, contains("saturated bulk", "drained"));
+    }
+
+    @Test
+    void close_DrainsQueuedTasks() throws Exception {
+        scheduler = new PriorityLaneScheduler(PriorityLaneScheduler.parse("express:1,bulk:1", 100), 2, Executors.defaultThreadFactory(), registry);
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 100; i++) {
+            scheduler.submit(i % 2, System.currentTimeMillis(), () -> processed.add(1));
+        }
+
+        scheduler.close();
+
+        assertThat(processed.size(), equalTo(100));
+        assertThat(registry.get("dispatch.priority.lane.latency").tag("lane", "express").timer().count(), equalTo(50L));
+        assertThat(registry.get("dispatch.priority.lane.wait").tag("lane", "bulk").timer().count(), equalTo(50L));
+    }
+
+    /**
+     * Occupies the only worker until the returned latch is released.
+     **/
+    private CountDownLatch blockWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(0, System.currentTimeMillis(), () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(started.await(2, TimeUnit.SECONDS), equalTo(true));
+        return release;
+    }
+}
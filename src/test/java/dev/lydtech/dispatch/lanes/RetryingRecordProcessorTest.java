@@ -0,0 +1,88 @@
+package dev.lydtech.dispatch.lanes;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.util.TestEventData;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RetryingRecordProcessorTest {
+
+    private ConsumerRecordRecoverer recovererMock;
+    private RetryingRecordProcessor processor;
+    private ConsumerRecord<String, OrderCreated> record;
+
+    @BeforeEach
+    void setUp() {
+        recovererMock = mock(ConsumerRecordRecoverer.class);
+        processor = new RetryingRecordProcessor(new FixedBackOff(1L, 3L), recovererMock);
+        record = new ConsumerRecord<>("order.created", 0, 0L, randomUUID().toString(),
+                TestEventData.buildOrderCreatedEvent(randomUUID(), "my-item"));
+    }
+
+    @Test
+    void process_RetryableExceptionThenSuccess() {
+        AtomicInteger attempts = new AtomicInteger();
+        boolean done = processor.process(record, r -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RetryableException("Service unavailable");
+            }
+        });
+
+        assertThat(done, equalTo(true));
+        assertThat(attempts.get(), equalTo(2));
+        verifyNoInteractions(recovererMock);
+    }
+
+    @Test
+    void process_RetryUntilFailureIsDeadLettered() {
+        AtomicInteger attempts = new AtomicInteger();
+        boolean done = processor.process(record, r -> {
+            attempts.incrementAndGet();
+            throw new RetryableException("Service unavailable");
+        });
+
+        assertThat(done, equalTo(true));
+        assertThat(attempts.get(), equalTo(4));
+        verify(recovererMock, times(1)).accept(eq(record), any(RetryableException.class));
+    }
+
+    @Test
+    void process_NotRetryableExceptionIsDeadLetteredStraightAway() {
+        AtomicInteger attempts = new AtomicInteger();
+        boolean done = processor.process(record, r -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("Bad request");
+        });
+
+        assertThat(done, equalTo(true));
+        assertThat(attempts.get(), equalTo(1));
+        verify(recovererMock, times(1)).accept(eq(record), argThat(e -> e instanceof NotRetryableException));
+    }
+
+    @Test
+    void process_FailedRecoveryIsNotAcknowledged() {
+        doThrow(new RuntimeException("DLT unavailable")).when(recovererMock).accept(any(), any());
+
+        boolean done = processor.process(record, r -> {
+            throw new NotRetryableException(new IllegalStateException("Bad request"));
+        });
+
+        assertThat(done, equalTo(false));
+    }
+}
@@ -0,0 +1,243 @@
+package dev.lydtech.dispatch.load;
+
+import dev.lydtech.dispatch.DispatchConfiguration;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.matching;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static java.util.UUID.randomUUID;
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Drives one dispatch instance with a steady OrderCreated rate and records end-to-end latency (create to
+ * order.dispatched) in an HDR histogram, sustained throughput, the listener group's peak lag and the DLT count.
+ * Latency is measured from each order's scheduled send time, so a stalled producer cannot hide queueing delay.
+ *
+ * Run with mvn -Pload test, tuned with system properties:
+ * - load.rate (orders/s), load.durationSeconds, load.keys (distinct keys)
+ * - load.stockLatencyMinMs / load.stockLatencyMaxMs (uniform stock service delay)
+ * - load.retryableErrorRate / load.notRetryableErrorRate (share of orders whose stock check answers 503 / 400)
+ * - any dispatch.* property, e.g. -Ddispatch.listener.mode=batch
+ * The report is written to target/load-report.txt.
+ **/
+@Slf4j
+@Tag("load")
+@SpringBootTest(classes = {DispatchConfiguration.class})
+@AutoConfigureWireMock(port = 0)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+@ActiveProfiles("test")
+@EmbeddedKafka(controlledShutdown = true, partitions = 4)
+public class DispatchLoadTest {
+
+    private static final String ORDER_CREATED_TOPIC = "order.created";
+    private static final String ORDER_DISPATCHED_TOPIC = "order.dispatched";
+    private static final String ORDER_CREATED_DLT_TOPIC = "order.created.DLT";
+    private static final String DISPATCH_GROUP = "dispatch.order.created.consumer";
+
+    @Value("${load.rate:500}")
+    private int rate;
+    @Value("${load.durationSeconds:30}")
+    private int durationSeconds;
+    @Value("${load.keys:1000}")
+    private int keys;
+    @Value("${load.stockLatencyMinMs:2}")
+    private int stockLatencyMinMs;
+    @Value("${load.stockLatencyMaxMs:10}")
+    private int stockLatencyMaxMs;
+    @Value("${load.retryableErrorRate:0.0}")
+    private double retryableErrorRate;
+    @Value("${load.notRetryableErrorRate:0.0}")
+    private double notRetryableErrorRate;
+    @Value("${load.report:target/load-report.txt}")
+    private String report;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    private LoadCollector loadCollector;
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Configuration
+    static class TestConfig {
+        @Bean
+        public LoadCollector loadCollector() {
+            return new LoadCollector();
+        }
+    }
+
+    @KafkaListener(groupId = "DispatchLoadTest", topics = {ORDER_DISPATCHED_TOPIC, ORDER_CREATED_DLT_TOPIC})
+    public static class LoadCollector {
+        final Map<UUID, Long> scheduledNanos = new ConcurrentHashMap<>();
+        final Histogram latency = new Histogram(TimeUnit.MINUTES.toMicros(5), 3);
+        final AtomicInteger dispatched = new AtomicInteger();
+        final AtomicInteger deadLettered = new AtomicInteger();
+
+        @KafkaHandler
+        void receiveOrderDispatched(@Payload OrderDispatched payload) {
+            Long scheduled = scheduledNanos.remove(payload.getOrderId());
+            if (scheduled != null) {
+                synchronized (latency) {
+                    latency.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled), latency.getHighestTrackableValue()));
+                }
+            }
+            dispatched.incrementAndGet();
+        }
+
+        @KafkaHandler
+        void receiveOrderCreatedDLT(@Payload OrderCreated payload) {
+            scheduledNanos.remove(payload.getOrderId());
+            deadLettered.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void sustainedLoad() throws Exception {
+        stubStockService();
+        registry.getListenerContainers().forEach(container -> ContainerTestUtils.waitForAssignment(container,
+                container.getContainerProperties().getTopics().length * embeddedKafkaBroker.getPartitionsPerTopic()));
+
+        int total = rate * durationSeconds;
+        AtomicLong peakLag = new AtomicLong();
+        ScheduledExecutorService lagSampler = Executors.newSingleThreadScheduledExecutor();
+        try (AdminClient admin = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafkaBroker.getBrokersAsString()))) {
+            lagSampler.scheduleAtFixedRate(() -> peakLag.accumulateAndGet(lag(admin), Math::max), 1, 1, TimeUnit.SECONDS);
+
+            Instant start = Instant.now();
+            long startNanos = System.nanoTime();
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            for (int i = 0; i < total; i++) {
+                long scheduled = startNanos + i * intervalNanos;
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                OrderCreated orderCreated = OrderCreated.builder().orderId(randomUUID()).item(item(i)).build();
+                loadCollector.scheduledNanos.put(orderCreated.getOrderId(), scheduled);
+                kafkaTemplate.send(ORDER_CREATED_TOPIC, "key-" + (i % keys), orderCreated);
+            }
+            kafkaTemplate.flush();
+            Duration produced = Duration.between(start, Instant.now());
+
+            await().atMost(Duration.ofSeconds(durationSeconds + 120)).pollInterval(Duration.ofMillis(200))
+                    .until(() -> loadCollector.dispatched.get() + loadCollector.deadLettered.get(), greaterThanOrEqualTo(total));
+            Duration drained = Duration.between(start, Instant.now());
+            lagSampler.shutdownNow();
+            writeReport(total, produced, drained, peakLag.get());
+        } finally {
+            lagSampler.shutdownNow();
+        }
+    }
+
+    private String item(int order) {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < retryableErrorRate) {
+            return "retryable-" + order;
+        }
+        if (roll < retryableErrorRate + notRetryableErrorRate) {
+            return "rejected-" + order;
+        }
+        return "item-" + (order % 100);
+    }
+
+    private void stubStockService() {
+        stubFor(get(urlPathEqualTo("/api/stock")).atPriority(5)
+                .willReturn(aResponse().withStatus(200).withHeader("Content-Type", "text/plain").withBody("true")
+                        .withUniformRandomDelay(stockLatencyMinMs, stockLatencyMaxMs)));
+        stubFor(get(urlPathEqualTo("/api/stock")).withQueryParam("item", matching("retryable-.*")).atPriority(1)
+                .willReturn(aResponse().withStatus(503).withBody("Service unavailable")
+                        .withUniformRandomDelay(stockLatencyMinMs, stockLatencyMaxMs)));
+        stubFor(get(urlPathEqualTo("/api/stock")).withQueryParam("item", matching("rejected-.*")).atPriority(1)
+                .willReturn(aResponse().withStatus(400).withBody("Bad Request")
+                        .withUniformRandomDelay(stockLatencyMinMs, stockLatencyMaxMs)));
+    }
+
+    private long lag(AdminClient admin) {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(DISPATCH_GROUP)
+                    .partitionsToOffsetAndMetadata().get();
+            Map<TopicPartition, OffsetSpec> latest = committed.keySet().stream()
+                    .filter(partition -> partition.topic().equals(ORDER_CREATED_TOPIC))
+                    .collect(Collectors.toMap(partition -> partition, partition -> OffsetSpec.latest()));
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> ends = admin.listOffsets(latest).all().get();
+            return ends.entrySet().stream()
+                    .mapToLong(end -> end.getValue().offset() - committed.get(end.getKey()).offset())
+                    .sum();
+        } catch (Exception e) {
+            log.warn("Failed to sample consumer lag: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private void writeReport(int total, Duration produced, Duration drained, long peakLag) throws IOException {
+        Path path = Path.of(report);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Histogram latency = loadCollector.latency;
+        try (PrintStream out = new PrintStream(Files.newOutputStream(path))) {
+            out.printf("orders: %d at %d/s over %d keys, stock latency %d-%dms, retryable errors %.1f%%, not retryable errors %.1f%%%n",
+                    total, rate, keys, stockLatencyMinMs, stockLatencyMaxMs, retryableErrorRate * 100, notRetryableErrorRate * 100);
+            out.printf("produced in: %.1fs, drained in: %.1fs%n", produced.toMillis() / 1000.0, drained.toMillis() / 1000.0);
+            out.printf("dispatched: %d, dead lettered: %d%n", loadCollector.dispatched.get(), loadCollector.deadLettered.get());
+            out.printf("sustained throughput: %.1f orders/s%n", total * 1000.0 / drained.toMillis());
+            out.printf("peak consumer lag: %d%n", peakLag);
+            out.printf("end-to-end latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                    latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(90) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0, latency.getValueAtPercentile(99.9) / 1000.0,
+                    latency.getMaxValue() / 1000.0);
+            out.println();
+            latency.outputPercentileDistribution(out, 1000.0);
+        }
+        log.info("Load report written to " + path.toAbsolutePath());
+    }
+}
@@ -0,0 +1,81 @@
+package dev.lydtech.dispatch.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import dev.lydtech.dispatch.message.OrderCreated;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+class HotPathLogTest {
+
+    private Logger logger;
+    private ListAppender<ILoggingEvent> appender;
+    private Level previousLevel;
+
+    @BeforeEach
+    void setUp() {
+        logger = (Logger) LoggerFactory.getLogger(HotPathLog.LOGGER_NAME);
+        previousLevel = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+        logger.setLevel(previousLevel);
+    }
+
+    @Test
+    void full_LogsEveryRecord() {
+        HotPathLog hotPathLog = new HotPathLog(HotPathLog.Mode.FULL, 0);
+        for (int i = 0; i < 10; i++) {
+            hotPathLog.received(0, "key", new OrderCreated(randomUUID(), "item"));
+        }
+        assertThat(appender.list.size(), equalTo(10));
+    }
+
+    @Test
+    void off_LogsNothing() {
+        HotPathLog hotPathLog = new HotPathLog(HotPathLog.Mode.OFF, 0);
+        hotPathLog.received(0, "key", new OrderCreated(randomUUID(), "item"));
+        hotPathLog.dispatched("key", randomUUID(), randomUUID());
+        assertThat(appender.list.size(), equalTo(0));
+    }
+
+    @Test
+    void disabledLevel_LogsNothing() {
+        logger.setLevel(Level.WARN);
+        HotPathLog hotPathLog = new HotPathLog(HotPathLog.Mode.FULL, 0);
+        hotPathLog.received(0, "key", new OrderCreated(randomUUID(), "item"));
+        assertThat(appender.list.size(), equalTo(0));
+    }
+
+    @Test
+    void sampled_LimitsLinesPerSecondAndReportsSuppressed() {
+        AtomicLong now = new AtomicLong(10_000);
+        HotPathLog hotPathLog = new HotPathLog(HotPathLog.Mode.SAMPLED, 2, now::get);
+        for (int i = 0; i < 10; i++) {
+            hotPathLog.dispatched("key", randomUUID(), randomUUID());
+        }
+        assertThat(appender.list.size(), equalTo(2));
+
+        now.addAndGet(1000);
+        hotPathLog.unavailable("key", "item");
+        assertThat(appender.list.size(), equalTo(3));
+        assertThat(appender.list.get(2).getFormattedMessage(), containsString("event=order.unavailable key=key item=item suppressed=8"));
+    }
+}
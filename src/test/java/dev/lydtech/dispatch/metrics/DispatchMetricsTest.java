@@ -0,0 +1,53 @@
+package dev.lydtech.dispatch.metrics;
+
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class DispatchMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private DispatchMetrics dispatchMetrics;
+    private ConsumerRecord<String, String> record;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        dispatchMetrics = new DispatchMetrics(registry);
+        record = new ConsumerRecord<>("order.created", 0, 0L, "key", "value");
+    }
+
+    @Test
+    void failedDelivery_ClassifiedThroughTheContainerWrapper() {
+        dispatchMetrics.failedDelivery(record, new ListenerExecutionFailedException("failed", new RetryableException("Service unavailable")), 1);
+        dispatchMetrics.failedDelivery(record, new ListenerExecutionFailedException("failed", new RetryableException("Service unavailable")), 2);
+        dispatchMetrics.failedDelivery(record, new NotRetryableException(new RuntimeException("Bad Request")), 1);
+
+        assertThat(registry.get("dispatch.delivery.failures").tag("exception", "retryable").counter().count(), equalTo(2.0));
+        assertThat(registry.get("dispatch.delivery.failures").tag("exception", "not_retryable").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void recovered_CountsDeadLetters() {
+        dispatchMetrics.recovered(record, new NotRetryableException(new RuntimeException("Bad Request")));
+        dispatchMetrics.recoveryFailed(record, new NotRetryableException(new RuntimeException("Bad Request")), new RuntimeException("DLT down"));
+
+        assertThat(registry.get("dispatch.dead.letters").counter().count(), equalTo(1.0));
+        assertThat(registry.get("dispatch.dead.letter.failures").counter().count(), equalTo(1.0));
+    }
+
+    @Test
+    void recordProcessed_TimesFromTheRecordTimestamp() {
+        dispatchMetrics.recordProcessed(System.currentTimeMillis() - 250);
+        dispatchMetrics.recordProcessed(ConsumerRecord.NO_TIMESTAMP);
+
+        assertThat(registry.get("dispatch.order.end.to.end").timer().count(), equalTo(1L));
+    }
+}
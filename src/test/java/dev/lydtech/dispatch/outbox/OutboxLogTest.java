@@ -0,0 +1,362 @@
+package dev.lydtech.dispatch.outbox;
+
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OutboxLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void read_ReturnsAppendedEntriesInOrder() throws IOException {
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            UUID first = randomUUID();
+            UUID second = randomUUID();
+            outbox.append(List.of(preparing("key-1", first), dispatched("key-1", first)));
+            outbox.append(List.of(preparing("key-2", second)));
+
+            OutboxLog.Batch batch = outbox.read(outbox.cursor(), 10);
+
+            assertThat(batch.entries().size(), equalTo(3));
+            assertThat(batch.entries().get(0).topic(), equalTo("dispatch.tracking"));
+            assertThat(batch.entries().get(0).key(), equalTo("key-1"));
+            assertThat(((DispatchPreparing) batch.entries().get(0).value()).getOrderId(), equalTo(first));
+            assertThat(((OrderDispatched) batch.entries().get(1).value()).getOrderId(), equalTo(first));
+            assertThat(((DispatchPreparing) batch.entries().get(2).value()).getOrderId(), equalTo(second));
+            assertThat(outbox.pending(), equalTo(3L));
+            assertThat(outbox.read(batch.next(), 10).entries().size(), equalTo(0));
+        }
+    }
+
+    @Test
+    void relayed_PendingEntriesSurviveRestart() throws IOException {
+        UUID relayed = randomUUID();
+        UUID notRelayed = randomUUID();
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            outbox.append(List.of(preparing("key", relayed)));
+            outbox.append(List.of(preparing("key", notRelayed)));
+            OutboxLog.Batch batch = outbox.read(outbox.cursor(), 1);
+            outbox.relayed(batch.next(), batch.entries().size());
+        }
+
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            assertThat(outbox.pending(), equalTo(1L));
+            List<OutboxLog.Entry> entries = outbox.read(outbox.cursor(), 10).entries();
+            assertThat(entries.size(), equalTo(1));
+            assertThat(((DispatchPreparing) entries.get(0).value()).getOrderId(), equalTo(notRelayed));
+        }
+    }
+
+    @Test
+    void recover_TruncatesTornFrame() throws IOException {
+        UUID complete = randomUUID();
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            outbox.append(List.of(preparing("key", complete)));
+            outbox.append(List.of(preparing("key", randomUUID())));
+        }
+        Path segment = segments().get(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // the second append never completed
+            channel.truncate(size - 5);
+        }
+
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            assertThat(outbox.pending(), equalTo(1L));
+            List<OutboxLog.Entry> entries = outbox.read(outbox.cursor(), 10).entries();
+            assertThat(entries.size(), equalTo(1));
+            assertThat(((DispatchPreparing) entries.get(0).value()).getOrderId(), equalTo(complete));
+
+            // appends continue right after the last complete frame
+            outbox.append(List.of(preparing("key", randomUUID())));
+            assertThat(outbox.read(outbox.cursor(), 10).entries().size(), equalTo(2));
+        }
+    }
+
+    @Test
+    void recover_TruncatesCorruptFrame() throws IOException {
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            outbox.append(List.of(preparing("key", randomUUID())));
+            outbox.append(List.of(preparing("key", randomUUID())));
+        }
+        Path segment = segments().get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 3] ^= 0x10;
+        Files.write(segment, bytes);
+
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            assertThat(outbox.pending(), equalTo(1L));
+            assertThat(Files.size(segment), equalTo((long) bytes.length / 2));
+        }
+    }
+
+    @Test
+    void append_FailedWriteLeavesNoTornFrameBehind() throws IOException {
+        AtomicBoolean failWrites = new AtomicBoolean();
+        UUID first = randomUUID();
+        UUID retried = randomUUID();
+        UUID later = randomUUID();
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true, file -> new FailingFileChannel(file, failWrites, new AtomicBoolean()))) {
+            outbox.append(List.of(preparing("key", first)));
+            failWrites.set(true);
+            assertThrows(RetryableException.class, () -> outbox.append(List.of(preparing("key", retried))));
+            failWrites.set(false);
+
+            outbox.append(List.of(preparing("key", retried)));
+            outbox.append(List.of(preparing("key", later)));
+            assertThat(outbox.read(outbox.cursor(), 10).entries().size(), equalTo(3));
+        }
+
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            List<OutboxLog.Entry> entries = outbox.read(outbox.cursor(), 10).entries();
+            assertThat(entries.size(), equalTo(3));
+            assertThat(((DispatchPreparing) entries.get(1).value()).getOrderId(), equalTo(retried));
+            assertThat(((DispatchPreparing) entries.get(2).value()).getOrderId(), equalTo(later));
+        }
+    }
+
+    @Test
+    void append_RefusedOnceATornFrameCannotBeCutOff() throws IOException {
+        AtomicBoolean fail = new AtomicBoolean();
+        UUID first = randomUUID();
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true, file -> new FailingFileChannel(file, fail, fail))) {
+            outbox.append(List.of(preparing("key", first)));
+            fail.set(true);
+            assertThrows(RetryableException.class, () -> outbox.append(List.of(preparing("key", randomUUID()))));
+            fail.set(false);
+
+            assertThrows(RetryableException.class, () -> outbox.append(List.of(preparing("key", randomUUID()))));
+        }
+
+        // recovery drops the torn frame and the log takes appends again
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            List<OutboxLog.Entry> entries = outbox.read(outbox.cursor(), 10).entries();
+            assertThat(entries.size(), equalTo(1));
+            assertThat(((DispatchPreparing) entries.get(0).value()).getOrderId(), equalTo(first));
+            outbox.append(List.of(preparing("key", randomUUID())));
+            assertThat(outbox.pending(), equalTo(2L));
+        }
+    }
+
+    @Test
+    void relayed_DeletesRelayedSegments() throws IOException {
+        try (OutboxLog outbox = new OutboxLog(tempDir, 256, 1 << 20, false)) {
+            for (int i = 0; i < 20; i++) {
+                outbox.append(List.of(preparing("key-" + i, randomUUID())));
+            }
+            assertThat(segments().size(), greaterThan(1));
+            long size = outbox.size();
+
+            OutboxLog.Batch batch = outbox.read(outbox.cursor(), 100);
+            assertThat(batch.entries().size(), equalTo(20));
+            outbox.relayed(batch.next(), batch.entries().size());
+
+            assertThat(segments().size(), equalTo(1));
+            assertThat(outbox.size(), lessThan(size));
+            assertThat(outbox.pending(), equalTo(0L));
+        }
+    }
+
+    @Test
+    void append_FailsOnceMaxBytesWaitForTheRelay() {
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 200, true)) {
+            outbox.append(List.of(preparing("key", randomUUID())));
+            outbox.append(List.of(preparing("key", randomUUID())));
+
+            assertThrows(RetryableException.class, () -> outbox.append(List.of(preparing("key", randomUUID()), preparing("key", randomUUID()))));
+        }
+    }
+
+    @Test
+    void append_ConcurrentAppendsShareForces() throws Exception {
+        int threads = 8;
+        int appendsPerThread = 200;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 30, true)) {
+            outbox.bindTo(registry);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < appendsPerThread; i++) {
+                        outbox.append(List.of(preparing("key", randomUUID())));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertThat(outbox.pending(), equalTo((long) threads * appendsPerThread));
+            assertThat(registry.get("dispatch.outbox.appends").functionCounter().count(), equalTo((double) threads * appendsPerThread));
+            assertThat(registry.get("dispatch.outbox.syncs").functionCounter().count(), lessThan((double) threads * appendsPerThread));
+        }
+    }
+
+    /**
+     * A segment channel that, while failWrites is set, writes half of a frame and then fails, and fails truncate
+     * while failTruncate is set.
+     **/
+    private static final class FailingFileChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private final AtomicBoolean failWrites;
+        private final AtomicBoolean failTruncate;
+
+        private FailingFileChannel(Path file, AtomicBoolean failWrites, AtomicBoolean failTruncate) throws IOException {
+            this.delegate = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.failWrites = failWrites;
+            this.failTruncate = failTruncate;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            if (!failWrites.get()) {
+                return delegate.write(src, position);
+            }
+            if (src.remaining() < 2) {
+                throw new IOException("Disk full");
+            }
+            ByteBuffer half = src.slice(src.position(), src.remaining() / 2);
+            int written = delegate.write(half, position);
+            src.position(src.position() + written);
+            return written;
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (failTruncate.get()) {
+                throw new IOException("Disk gone");
+            }
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static OutboxLog.Entry preparing(String key, UUID orderId) {
+        return new OutboxLog.Entry("dispatch.tracking", key, new DispatchPreparing(orderId), System.currentTimeMillis());
+    }
+
+    private static OutboxLog.Entry dispatched(String key, UUID orderId) {
+        return new OutboxLog.Entry("order.dispatched", key, new OrderDispatched(orderId, randomUUID(), "Dispatched: item"), System.currentTimeMillis());
+    }
+}
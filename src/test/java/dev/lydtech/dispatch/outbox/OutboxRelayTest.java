@@ -0,0 +1,87 @@
+package dev.lydtech.dispatch.outbox;
+
+import dev.lydtech.dispatch.message.DispatchPreparing;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.UUID.randomUUID;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class OutboxRelayTest {
+
+    @TempDir
+    Path tempDir;
+
+    private OutboxLog outbox;
+    private KafkaTemplate kafkaProducerMock;
+    private KafkaTemplate trackingProducerMock;
+    private OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true);
+        kafkaProducerMock = mock(KafkaTemplate.class);
+        trackingProducerMock = mock(KafkaTemplate.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (relay != null) {
+            relay.close();
+        }
+        outbox.close();
+    }
+
+    @Test
+    void relay_PublishesEventsInLogOrder() {
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(trackingProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        UUID orderId = randomUUID();
+        outbox.append(List.of(
+                new OutboxLog.Entry("dispatch.tracking", "key", new DispatchPreparing(orderId), System.currentTimeMillis()),
+                new OutboxLog.Entry("order.dispatched", "key", new OrderDispatched(orderId, randomUUID(), "notes"), System.currentTimeMillis())));
+
+        relay = new OutboxRelay(outbox, kafkaProducerMock, trackingProducerMock, new SimpleMeterRegistry(), 100, 1000L, 10L);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.pending() == 0);
+        InOrder inOrder = inOrder(trackingProducerMock, kafkaProducerMock);
+        inOrder.verify(trackingProducerMock).send(eq("dispatch.tracking"), eq("key"), eq(new DispatchPreparing(orderId)));
+        inOrder.verify(kafkaProducerMock).send(eq("order.dispatched"), eq("key"), any(OrderDispatched.class));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> relay.lagSeconds() == 0.0);
+
+        // appends after the relay drained the log are picked up as well
+        outbox.append(List.of(new OutboxLog.Entry("dispatch.tracking", "key", new DispatchPreparing(randomUUID()), System.currentTimeMillis())));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.pending() == 0);
+        verify(trackingProducerMock, times(2)).send(eq("dispatch.tracking"), eq("key"), any());
+    }
+
+    @Test
+    void relay_FailedBatchIsSentAgain() {
+        when(trackingProducerMock.send(anyString(), anyString(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker unavailable")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        outbox.append(List.of(new OutboxLog.Entry("dispatch.tracking", "key", new DispatchPreparing(randomUUID()), System.currentTimeMillis())));
+
+        relay = new OutboxRelay(outbox, kafkaProducerMock, trackingProducerMock, new SimpleMeterRegistry(), 100, 1000L, 10L);
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> outbox.pending() == 0);
+        verify(trackingProducerMock, times(2)).send(eq("dispatch.tracking"), eq("key"), any());
+        verifyNoInteractions(kafkaProducerMock);
+    }
+}
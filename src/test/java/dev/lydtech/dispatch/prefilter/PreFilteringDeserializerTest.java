@@ -0,0 +1,121 @@
+package dev.lydtech.dispatch.prefilter;
+
+import dev.lydtech.dispatch.client.StockSnapshot;
+import dev.lydtech.dispatch.codec.DispatchBinaryCodec;
+import dev.lydtech.dispatch.codec.MigratingDispatchDeserializer;
+import dev.lydtech.dispatch.dedup.ProcessedOrderStore;
+import dev.lydtech.dispatch.message.OrderCreated;
+import dev.lydtech.dispatch.message.OrderDispatched;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PreFilteringDeserializerTest {
+
+    private final ProcessedOrderStore processedOrderStore = new ProcessedOrderStore(100);
+    private final StockSnapshot stockSnapshotMock = mock(StockSnapshot.class);
+    private final OrderCreatedPreFilter preFilter = new OrderCreatedPreFilter(processedOrderStore, stockSnapshotMock);
+    private final JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+    private PreFilteringDeserializer deserializer;
+
+    @BeforeEach
+    void setUp() {
+        deserializer = new PreFilteringDeserializer(new MigratingDispatchDeserializer(), preFilter);
+        deserializer.configure(Map.of(
+                JsonDeserializer.VALUE_DEFAULT_TYPE, OrderCreated.class.getCanonicalName(),
+                JsonDeserializer.TRUSTED_PACKAGES, "dev.lydtech.dispatch.message"), false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        deserializer.close();
+        jsonSerializer.close();
+    }
+
+    @Test
+    void deserialize_DropsDuplicateOrders() {
+        UUID orderId = randomUUID();
+        processedOrderStore.markProcessed(orderId);
+        RecordHeaders headers = new RecordHeaders();
+        byte[] json = jsonSerializer.serialize("order.created", headers, new OrderCreated(orderId, "item-1"));
+
+        assertThat(deserializer.deserialize("order.created", headers, json), equalTo(PreFiltered.DUPLICATE));
+        assertThat(deserializer.deserialize("order.created", new RecordHeaders(), DispatchBinaryCodec.encode(new OrderCreated(orderId, "item-1"))),
+                equalTo(PreFiltered.DUPLICATE));
+        assertThat(processedOrderStore.duplicatesSkippedCount(), equalTo(2L));
+    }
+
+    @Test
+    void deserialize_DropsItemsKnownUnavailable() {
+        when(stockSnapshotMock.knownUnavailable("item-gone")).thenReturn(true);
+        OrderCreated available = new OrderCreated(randomUUID(), "item-1");
+        RecordHeaders headers = new RecordHeaders();
+
+        assertThat(deserializer.deserialize("order.created", headers,
+                jsonSerializer.serialize("order.created", headers, new OrderCreated(randomUUID(), "item-gone"))), equalTo(PreFiltered.UNAVAILABLE));
+        assertThat(deserializer.deserialize("order.created", headers,
+                jsonSerializer.serialize("order.created", headers, available)), equalTo(available));
+    }
+
+    @Test
+    void deserialize_LeavesWhatItCannotReadToTheDelegate() {
+        UUID orderId = randomUUID();
+        processedOrderStore.markProcessed(orderId);
+        byte[] escaped = ("{\"orderId\":\"" + orderId + "\",\"item\":\"item\\u002d1\"}").getBytes(StandardCharsets.UTF_8);
+
+        assertThat(deserializer.deserialize("order.created", new RecordHeaders(), escaped), equalTo(new OrderCreated(orderId, "item-1")));
+        assertThrows(SerializationException.class,
+                () -> deserializer.deserialize("order.created", new RecordHeaders(), "not json".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void deserialize_OtherTypeHeaderSkipsTheScan() {
+        OrderDispatched orderDispatched = new OrderDispatched(randomUUID(), randomUUID(), "Dispatched: item-1");
+        processedOrderStore.markProcessed(orderDispatched.getOrderId());
+        RecordHeaders headers = new RecordHeaders();
+        byte[] json = jsonSerializer.serialize("order.dispatched", headers, orderDispatched);
+
+        assertThat(deserializer.deserialize("order.dispatched", headers, json), equalTo(orderDispatched));
+    }
+
+    @Test
+    void deserialize_OnlyScansOrderCreatedAndItsRetryTopics() {
+        UUID orderId = randomUUID();
+        processedOrderStore.markProcessed(orderId);
+        byte[] binary = DispatchBinaryCodec.encode(new OrderCreated(orderId, "item-1"));
+
+        assertThat(deserializer.deserialize("order.created.retry-1000", new RecordHeaders(), binary), equalTo(PreFiltered.DUPLICATE));
+        assertThat(deserializer.deserialize("order.created.DLT", new RecordHeaders(), binary), equalTo(new OrderCreated(orderId, "item-1")));
+        assertThat(deserializer.deserialize("order.created.DLT", binary), equalTo(new OrderCreated(orderId, "item-1")));
+    }
+
+    @Test
+    void bindTo_CountsRecordsByResult() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        preFilter.bindTo(registry);
+        UUID orderId = randomUUID();
+        processedOrderStore.markProcessed(orderId);
+
+        deserializer.deserialize("order.created", new RecordHeaders(), DispatchBinaryCodec.encode(new OrderCreated(orderId, "item-1")));
+        deserializer.deserialize("order.created", new RecordHeaders(), DispatchBinaryCodec.encode(new OrderCreated(randomUUID(), "item-1")));
+
+        assertThat(registry.get("dispatch.prefilter.records").tag("result", "duplicate").functionCounter().count(), equalTo(1.0));
+        assertThat(registry.get("dispatch.prefilter.records").tag("result", "passed").functionCounter().count(), equalTo(1.0));
+    }
+}
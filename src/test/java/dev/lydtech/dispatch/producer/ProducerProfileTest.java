@@ -0,0 +1,42 @@
+package dev.lydtech.dispatch.producer;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ProducerProfileTest {
+
+    @Test
+    void of_AcceptsPropertyNames() {
+        assertThat(ProducerProfile.of("low-latency"), equalTo(ProducerProfile.LOW_LATENCY));
+        assertThat(ProducerProfile.of("High-Throughput"), equalTo(ProducerProfile.HIGH_THROUGHPUT));
+        assertThat(ProducerProfile.of("exactly-once"), equalTo(ProducerProfile.EXACTLY_ONCE));
+    }
+
+    @Test
+    void of_RejectsUnknownProfile() {
+        assertThrows(IllegalArgumentException.class, () -> ProducerProfile.of("fastest"));
+    }
+
+    @Test
+    void config_HighThroughputBatchesAndCompresses() {
+        Map<String, Object> config = ProducerProfile.HIGH_THROUGHPUT.config("");
+
+        assertThat(config.get(ProducerConfig.LINGER_MS_CONFIG), equalTo(20));
+        assertThat(config.get(ProducerConfig.BATCH_SIZE_CONFIG), equalTo(256 * 1024));
+        assertThat(config.get(ProducerConfig.COMPRESSION_TYPE_CONFIG), equalTo("lz4"));
+        assertThat(config.get(ProducerConfig.ACKS_CONFIG), equalTo("all"));
+        assertThat(config.get(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG), equalTo(true));
+    }
+
+    @Test
+    void config_CompressionOverride() {
+        assertThat(ProducerProfile.HIGH_THROUGHPUT.config("zstd").get(ProducerConfig.COMPRESSION_TYPE_CONFIG), equalTo("zstd"));
+        assertThat(ProducerProfile.LOW_LATENCY.config(null).get(ProducerConfig.COMPRESSION_TYPE_CONFIG), equalTo("none"));
+    }
+}
@@ -0,0 +1,67 @@
+package dev.lydtech.dispatch.reactive;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.integration.WiremockUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static dev.lydtech.dispatch.integration.WiremockUtils.stubWiremock;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReactiveStockServiceClientTest {
+
+    private static WireMockServer wireMockServer;
+    private ReactiveStockServiceClient client;
+
+    @BeforeAll
+    static void startWiremock() {
+        wireMockServer = new WireMockServer(options().dynamicPort());
+        wireMockServer.start();
+        WireMock.configureFor("localhost", wireMockServer.port());
+    }
+
+    @AfterAll
+    static void stopWiremock() {
+        wireMockServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        WiremockUtils.reset();
+        client = new ReactiveStockServiceClient(WebClient.builder(), "http://localhost:" + wireMockServer.port() + "/api/stock", 200L);
+    }
+
+    @Test
+    void checkAvailability_Success() {
+        stubWiremock("/api/stock?item=my-item", 200, "true");
+        assertThat(client.checkAvailability("my-item").block(), equalTo(true));
+    }
+
+    @Test
+    void checkAvailability_ServerErrorIsRetryable() {
+        stubWiremock("/api/stock?item=my-item", 503, "Service unavailable");
+        assertThrows(RetryableException.class, () -> client.checkAvailability("my-item").block());
+    }
+
+    @Test
+    void checkAvailability_TimeoutIsRetryable() {
+        WireMock.stubFor(WireMock.get(WireMock.urlEqualTo("/api/stock?item=my-item"))
+                .willReturn(WireMock.aResponse().withStatus(200).withBody("true").withFixedDelay(1000)));
+        assertThrows(RetryableException.class, () -> client.checkAvailability("my-item").block());
+    }
+
+    @Test
+    void checkAvailability_ClientErrorIsNotRetryable() {
+        stubWiremock("/api/stock?item=my-item", 400, "Bad Request");
+        assertThrows(NotRetryableException.class, () -> client.checkAvailability("my-item").block());
+    }
+}
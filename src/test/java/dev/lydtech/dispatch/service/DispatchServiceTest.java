@@ -1,22 +1,38 @@
 package dev.lydtech.dispatch.service;
 
 import dev.lydtech.dispatch.client.StockServiceClient;
+import dev.lydtech.dispatch.client.exception.NotRetryableException;
+import dev.lydtech.dispatch.client.exception.RetryableException;
+import dev.lydtech.dispatch.dedup.ProcessedOrderStore;
+import dev.lydtech.dispatch.logging.HotPathLog;
 import dev.lydtech.dispatch.message.DispatchCompleted;
 import dev.lydtech.dispatch.message.DispatchPreparing;
 import dev.lydtech.dispatch.message.OrderCreated;
 import dev.lydtech.dispatch.message.OrderDispatched;
+import dev.lydtech.dispatch.outbox.OutboxLog;
 import dev.lydtech.dispatch.util.TestEventData;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
 
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static java.util.UUID.randomUUID;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -82,4 +98,263 @@ class DispatchServiceTest {
         verify(stockServiceClientMock, times(1)).checkAvailability(testEvent.getItem());
         assertThat(exception.getMessage(), equalTo("Order dispatched producer failure"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void process_PipelinedSends_Success() throws Exception {
+        DispatchService pipelinedService = new DispatchService(kafkaProducerMock, stockServiceClientMock, true);
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyString())).thenReturn("true");
+
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
+        String key = randomUUID().toString();
+        pipelinedService.process(key, testEvent);
+
+        InOrder inOrder = inOrder(kafkaProducerMock);
+        inOrder.verify(kafkaProducerMock).send(eq("dispatch.tracking"), eq(key), any(DispatchPreparing.class));
+        inOrder.verify(kafkaProducerMock).send(eq("dispatch.tracking"), eq(key), any(DispatchCompleted.class));
+        inOrder.verify(kafkaProducerMock).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        verify(stockServiceClientMock, times(1)).checkAvailability(testEvent.getItem());
+    }
+
+    @Test
+    void process_SeparateTrackingTemplate_Success() throws Exception {
+        KafkaTemplate trackingProducerMock = mock(KafkaTemplate.class);
+        DispatchService splitService = new DispatchService(kafkaProducerMock, trackingProducerMock, stockServiceClientMock, true, null, new HotPathLog(), null);
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(trackingProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyString())).thenReturn("true");
+
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
+        String key = randomUUID().toString();
+        splitService.process(key, testEvent);
+
+        verify(trackingProducerMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchPreparing.class));
+        verify(trackingProducerMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchCompleted.class));
+        verify(kafkaProducerMock, times(1)).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        verifyNoMoreInteractions(trackingProducerMock, kafkaProducerMock);
+    }
+
+    @Test
+    void process_PipelinedSends_FailedFutureIsSurfaced() {
+        DispatchService pipelinedService = new DispatchService(kafkaProducerMock, stockServiceClientMock, true);
+        String key = randomUUID().toString();
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
+        when(stockServiceClientMock.checkAvailability(anyString())).thenReturn("true");
+        when(kafkaProducerMock.send(anyString(), anyString(), any(DispatchPreparing.class))).thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaProducerMock.send(anyString(), anyString(), any(DispatchCompleted.class))).thenReturn(CompletableFuture.failedFuture(new RuntimeException("Dispatch completed ack failure")));
+        when(kafkaProducerMock.send(anyString(), anyString(), any(OrderDispatched.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        Exception exception = assertThrows(ExecutionException.class, () -> pipelinedService.process(key, testEvent));
+
+        verify(kafkaProducerMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchPreparing.class));
+        verify(kafkaProducerMock, times(1)).send(eq("dispatch.tracking"), eq(key), any(DispatchCompleted.class));
+        verify(kafkaProducerMock, times(1)).send(eq("order.dispatched"), eq(key), any(OrderDispatched.class));
+        assertThat(exception.getCause().getMessage(), equalTo("Dispatch completed ack failure"));
+    }
+
+    @Test
+    void processBatch_ChecksEachDistinctItemOnce() {
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability("item-1")).thenReturn("true");
+        when(stockServiceClientMock.checkAvailability("item-2")).thenReturn("false");
+
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(
+                buildRecord(0, "item-1"),
+                buildRecord(1, "item-2"),
+                buildRecord(2, "item-1"));
+        dispatchService.processBatch(records);
+
+        verify(stockServiceClientMock, times(1)).checkAvailability("item-1");
+        verify(stockServiceClientMock, times(1)).checkAvailability("item-2");
+        verify(kafkaProducerMock, times(2)).send(eq("dispatch.tracking"), anyString(), any(DispatchPreparing.class));
+        verify(kafkaProducerMock, times(2)).send(eq("dispatch.tracking"), anyString(), any(DispatchCompleted.class));
+        verify(kafkaProducerMock, times(2)).send(eq("order.dispatched"), anyString(), any(OrderDispatched.class));
+    }
+
+    @Test
+    void processBatch_UsesBulkAvailabilityWhenAvailable() {
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyCollection())).thenReturn(Map.of("item-1", true, "item-2", false));
+
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(
+                buildRecord(0, "item-1"),
+                buildRecord(1, "item-2"),
+                buildRecord(2, "item-1"));
+        dispatchService.processBatch(records);
+
+        verify(stockServiceClientMock, times(1)).checkAvailability(anyCollection());
+        verify(stockServiceClientMock, never()).checkAvailability(anyString());
+        verify(kafkaProducerMock, times(2)).send(eq("order.dispatched"), anyString(), any(OrderDispatched.class));
+    }
+
+    @Test
+    void processBatch_RetryableBulkFailureRetriesTheBatch() {
+        when(stockServiceClientMock.checkAvailability(anyCollection())).thenThrow(new RetryableException("Service failure"));
+
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(
+                buildRecord(0, "item-1"),
+                buildRecord(1, "item-2"));
+        // not a BatchListenerFailedException, the whole batch is retried without blaming its first record
+        assertThrows(RetryableException.class, () -> dispatchService.processBatch(records));
+
+        verify(stockServiceClientMock, never()).checkAvailability(anyString());
+        verifyNoInteractions(kafkaProducerMock);
+    }
+
+    @Test
+    void processBatch_NotRetryableBulkFailureFallsBackToPerItemChecks() {
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyCollection())).thenThrow(new NotRetryableException(new RuntimeException("404 Not Found")));
+        when(stockServiceClientMock.checkAvailability("item-1")).thenReturn("true");
+        when(stockServiceClientMock.checkAvailability("item-2")).thenReturn("false");
+
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(
+                buildRecord(0, "item-1"),
+                buildRecord(1, "item-2"));
+        dispatchService.processBatch(records);
+
+        verify(stockServiceClientMock, times(1)).checkAvailability("item-1");
+        verify(stockServiceClientMock, times(1)).checkAvailability("item-2");
+        verify(kafkaProducerMock, times(1)).send(eq("order.dispatched"), anyString(), any(OrderDispatched.class));
+    }
+
+    @Test
+    void processBatch_OrderWithoutItemFailsOnlyThatRecord() {
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(argThat((Collection<String> items) -> !items.contains(null))))
+                .thenReturn(Map.of("item-1", true, "item-2", true));
+        when(stockServiceClientMock.checkAvailability((String) isNull())).thenThrow(new NullPointerException());
+
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(
+                buildRecord(0, "item-1"),
+                buildRecord(1, null),
+                buildRecord(2, "item-2"));
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> dispatchService.processBatch(records));
+
+        assertThat(exception.getIndex(), equalTo(1));
+        assertThat(exception.getCause(), instanceOf(NotRetryableException.class));
+        verify(stockServiceClientMock, times(1)).checkAvailability(anyCollection());
+        verify(kafkaProducerMock, times(1)).send(eq("order.dispatched"), anyString(), any(OrderDispatched.class));
+    }
+
+    @Test
+    void processBatch_StockServiceFailureReportsFailedRecord() {
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability("item-1")).thenReturn("true");
+        when(stockServiceClientMock.checkAvailability("item-2")).thenThrow(new RetryableException("Service failure"));
+
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(
+                buildRecord(0, "item-1"),
+                buildRecord(1, "item-2"),
+                buildRecord(2, "item-1"));
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> dispatchService.processBatch(records));
+
+        assertThat(exception.getIndex(), equalTo(1));
+        assertThat(exception.getCause(), instanceOf(RetryableException.class));
+        verify(kafkaProducerMock, times(1)).send(eq("order.dispatched"), anyString(), any(OrderDispatched.class));
+    }
+
+    @Test
+    void processBatch_FailedSendReportsItsRecord() {
+        when(stockServiceClientMock.checkAvailability(anyString())).thenReturn("true");
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaProducerMock.send(anyString(), eq("key-1"), any(OrderDispatched.class))).thenReturn(CompletableFuture.failedFuture(new RuntimeException("Order dispatched ack failure")));
+
+        List<ConsumerRecord<String, OrderCreated>> records = List.of(
+                buildRecord(0, "item-1"),
+                buildRecord(1, "item-2"),
+                buildRecord(2, "item-3"));
+        BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> dispatchService.processBatch(records));
+
+        assertThat(exception.getIndex(), equalTo(1));
+        assertThat(exception.getCause(), instanceOf(NotRetryableException.class));
+    }
+
+    @Test
+    void process_SkipsAlreadyDispatchedOrder() throws Exception {
+        ProcessedOrderStore store = new ProcessedOrderStore(10);
+        dispatchService = new DispatchService(kafkaProducerMock, stockServiceClientMock, true, store);
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyString())).thenReturn("true");
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
+
+        dispatchService.process("key", testEvent);
+        dispatchService.process("key", testEvent);
+
+        verify(stockServiceClientMock, times(1)).checkAvailability(testEvent.getItem());
+        verify(kafkaProducerMock, times(1)).send(eq("order.dispatched"), eq("key"), any(OrderDispatched.class));
+        assertThat(store.duplicatesSkippedCount(), equalTo(1L));
+    }
+
+    @Test
+    void process_FailedDispatchIsNotRemembered() {
+        ProcessedOrderStore store = new ProcessedOrderStore(10);
+        dispatchService = new DispatchService(kafkaProducerMock, stockServiceClientMock, true, store);
+        when(stockServiceClientMock.checkAvailability(anyString())).thenReturn("true");
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.failedFuture(new RuntimeException("ack failure")));
+        OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
+
+        assertThrows(ExecutionException.class, () -> dispatchService.process("key", testEvent));
+
+        assertThat(store.contains(testEvent.getOrderId()), equalTo(false));
+    }
+
+    @Test
+    void processBatch_SkipsAlreadyDispatchedOrders() {
+        ProcessedOrderStore store = new ProcessedOrderStore(10);
+        dispatchService = new DispatchService(kafkaProducerMock, stockServiceClientMock, true, store);
+        when(kafkaProducerMock.send(anyString(), anyString(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(stockServiceClientMock.checkAvailability(anyString())).thenReturn("true");
+        ConsumerRecord<String, OrderCreated> redelivered = buildRecord(0, "item-1");
+        store.markProcessed(redelivered.value().getOrderId());
+        ConsumerRecord<String, OrderCreated> fresh = buildRecord(1, "item-2");
+
+        dispatchService.processBatch(List.of(redelivered, fresh, new ConsumerRecord<>("order.created", 0, 2L, "key-2", fresh.value())));
+
+        verify(kafkaProducerMock, times(1)).send(eq("order.dispatched"), anyString(), any(OrderDispatched.class));
+        assertThat(store.contains(fresh.value().getOrderId()), equalTo(true));
+        assertThat(store.duplicatesSkippedCount(), equalTo(1L));
+    }
+
+    @Test
+    void process_Outbox_AppendsEventsInsteadOfSending(@TempDir Path tempDir) throws Exception {
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            dispatchService = new DispatchService(kafkaProducerMock, kafkaProducerMock, stockServiceClientMock, true, null, new HotPathLog(), outbox);
+            when(stockServiceClientMock.checkAvailability(anyString())).thenReturn("true");
+            OrderCreated testEvent = TestEventData.buildOrderCreatedEvent(randomUUID(), randomUUID().toString());
+
+            dispatchService.process("key", testEvent);
+
+            verifyNoInteractions(kafkaProducerMock);
+            List<OutboxLog.Entry> events = outbox.read(outbox.cursor(), 10).entries();
+            assertThat(events.size(), equalTo(3));
+            assertThat(events.get(0).topic(), equalTo("dispatch.tracking"));
+            assertThat(events.get(0).value(), instanceOf(DispatchPreparing.class));
+            assertThat(events.get(1).value(), instanceOf(DispatchCompleted.class));
+            assertThat(events.get(2).topic(), equalTo("order.dispatched"));
+            assertThat(((OrderDispatched) events.get(2).value()).getOrderId(), equalTo(testEvent.getOrderId()));
+            assertThat(events.get(2).key(), equalTo("key"));
+        }
+    }
+
+    @Test
+    void processBatch_Outbox_AppendsThePollOnce(@TempDir Path tempDir) throws Exception {
+        try (OutboxLog outbox = new OutboxLog(tempDir, 1 << 20, 1 << 20, true)) {
+            dispatchService = new DispatchService(kafkaProducerMock, kafkaProducerMock, stockServiceClientMock, true, null, new HotPathLog(), outbox);
+            when(stockServiceClientMock.checkAvailability("item-1")).thenReturn("true");
+            when(stockServiceClientMock.checkAvailability("item-2")).thenReturn("false");
+
+            dispatchService.processBatch(List.of(buildRecord(0, "item-1"), buildRecord(1, "item-2"), buildRecord(2, "item-1")));
+
+            verifyNoInteractions(kafkaProducerMock);
+            assertThat(outbox.pending(), equalTo(6L));
+            OutboxLog.Batch batch = outbox.read(outbox.cursor(), 1);
+            // whole frames only, the poll was appended as one
+            assertThat(batch.entries().size(), equalTo(6));
+        }
+    }
+
+    private ConsumerRecord<String, OrderCreated> buildRecord(long offset, String item) {
+        return new ConsumerRecord<>("order.created", 0, offset, "key-" + offset, TestEventData.buildOrderCreatedEvent(randomUUID(), item));
+    }
+}